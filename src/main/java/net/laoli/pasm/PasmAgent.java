@@ -3,8 +3,15 @@ package net.laoli.pasm;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Maps;
 import net.laoli.pasm.agent.AgentManager;
+import net.laoli.pasm.agent.AgentOptions;
+import net.laoli.pasm.runtime.AsyncHooks;
+import net.laoli.pasm.runtime.HookSwitches;
+import net.laoli.pasm.runtime.MemoCache;
+import net.laoli.pasm.runtime.MemoCaches;
 import net.laoli.pasm.utils.PrintUtils;
 import java.lang.instrument.Instrumentation;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -47,7 +54,7 @@ public class PasmAgent {
             if (agentManager == null) {
                 throw new IllegalStateException("AgentManager未初始化");
             }
-            agentManager.initialize(inst);
+            agentManager.initialize(inst, new AgentOptions(args));
 
             PrintUtils.always("PASM Agent 启动完成");
 
@@ -68,6 +75,11 @@ public class PasmAgent {
     /**
      * 解析Agent参数
      * 格式: key1=value1,key2=value2 或 debug=true 或 debug
+     * 热重载参数: reloadbudget=每批停顿预算(ms), reloadgap=批次间隔(ms)
+     * 自动重载参数: watch=是否监听插件目录, watchdebounce=防抖时间(ms)
+     * ASM处理器参数: processorwarn=单个钩子耗时警告阈值(ms)
+     * 异步钩子参数: asyncthreads=工作线程数, asyncqueue=队列容量, asyncpolicy=drop|drop_oldest|caller_runs,
+     * asyncvirtual=Java 21+是否使用虚拟线程
      */
     private static Map<String, String> parseAgentArgs(String agentArgs) {
         if (agentArgs == null || agentArgs.trim().isEmpty()) {
@@ -93,6 +105,7 @@ public class PasmAgent {
 
     /**
      * 重新加载插件 (外部调用接口)
+     * 重载在PASM后台线程异步执行，本方法立即返回
      */
     public static void reloadPlugins() {
         if (agentManager != null && agentManager.isInitialized()) {
@@ -102,6 +115,89 @@ public class PasmAgent {
         }
     }
 
+    /**
+     * 获取最近一次热重载中每批重转换的停顿时间（纳秒），按批次顺序排列；未重载过时为空
+     */
+    public static List<Long> getLastReloadPauses() {
+        return agentManager != null ? agentManager.getLastReloadPauses() : Collections.emptyList();
+    }
+
+    /**
+     * 获取最近一次热重载中重转换失败、仍保持旧版本的类名
+     */
+    public static List<String> getLastReloadFailures() {
+        return agentManager != null ? agentManager.getLastReloadFailures() : Collections.emptyList();
+    }
+
+    /**
+     * 停止插件目录监听和热重载（外部调用接口），已应用的注入保持不变
+     */
+    public static void shutdown() {
+        if (agentManager != null) {
+            agentManager.shutdown();
+        }
+    }
+
+    /**
+     * 清空@Memoize生成的缓存（外部调用接口），被缓存方法依赖的数据变化时调用
+     *
+     * @param className  目标类名（点分或内部名）
+     * @param methodName 方法名，null表示类中所有被缓存的方法
+     * @return 清空的缓存数量
+     */
+    public static int invalidateMemo(String className, String methodName) {
+        return MemoCaches.invalidate(className, methodName);
+    }
+
+    /**
+     * 清空所有@Memoize缓存
+     */
+    public static void invalidateAllMemos() {
+        MemoCaches.invalidateAll();
+    }
+
+    /**
+     * 获取所有@Memoize缓存（命中、未命中、淘汰次数等），键为 类名.方法名描述符@加载器
+     */
+    public static Map<String, MemoCache> getMemoStats() {
+        return MemoCaches.getCaches();
+    }
+
+    /**
+     * 获取异步钩子执行统计（提交、完成、失败、丢弃次数和队列深度）
+     */
+    public static AsyncHooks.Stats getAsyncStats() {
+        return AsyncHooks.getStats();
+    }
+
+    /**
+     * 启用/禁用单个注入，不需要重转换（外部调用接口，JMX见 net.laoli.pasm:type=HookSwitches）
+     *
+     * @param injectionId 注入标识，可通过 getInjectionSwitches 查询
+     * @return 是否找到该注入
+     */
+    public static boolean setInjectionEnabled(String injectionId, boolean enabled) {
+        return HookSwitches.setEnabled(injectionId, enabled);
+    }
+
+    /**
+     * 按钩子方法启用/禁用注入
+     *
+     * @param sourceClass  插件类名（点分或内部名）
+     * @param sourceMethod 钩子方法名，null表示类中所有钩子
+     * @return 切换的注入数量
+     */
+    public static int setHookEnabled(String sourceClass, String sourceMethod, boolean enabled) {
+        return HookSwitches.setEnabled(sourceClass, sourceMethod, enabled);
+    }
+
+    /**
+     * 获取所有可切换的注入及其当前状态
+     */
+    public static Map<String, Boolean> getInjectionSwitches() {
+        return HookSwitches.getSwitches();
+    }
+
     /**
      * 获取Agent管理器 (用于测试和监控)
      */
@@ -1,17 +1,23 @@
 package net.laoli.pasm.agent;
 
-import net.laoli.pasm.api.PasmAsmProcessor;
+import net.laoli.pasm.loader.AccessorInterfaceExporter;
+import net.laoli.pasm.loader.PluginClassLoaders;
 import net.laoli.pasm.model.AsmProcessorInfo;
 import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.model.InjectionPlan;
 import net.laoli.pasm.processor.InjectionProcessor;
+import net.laoli.pasm.processor.InjectionRegistry;
+import net.laoli.pasm.runtime.AsyncHooks;
 import net.laoli.pasm.scanner.PluginScanner;
+import net.laoli.pasm.transformer.ClassProcessorIndex;
 import net.laoli.pasm.transformer.ClassTransformer;
+import net.laoli.pasm.transformer.IndyHookGenerator;
+import net.laoli.pasm.transformer.LoadedTargetRegistry;
 import net.laoli.pasm.utils.PrintUtils;
 
 import java.lang.instrument.Instrumentation;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * 极简Agent管理器
@@ -23,6 +29,20 @@ public class AgentManager {
     private final ClassTransformer classTransformer;
     private boolean initialized;
     private Instrumentation inst;
+    private AgentOptions options = AgentOptions.defaults();
+    private PluginWatcher pluginWatcher;
+    private AsmProcessorManager asmProcessorManager;
+    private final AccessorInterfaceExporter accessorExporter = new AccessorInterfaceExporter();
+    // 最近一次热重载中每批重转换的停顿时间（纳秒）
+    private volatile List<Long> lastReloadPauses = Collections.emptyList();
+    // 最近一次热重载中重转换失败、仍保持旧版本的类
+    private volatile List<String> lastReloadFailures = Collections.emptyList();
+    // 热重载在后台线程串行执行，不阻塞调用线程（通常是服务器主线程）
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "PASM-Reload");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public AgentManager() {
         this.injectionProcessor = InjectionProcessor.getInstance();
@@ -34,6 +54,13 @@ public class AgentManager {
      * 初始化Agent
      */
     public void initialize(Instrumentation inst) {
+        initialize(inst, AgentOptions.defaults());
+    }
+
+    /**
+     * 使用指定启动参数初始化Agent
+     */
+    public void initialize(Instrumentation inst, AgentOptions options) {
         if (initialized) {
             PrintUtils.debug("Agent已经初始化，跳过...");
             return;
@@ -42,10 +69,16 @@ public class AgentManager {
         PrintUtils.separator("初始化PASM Agent");
 
         this.inst = inst;
+        this.options = options;
+        this.asmProcessorManager = new AsmProcessorManager(options.getProcessorWarnMs());
+        AsyncHooks.configure(options.getAsyncThreads(), options.getAsyncQueueCapacity(),
+                options.getAsyncPolicy(), options.isAsyncVirtualThreads());
 
         // 初始化注解处理器
         PrintUtils.info("扫描插件...");
         injectionProcessor.initialize();
+        InjectionRegistry registry = injectionProcessor.getRegistry();
+        accessorExporter.export(registry.getInjectionsByTarget().values(), registry.getJars(), inst);
 
         // 获取全局ASM处理器列表（已按优先级排序）
         List<AsmProcessorInfo> asmProcessors = injectionProcessor.getGlobalAsmProcessors();
@@ -53,88 +86,254 @@ public class AgentManager {
         // 注册PASM转换器
         inst.addTransformer(classTransformer, true);
 
-        invokeAsmProcessors(asmProcessors, inst);
+        asmProcessorManager.init(asmProcessors, inst);
+        classTransformer.setClassProcessorIndex(asmProcessorManager.getClassProcessorIndex());
 
         initialized = true;
 
+        // 可选：监听插件目录自动热重载
+        if (options.isWatchEnabled()) {
+            startPluginWatcher();
+        }
+
         PrintUtils.info("PASM Agent初始化完成");
 
         // 打印统计信息
         printStats();
     }
 
-    public void reload() {
+    /**
+     * 异步两阶段热重载
+     * 第一阶段：在后台线程重新扫描，发布新的插件jar并准备新的ASM处理器，按新快照和新处理器
+     * 并行预计算、校验所有受影响类的新字节码；任一类失败则回滚插件jar，整体放弃
+     * 第二阶段：重转换（转换器直接返回预计算结果），之后原子替换注入快照并切换处理器
+     *
+     * @return 重载是否成功应用
+     */
+    public CompletableFuture<Boolean> reload() {
         if (!initialized) {
             PrintUtils.warn("Agent未初始化，无法重新加载");
-            return;
+            return CompletableFuture.completedFuture(false);
+        }
+        if (reloadExecutor.isShutdown()) {
+            PrintUtils.warn("Agent已停止，无法重新加载");
+            return CompletableFuture.completedFuture(false);
         }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return reloadNow();
+            } catch (Throwable t) {
+                PrintUtils.error("重新加载插件失败: " + t.getMessage());
+                t.printStackTrace();
+                return false;
+            }
+        }, reloadExecutor);
+    }
 
+    private boolean reloadNow() {
         PrintUtils.separator("重新加载插件（完全热重载）");
+        long start = System.nanoTime();
 
-        // 1. 重新扫描插件，更新注入信息和 ASM 处理器列表
-        injectionProcessor.reload();
+        // 1. 重新扫描插件，构建新的注入快照（尚未发布）
+        InjectionRegistry oldRegistry = injectionProcessor.getRegistry();
+        InjectionRegistry newRegistry = injectionProcessor.prepareReload();
+        accessorExporter.export(newRegistry.getInjectionsByTarget().values(), newRegistry.getJars(), inst);
 
-        // 获取最新的 ASM 处理器列表（已按优先级排序）
-        List<AsmProcessorInfo> asmProcessors = injectionProcessor.getGlobalAsmProcessors();
+        // 2. 发布新的插件jar并准备新的ASM处理器（尚未切换），预计算要包含新处理器的输出
+        injectionProcessor.publishJars(newRegistry);
+        ClassProcessorIndex newIndex = asmProcessorManager.prepare(newRegistry.getAsmProcessors());
+
+        // 3. 找出所有受影响的类，并行预计算新字节码
+        List<Class<?>> affectedClasses = findAffectedClasses(oldRegistry, newRegistry);
+        Map<Class<?>, byte[]> precomputed;
+        Set<Class<?>> structural = ConcurrentHashMap.newKeySet();
+        try {
+            precomputed = precompute(affectedClasses, newRegistry, newIndex, structural);
+        } catch (Exception e) {
+            PrintUtils.error("预计算失败，本次重载未应用任何修改: " + e.getMessage());
+            asmProcessorManager.discardPrepared();
+            injectionProcessor.publishJars(oldRegistry);
+            return false;
+        }
+        // 需要修改类结构的类无法重转换，保持当前版本，不让它拖垮所在的整批重转换
+        affectedClasses.removeAll(structural);
+        PrintUtils.debug("预计算完成: " + precomputed.size() + "/" + affectedClasses.size() + " 个类，耗时 " +
+                (System.nanoTime() - start) / 1_000_000 + "ms");
 
-        // 2. 找出所有受影响的类并执行重转换
-        List<Class<?>> affectedClasses = findAffectedClasses();
+        // 4. 按新快照重转换（快照尚未发布，转换器对被重转换的类使用新快照）
+        Set<Class<?>> unchanged = new HashSet<>(structural);
         if (!affectedClasses.isEmpty()) {
             PrintUtils.info("发现 " + affectedClasses.size() + " 个需要重转换的类，正在执行...");
+            classTransformer.beginReload(precomputed, newRegistry, newIndex);
             try {
-                inst.retransformClasses(affectedClasses.toArray(new Class[0]));
-                PrintUtils.info("重转换完成");
-            } catch (Exception e) {
-                PrintUtils.error("重转换失败: " + e.getMessage());
+                BatchedRetransformer retransformer = new BatchedRetransformer(inst,
+                        options.getReloadBudgetMs(), options.getReloadGapMs());
+                BatchedRetransformer.Result result = retransformer.retransform(affectedClasses);
+                List<Long> pauses = result.getPauses();
+                List<String> failures = new ArrayList<>();
+                for (Class<?> clazz : result.getFailed()) {
+                    failures.add(clazz.getName());
+                }
+                unchanged.addAll(result.getFailed());
+                lastReloadPauses = pauses;
+                lastReloadFailures = Collections.unmodifiableList(failures);
+                long maxPause = pauses.stream().mapToLong(Long::longValue).max().orElse(0);
+                PrintUtils.info("重转换完成，共 " + pauses.size() + " 批，最长停顿 " +
+                        String.format("%.2f", maxPause / 1_000_000.0) + "ms");
+                if (!failures.isEmpty()) {
+                    PrintUtils.warn(failures.size() + " 个类重转换失败，仍使用旧版本: " + failures);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                PrintUtils.error("重转换被中断");
+            } finally {
+                classTransformer.endReload();
             }
         } else {
             PrintUtils.info("没有需要重转换的类");
         }
 
-        // 3. 执行 onReload
-        invokeAsmProcessorsReload(asmProcessors, inst);
+        // 5. 发布新快照；仍运行旧版本的类（重转换失败或需要修改类结构）保留旧快照中的注入，与实际运行的代码一致
+        Set<String> keptTargets = new HashSet<>();
+        for (Class<?> clazz : unchanged) {
+            keptTargets.add(clazz.getName().replace('.', '/'));
+        }
+        InjectionRegistry published = newRegistry.withTargetsFrom(oldRegistry, keptTargets);
+        injectionProcessor.publish(published);
+
+        // 6. invokedynamic链接的钩子：调用点指向新版本，不需要重转换
+        IndyHookGenerator.relink(published.getInjectionsByTarget().values());
 
+        // 7. 切换ASM处理器并执行 onReload
+        asmProcessorManager.reload(newRegistry.getAsmProcessors(), inst);
+        classTransformer.setClassProcessorIndex(asmProcessorManager.getClassProcessorIndex());
+
+        PluginClassLoaders.getInstance().printStats();
         PrintUtils.info("插件重新加载完成");
+        return true;
     }
 
     /**
-     * 专门调用 reload 钩子的辅助方法（与初始化钩子分离）
+     * 并行预计算受影响类的新字节码
+     * 没有记录原始字节码的类（例如在PASM之前加载）不预计算，重转换时由转换器现场处理；
+     * 新字节码增删了字段或方法（如新增REDIRECT钩子方法）的类放入 structural，需要重启才能生效
      */
-    private void invokeAsmProcessorsReload(List<AsmProcessorInfo> processors,
-                                           Instrumentation inst) {
-        for (AsmProcessorInfo info : processors) {
-            String className = info.getClassName();
-            try {
-                Class<?> clazz = Class.forName(className, true,
-                        PluginScanner.getInjectionClassLoader());
-                PasmAsmProcessor processor = (PasmAsmProcessor) clazz.getDeclaredConstructor().newInstance();
-                processor.onReload(inst);
-                PrintUtils.debug("Invoked " +
-                        "on " + className + " (priority=" + info.getPriority() + ")");
-            } catch (Exception e) {
-                PrintUtils.error("Failed to invoke ASM processor " + className + ": " + e.getMessage());
-            }
+    private Map<Class<?>, byte[]> precompute(List<Class<?>> classes,
+                                             InjectionRegistry registry,
+                                             ClassProcessorIndex index,
+                                             Set<Class<?>> structural) throws Exception {
+        Map<Class<?>, byte[]> result = new ConcurrentHashMap<>();
+        if (classes.isEmpty()) {
+            return result;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        try {
+            pool.submit(() -> classes.parallelStream().forEach(clazz -> {
+                String internalName = clazz.getName().replace('.', '/');
+                ClassLoader loader = clazz.getClassLoader();
+                byte[] original = classTransformer.getOriginalBytes(loader, internalName);
+                if (original == null) {
+                    PrintUtils.debug("未记录原始字节码，跳过预计算: " + internalName);
+                    return;
+                }
+                try {
+                    byte[] bytes = classTransformer.computeBytes(registry, index, loader, internalName, original);
+                    if (!classTransformer.isRetransformable(loader, internalName, bytes)) {
+                        PrintUtils.warn("注入需要修改类结构，已加载的类无法重转换，需要重启才能生效: " + internalName);
+                        structural.add(clazz);
+                        return;
+                    }
+                    result.put(clazz, bytes);
+                } catch (Exception e) {
+                    throw new IllegalStateException(internalName + " - " + e.getMessage(), e);
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    private void startPluginWatcher() {
+        try {
+            pluginWatcher = new PluginWatcher(this, PluginScanner.getPluginsDir(), options.getWatchDebounceMs());
+            pluginWatcher.start();
+        } catch (Exception e) {
+            pluginWatcher = null;
+            PrintUtils.error("启动插件目录监听失败: " + e.getMessage());
         }
     }
 
     /**
-     * 找出所有受插件更新影响的已加载类
-     * （简单实现：遍历所有已加载类，检查是否有注入信息）
+     * 找出生效注入点发生变化的已加载类
+     * 逐个比较新旧快照中的注入计划，只有计划不同的类才需要重转换；
+     * 类对象从转换器的已加载目标登记表中取得，不遍历全部已加载类
      */
-    private List<Class<?>> findAffectedClasses() {
+    private List<Class<?>> findAffectedClasses(InjectionRegistry oldRegistry, InjectionRegistry newRegistry) {
         List<Class<?>> affected = new ArrayList<>();
         if (inst == null) return affected;
 
-        Class<?>[] allLoaded = inst.getAllLoadedClasses();
-        for (Class<?> clazz : allLoaded) {
-            String internalName = clazz.getName().replace('.', '/');
-            if (injectionProcessor.hasInjectionsForClass(internalName)) {
-                affected.add(clazz);
+        LoadedTargetRegistry loadedTargets = classTransformer.getLoadedTargets();
+        Set<String> bindingsChanged = new HashSet<>();
+        Set<String> changed = diffPlans(oldRegistry, newRegistry, bindingsChanged);
+        for (String internalName : bindingsChanged) {
+            if (loadedTargets.contains(internalName)) {
+                // 与访问器接口一样：已加载的类无法增删成员，只有之后新加载的类使用新的绑定
+                PrintUtils.warn("成员绑定（@Accessor/@Invoker/接口注入/@InjectField）已修改，需要重启才能生效: "
+                        + internalName);
+            }
+        }
+        if (changed.isEmpty()) return affected;
+        PrintUtils.debug("注入计划发生变化的目标类: " + changed.size() + " 个");
+
+        affected.addAll(loadedTargets.resolve(changed, inst));
+
+        // 新增的目标类可能在此前没有注入计划时就已加载，登记表中没有记录，需要按名称查找一次
+        Set<String> unseen = new HashSet<>();
+        for (String internalName : changed) {
+            if (oldRegistry.getPlan(internalName) == null && !loadedTargets.contains(internalName)) {
+                unseen.add(internalName.replace('/', '.'));
+            }
+        }
+        if (!unseen.isEmpty()) {
+            for (Class<?> clazz : inst.getAllLoadedClasses()) {
+                if (unseen.contains(clazz.getName()) && clazz.getClassLoader() != null
+                        && inst.isModifiableClass(clazz)) {
+                    affected.add(clazz);
+                }
             }
         }
         return affected;
     }
 
+    /**
+     * 比较新旧快照，返回方法钩子不同、需要重转换的目标类（内部名）
+     * 成员绑定的声明会增删类成员，重转换无法应用，不参与比较；声明发生变化的类放入 bindingsChanged。
+     * 接口注入复制的方法体只改变方法体，按钩子比较
+     */
+    private static Set<String> diffPlans(InjectionRegistry oldRegistry, InjectionRegistry newRegistry,
+                                         Set<String> bindingsChanged) {
+        Set<String> targets = new HashSet<>(oldRegistry.getPlansByTarget().keySet());
+        targets.addAll(newRegistry.getPlansByTarget().keySet());
+
+        Set<String> changed = new HashSet<>();
+        for (String internalName : targets) {
+            InjectionPlan oldPlan = oldRegistry.getPlan(internalName);
+            InjectionPlan newPlan = newRegistry.getPlan(internalName);
+            if (!InjectionPlan.sameHooks(oldPlan, newPlan)) {
+                changed.add(internalName);
+            }
+            if (!InjectionPlan.sameBindings(oldPlan, newPlan)) {
+                bindingsChanged.add(internalName);
+            }
+        }
+        return changed;
+    }
+
     /**
      * 打印统计信息
      */
@@ -164,25 +363,40 @@ public class AgentManager {
         }
     }
 
+    /**
+     * 停止插件目录监听和热重载线程，之后不再接受重载请求
+     */
+    public synchronized void shutdown() {
+        if (pluginWatcher != null) {
+            pluginWatcher.stop();
+            pluginWatcher = null;
+        }
+        reloadExecutor.shutdown();
+        PrintUtils.info("PASM Agent已停止");
+    }
+
     public boolean isInitialized() {
         return initialized;
     }
 
-    private void invokeAsmProcessors(List<AsmProcessorInfo> processors,
-                                     Instrumentation inst) {
-        final ClassLoader classLoader = PluginScanner.getInjectionClassLoader();
-        for (AsmProcessorInfo info : processors) {
-            String className = info.getClassName();
-            try {
-                Class<?> clazz = Class.forName(className, true, classLoader);
-                // 必须有无参构造器
-                PasmAsmProcessor processor = (PasmAsmProcessor) clazz.getDeclaredConstructor().newInstance();
-                processor.onInit(inst);
-                PrintUtils.debug("Invoked " +
-                        "on " + className);
-            } catch (Exception e) {
-                PrintUtils.error("Failed to invoke ASM processor " + className + ": " + e.getMessage());
-            }
-        }
+    /**
+     * 最近一次热重载中每批重转换测得的停顿时间（纳秒），按批次顺序排列
+     */
+    public List<Long> getLastReloadPauses() {
+        return lastReloadPauses;
+    }
+
+    /**
+     * 最近一次热重载中重转换失败、仍保持旧版本的类名
+     */
+    public List<String> getLastReloadFailures() {
+        return lastReloadFailures;
+    }
+
+    /**
+     * 最近一次执行ASM处理器钩子的耗时（纳秒），键为 jar名!类名#钩子名
+     */
+    public Map<String, Long> getProcessorTimings() {
+        return asmProcessorManager != null ? asmProcessorManager.getLastTimings() : Collections.emptyMap();
     }
-}
\ No newline at end of file
+}
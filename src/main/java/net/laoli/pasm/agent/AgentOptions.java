@@ -0,0 +1,139 @@
+package net.laoli.pasm.agent;
+
+import net.laoli.pasm.runtime.AsyncHooks;
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Agent启动参数 - 由 -javaagent:pasm.jar=key1=value1,key2=value2 解析得到
+ *
+ * @author laoli
+ */
+public class AgentOptions {
+    /**
+     * 每批重转换允许的停顿预算（毫秒）
+     */
+    public static final String RELOAD_BUDGET = "reloadbudget";
+    /**
+     * 两批重转换之间的间隔（毫秒）
+     */
+    public static final String RELOAD_GAP = "reloadgap";
+    /**
+     * 监听插件目录，jar变化时自动热重载
+     */
+    public static final String WATCH = "watch";
+    /**
+     * 文件事件的防抖时间（毫秒）
+     */
+    public static final String WATCH_DEBOUNCE = "watchdebounce";
+    /**
+     * ASM处理器单个钩子耗时超过该值时警告（毫秒），0表示不警告
+     */
+    public static final String PROCESSOR_WARN = "processorwarn";
+    /**
+     * 异步钩子工作线程数，0表示自动（虚拟线程64，平台线程为CPU核数的一半）
+     */
+    public static final String ASYNC_THREADS = "asyncthreads";
+    /**
+     * 异步钩子队列容量
+     */
+    public static final String ASYNC_QUEUE = "asyncqueue";
+    /**
+     * 异步钩子队列满时的处理方式：drop / drop_oldest / caller_runs
+     */
+    public static final String ASYNC_POLICY = "asyncpolicy";
+    /**
+     * Java 21+ 是否使用虚拟线程执行异步钩子
+     */
+    public static final String ASYNC_VIRTUAL = "asyncvirtual";
+
+    private final long reloadBudgetMs;
+    private final long reloadGapMs;
+    private final boolean watchEnabled;
+    private final long watchDebounceMs;
+    private final long processorWarnMs;
+    private final int asyncThreads;
+    private final int asyncQueueCapacity;
+    private final AsyncHooks.OverflowPolicy asyncPolicy;
+    private final boolean asyncVirtualThreads;
+
+    public AgentOptions(Map<String, String> args) {
+        this.reloadBudgetMs = Math.max(1, getLong(args, RELOAD_BUDGET, 50));
+        this.reloadGapMs = Math.max(0, getLong(args, RELOAD_GAP, 50));
+        this.watchEnabled = Boolean.parseBoolean(args.getOrDefault(WATCH, "false"));
+        this.watchDebounceMs = Math.max(100, getLong(args, WATCH_DEBOUNCE, 2000));
+        this.processorWarnMs = Math.max(0, getLong(args, PROCESSOR_WARN, 1000));
+        this.asyncThreads = (int) Math.max(0, getLong(args, ASYNC_THREADS, 0));
+        this.asyncQueueCapacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE, getLong(args, ASYNC_QUEUE, 10000)));
+        this.asyncPolicy = getPolicy(args);
+        this.asyncVirtualThreads = Boolean.parseBoolean(args.getOrDefault(ASYNC_VIRTUAL, "true"));
+    }
+
+    public static AgentOptions defaults() {
+        return new AgentOptions(Collections.emptyMap());
+    }
+
+    private static long getLong(Map<String, String> args, String key, long defaultValue) {
+        String value = args.get(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            PrintUtils.warn("参数 " + key + " 必须是整数，使用默认值 " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static AsyncHooks.OverflowPolicy getPolicy(Map<String, String> args) {
+        String value = args.get(ASYNC_POLICY);
+        if (value == null || value.isEmpty()) {
+            return AsyncHooks.OverflowPolicy.DROP;
+        }
+        try {
+            return AsyncHooks.OverflowPolicy.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            PrintUtils.warn("参数 " + ASYNC_POLICY + " 必须是 drop / drop_oldest / caller_runs，使用默认值 drop");
+            return AsyncHooks.OverflowPolicy.DROP;
+        }
+    }
+
+    public long getReloadBudgetMs() {
+        return reloadBudgetMs;
+    }
+
+    public long getReloadGapMs() {
+        return reloadGapMs;
+    }
+
+    public boolean isWatchEnabled() {
+        return watchEnabled;
+    }
+
+    public long getWatchDebounceMs() {
+        return watchDebounceMs;
+    }
+
+    public long getProcessorWarnMs() {
+        return processorWarnMs;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public AsyncHooks.OverflowPolicy getAsyncPolicy() {
+        return asyncPolicy;
+    }
+
+    public boolean isAsyncVirtualThreads() {
+        return asyncVirtualThreads;
+    }
+}
@@ -0,0 +1,339 @@
+package net.laoli.pasm.agent;
+
+import net.laoli.pasm.api.ClassFilter;
+import net.laoli.pasm.api.PasmAsmProcessor;
+import net.laoli.pasm.api.PasmClassProcessor;
+import net.laoli.pasm.loader.PluginClassLoaders;
+import net.laoli.pasm.model.AsmProcessorInfo;
+import net.laoli.pasm.transformer.ClassProcessorIndex;
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ASM处理器生命周期管理
+ * 每个处理器只实例化一次，onInit/onReload复用同一个实例；所属插件的类加载器被替换时才重新创建。
+ * 重载分两步：{@link #prepare} 创建实例并编译类处理器索引（热重载用它预计算字节码），不影响当前的处理器；
+ * {@link #reload} 再切换到准备好的处理器并执行钩子。
+ * 同一优先级中声明为独立的处理器并行执行，每个钩子的耗时都会被记录，超过阈值时警告
+ *
+ * @author laoli
+ */
+public class AsmProcessorManager {
+    private final long slowHookMs;
+    // 处理器键（插件jar + 类名）-> 当前使用的实例
+    private volatile Map<String, ProcessorInstance> instances = Collections.emptyMap();
+    // 已准备、尚未切换的处理器
+    private Prepared prepared;
+    // 最近一次执行各钩子的耗时（纳秒），键为 jar名!类名#钩子名
+    private volatile Map<String, Long> lastTimings = Collections.emptyMap();
+    // 当前接入转换流水线的类处理器，按类过滤器编译成的索引
+    private volatile ClassProcessorIndex classProcessorIndex = ClassProcessorIndex.EMPTY;
+
+    /**
+     * 已创建的处理器实例及创建它的类加载器
+     */
+    private static final class ProcessorInstance {
+        final PasmAsmProcessor processor;
+        final ClassLoader loader;
+
+        ProcessorInstance(PasmAsmProcessor processor, ClassLoader loader) {
+            this.processor = processor;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * 准备好的一组处理器：实例（本次新建的需要先执行 onInit）和编译好的类处理器索引
+     */
+    private static final class Prepared {
+        final List<AsmProcessorInfo> processors;
+        final Map<String, ProcessorInstance> instances;
+        final Set<String> created;
+        final ClassProcessorIndex index;
+
+        Prepared(List<AsmProcessorInfo> processors, Map<String, ProcessorInstance> instances,
+                 Set<String> created, ClassProcessorIndex index) {
+            this.processors = processors;
+            this.instances = instances;
+            this.created = created;
+            this.index = index;
+        }
+    }
+
+    /**
+     * 处理器钩子
+     */
+    private enum Hook {
+        INIT("onInit"),
+        RELOAD("onReload");
+
+        final String methodName;
+
+        Hook(String methodName) {
+            this.methodName = methodName;
+        }
+    }
+
+    /**
+     * @param slowHookMs 单个钩子耗时超过该值（毫秒）时警告，0表示不警告
+     */
+    public AsmProcessorManager(long slowHookMs) {
+        this.slowHookMs = slowHookMs;
+    }
+
+    /**
+     * 首次初始化时执行所有处理器的 onInit
+     */
+    public synchronized void init(List<AsmProcessorInfo> processors, Instrumentation inst) {
+        run(install(processors), inst, Hook.INIT);
+    }
+
+    /**
+     * 热重载后切换到新的处理器并执行 onReload；本次新建的实例（新增插件或插件被修改）先执行 onInit
+     * 已通过 {@link #prepare} 准备过同一列表时直接使用准备好的实例
+     */
+    public synchronized void reload(List<AsmProcessorInfo> processors, Instrumentation inst) {
+        run(install(processors), inst, Hook.RELOAD);
+    }
+
+    /**
+     * 创建处理器实例并编译类处理器索引，但不切换、不执行钩子；处理器类从已发布的插件jar加载
+     *
+     * @return 新处理器对应的类处理器索引
+     */
+    public synchronized ClassProcessorIndex prepare(List<AsmProcessorInfo> processors) {
+        Map<String, ProcessorInstance> next = new HashMap<>();
+        Set<String> created = new HashSet<>();
+        for (AsmProcessorInfo info : processors) {
+            String key = keyOf(info);
+            try {
+                ClassLoader loader = loaderOf(info);
+                ProcessorInstance instance = instances.get(key);
+                if (instance == null || instance.loader != loader) {
+                    instance = create(info, loader);
+                    created.add(key);
+                }
+                next.put(key, instance);
+            } catch (Exception e) {
+                PrintUtils.error("Failed to create ASM processor " + info.getClassName() + ": " + e.getMessage());
+            }
+        }
+        prepared = new Prepared(processors, next, created, buildIndex(processors, next));
+        return prepared.index;
+    }
+
+    /**
+     * 丢弃准备好但未切换的处理器（重载放弃时调用）
+     */
+    public synchronized void discardPrepared() {
+        prepared = null;
+    }
+
+    /**
+     * 切换到准备好的处理器，没有准备过该列表时现场准备
+     */
+    private Prepared install(List<AsmProcessorInfo> processors) {
+        Prepared next = prepared;
+        if (next == null || next.processors != processors) {
+            prepare(processors);
+            next = prepared;
+        }
+        prepared = null;
+        instances = next.instances;
+        classProcessorIndex = next.index;
+        return next;
+    }
+
+    /**
+     * 最近一次执行各钩子的耗时（纳秒），键为 jar名!类名#钩子名
+     */
+    public Map<String, Long> getLastTimings() {
+        return lastTimings;
+    }
+
+    /**
+     * 当前可用的类处理器（实现了 PasmClassProcessor 的处理器）编译成的索引
+     */
+    public ClassProcessorIndex getClassProcessorIndex() {
+        return classProcessorIndex;
+    }
+
+    private void run(Prepared prepared, Instrumentation inst, Hook hook) {
+        List<AsmProcessorInfo> processors = prepared.processors;
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+
+        // processors 已按优先级排序，同一优先级为一组
+        ExecutorService pool = null;
+        try {
+            int i = 0;
+            while (i < processors.size()) {
+                int priority = processors.get(i).getPriority();
+                List<AsmProcessorInfo> group = new ArrayList<>();
+                while (i < processors.size() && processors.get(i).getPriority() == priority) {
+                    group.add(processors.get(i++));
+                }
+
+                List<Runnable> independent = new ArrayList<>();
+                List<Runnable> sequential = new ArrayList<>();
+                for (AsmProcessorInfo info : group) {
+                    ProcessorInstance instance = prepared.instances.get(keyOf(info));
+                    if (instance == null) {
+                        continue;
+                    }
+                    // 重载期间新建的实例先执行 onInit
+                    if (hook == Hook.RELOAD && prepared.created.contains(keyOf(info))) {
+                        invoke(info, instance.processor, Hook.INIT, inst, timings);
+                    }
+                    Runnable task = () -> invoke(info, instance.processor, hook, inst, timings);
+                    if (isIndependent(info, instance.processor)) {
+                        independent.add(task);
+                    } else {
+                        sequential.add(task);
+                    }
+                }
+
+                // 独立的处理器并行执行，其余的按顺序执行
+                if (independent.size() > 1) {
+                    if (pool == null) {
+                        pool = Executors.newFixedThreadPool(
+                                Math.min(independent.size(), Runtime.getRuntime().availableProcessors()),
+                                r -> {
+                                    Thread thread = new Thread(r, "PASM-Processor");
+                                    thread.setDaemon(true);
+                                    return thread;
+                                });
+                    }
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (Runnable task : independent) {
+                        futures.add(pool.submit(task));
+                    }
+                    sequential.forEach(Runnable::run);
+                    awaitAll(futures);
+                } else {
+                    independent.forEach(Runnable::run);
+                    sequential.forEach(Runnable::run);
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+
+        lastTimings = Collections.unmodifiableMap(new TreeMap<>(timings));
+    }
+
+    private static ClassProcessorIndex buildIndex(List<AsmProcessorInfo> processors,
+                                                  Map<String, ProcessorInstance> instances) {
+        List<PasmClassProcessor> classProcessors = new ArrayList<>();
+        List<ClassFilter> filters = new ArrayList<>();
+        for (AsmProcessorInfo info : processors) {
+            ProcessorInstance instance = instances.get(keyOf(info));
+            if (instance != null && instance.processor instanceof PasmClassProcessor) {
+                PasmClassProcessor processor = (PasmClassProcessor) instance.processor;
+                classProcessors.add(processor);
+                filters.add(resolveFilter(info, processor));
+            }
+        }
+        return ClassProcessorIndex.build(classProcessors, filters);
+    }
+
+    /**
+     * 合并pasm.json中声明的过滤器和处理器自身声明的过滤器，都没有时返回null（处理所有类）
+     */
+    private static ClassFilter resolveFilter(AsmProcessorInfo info, PasmClassProcessor processor) {
+        ClassFilter declared = null;
+        try {
+            declared = processor.getClassFilter();
+        } catch (Throwable t) {
+            PrintUtils.warn("ASM处理器 " + info.getClassName() + ".getClassFilter 调用失败: " + t.getMessage());
+        }
+        ClassFilter configured = info.getClassFilter();
+        if (configured == null) {
+            return declared;
+        }
+        return configured.or(declared);
+    }
+
+    /**
+     * 创建处理器实例（必须有无参构造器）
+     */
+    private static ProcessorInstance create(AsmProcessorInfo info, ClassLoader loader) throws Exception {
+        Class<?> clazz = Class.forName(info.getClassName(), true, loader);
+        PasmAsmProcessor processor = (PasmAsmProcessor) clazz.getDeclaredConstructor().newInstance();
+        PrintUtils.debug("创建ASM处理器实例: " + info.getClassName());
+        return new ProcessorInstance(processor, loader);
+    }
+
+    private void invoke(AsmProcessorInfo info, PasmAsmProcessor processor, Hook hook,
+                        Instrumentation inst, Map<String, Long> timings) {
+        String className = info.getClassName();
+        long start = System.nanoTime();
+        try {
+            if (hook == Hook.INIT) {
+                processor.onInit(inst);
+            } else {
+                processor.onReload(inst);
+            }
+            PrintUtils.debug("Invoked " + hook.methodName + " on " + className +
+                    " (priority=" + info.getPriority() + ")");
+        } catch (Throwable t) {
+            PrintUtils.error("Failed to invoke ASM processor " + className + ": " + t.getMessage());
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            timings.put(sourceOf(info, false) + "!" + className + "#" + hook.methodName, elapsed);
+            if (slowHookMs > 0 && elapsed / 1_000_000L > slowHookMs) {
+                PrintUtils.warn("ASM处理器 " + className + "." + hook.methodName + " 耗时 " +
+                        elapsed / 1_000_000L + "ms");
+            }
+        }
+    }
+
+    private static boolean isIndependent(AsmProcessorInfo info, PasmAsmProcessor processor) {
+        try {
+            return processor.isIndependent();
+        } catch (Throwable t) {
+            PrintUtils.warn("ASM处理器 " + info.getClassName() + ".isIndependent 调用失败，按顺序执行");
+            return false;
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ignored) {
+                // invoke 内部已记录异常
+            }
+        }
+    }
+
+    private static String keyOf(AsmProcessorInfo info) {
+        return sourceOf(info, true) + "!" + info.getClassName();
+    }
+
+    /**
+     * 处理器类的加载器：所属插件jar的加载器，未指定插件jar时使用可以看到所有插件的共享加载器
+     */
+    private static ClassLoader loaderOf(AsmProcessorInfo info) throws IOException {
+        File pluginJar = info.getPluginJar();
+        return pluginJar != null ? PluginClassLoaders.getInstance().getLoader(pluginJar)
+                : PluginClassLoaders.getInstance().getSharedLoader();
+    }
+
+    private static String sourceOf(AsmProcessorInfo info, boolean absolute) {
+        File pluginJar = info.getPluginJar();
+        if (pluginJar == null) {
+            return "shared";
+        }
+        return absolute ? pluginJar.getAbsolutePath() : pluginJar.getName();
+    }
+}
@@ -0,0 +1,145 @@
+package net.laoli.pasm.agent;
+
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分批重转换 - 按停顿预算拆分 retransformClasses 调用，批次之间留出间隔，
+ * 避免一次性重转换所有类造成长时间的全局停顿和大面积去优化。
+ * 一批失败时整批都不会生效，逐个重试该批中的类，只有真正失败的类被报告
+ *
+ * @author laoli
+ */
+public class BatchedRetransformer {
+    // 单批类数量每次最多放大的倍数，避免估算偏差导致停顿突增
+    private static final int MAX_GROWTH = 4;
+
+    private final Instrumentation inst;
+    private final long budgetNanos;
+    private final long gapMs;
+
+    /**
+     * 重转换结果
+     */
+    public static final class Result {
+        private final List<Long> pauses;
+        private final List<Class<?>> failed;
+
+        Result(List<Long> pauses, List<Class<?>> failed) {
+            this.pauses = Collections.unmodifiableList(pauses);
+            this.failed = Collections.unmodifiableList(failed);
+        }
+
+        /**
+         * 每一批（包括失败后的逐个重试）实际测得的停顿时间（纳秒）
+         */
+        public List<Long> getPauses() {
+            return pauses;
+        }
+
+        /**
+         * 重转换失败、仍保持旧版本的类
+         */
+        public List<Class<?>> getFailed() {
+            return failed;
+        }
+    }
+
+    public BatchedRetransformer(Instrumentation inst, long budgetMs, long gapMs) {
+        this.inst = inst;
+        this.budgetNanos = budgetMs * 1_000_000L;
+        this.gapMs = gapMs;
+    }
+
+    /**
+     * 分批重转换，返回每一批的停顿时间和失败的类
+     * 第一批只包含一个类，用于估算单个类的耗时，之后按预算调整批次大小
+     */
+    public Result retransform(List<Class<?>> classes) throws InterruptedException {
+        List<Long> pauses = new ArrayList<>();
+        List<Class<?>> failed = new ArrayList<>();
+        int index = 0;
+        int batchSize = 1;
+        int batchNo = 0;
+
+        while (index < classes.size()) {
+            int end = Math.min(classes.size(), index + batchSize);
+            List<Class<?>> batch = classes.subList(index, end);
+            batchNo++;
+
+            long start = System.nanoTime();
+            Throwable error = retransformBatch(batch);
+            long pause = System.nanoTime() - start;
+            pauses.add(pause);
+
+            PrintUtils.info("重转换批次 " + batchNo + ": " + batch.size() + " 个类，停顿 " +
+                    String.format("%.2f", pause / 1_000_000.0) + "ms");
+            if (error != null) {
+                if (batch.size() == 1) {
+                    failed.add(batch.get(0));
+                    PrintUtils.error("重转换失败: " + batch.get(0).getName() + " - " + error.getMessage());
+                } else {
+                    // 整批未生效，逐个重试找出失败的类，其余类照常应用
+                    PrintUtils.warn("第 " + batchNo + " 批重转换失败，逐个重试: " + error.getMessage());
+                    pause = retryEach(batch, pauses, failed);
+                }
+            } else if (pause > budgetNanos && batch.size() == 1) {
+                PrintUtils.warn("单个类的重转换超出停顿预算: " + batch.get(0).getName());
+            }
+
+            index = end;
+            batchSize = nextBatchSize(batch.size(), pause);
+
+            if (index < classes.size() && gapMs > 0) {
+                Thread.sleep(gapMs);
+            }
+        }
+        return new Result(pauses, failed);
+    }
+
+    /**
+     * 逐个重转换一批中的类，返回总停顿时间
+     */
+    private long retryEach(List<Class<?>> batch, List<Long> pauses, List<Class<?>> failed)
+            throws InterruptedException {
+        long total = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0 && gapMs > 0) {
+                Thread.sleep(gapMs);
+            }
+            Class<?> clazz = batch.get(i);
+            long start = System.nanoTime();
+            Throwable error = retransformBatch(Collections.singletonList(clazz));
+            long pause = System.nanoTime() - start;
+            pauses.add(pause);
+            total += pause;
+            if (error != null) {
+                failed.add(clazz);
+                PrintUtils.error("重转换失败: " + clazz.getName() + " - " + error.getMessage());
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 重转换一批类，返回失败原因，成功时返回null；失败时整批都不会生效
+     */
+    private Throwable retransformBatch(List<Class<?>> batch) {
+        try {
+            inst.retransformClasses(batch.toArray(new Class<?>[0]));
+            return null;
+        } catch (Throwable t) {
+            return t;
+        }
+    }
+
+    private int nextBatchSize(int lastSize, long lastPause) {
+        long perClass = Math.max(1, lastPause / lastSize);
+        long fit = Math.max(1, budgetNanos / perClass);
+        return (int) Math.min(fit, (long) lastSize * MAX_GROWTH);
+    }
+}
@@ -0,0 +1,181 @@
+package net.laoli.pasm.agent;
+
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+
+/**
+ * 插件目录监听器 - 使用NIO WatchService监听插件jar的增删改，防抖后触发增量热重载
+ * jar通常分多次写入，只有在防抖时间内没有新事件、文件大小稳定且能作为jar打开时才认为复制完成。
+ * 事件溢出（OVERFLOW）时无法知道哪些jar变化了，等目录中所有jar写入完成后重新加载一次
+ *
+ * @author laoli
+ */
+public class PluginWatcher implements Runnable {
+    private final AgentManager agentManager;
+    private final Path pluginsDir;
+    private final long debounceMs;
+    // 待确认的jar -> 最近一次事件时记录的文件大小（已删除为-1）
+    private final Map<Path, Long> pending = new HashMap<>();
+    private long lastEventAt;
+    // 事件溢出，丢失了部分事件，需要重新加载
+    private boolean dirty;
+    private volatile WatchService watchService;
+    private Thread thread;
+
+    public PluginWatcher(AgentManager agentManager, File pluginsDir, long debounceMs) {
+        this.agentManager = agentManager;
+        this.pluginsDir = pluginsDir.toPath().toAbsolutePath();
+        this.debounceMs = debounceMs;
+    }
+
+    /**
+     * 启动后台监听线程
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        watchService = pluginsDir.getFileSystem().newWatchService();
+        pluginsDir.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+
+        thread = new Thread(this, "PASM-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+        PrintUtils.info("开始监听插件目录: " + pluginsDir + "（防抖 " + debounceMs + "ms）");
+    }
+
+    /**
+     * 停止监听
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending.isEmpty() && !dirty
+                        ? watchService.take()
+                        : watchService.poll(debounceMs, TimeUnit.MILLISECONDS);
+
+                if (key != null) {
+                    collectEvents(key);
+                    if (!key.reset()) {
+                        PrintUtils.warn("插件目录已不可访问，停止监听: " + pluginsDir);
+                        return;
+                    }
+                }
+
+                if ((!pending.isEmpty() || dirty) && System.currentTimeMillis() - lastEventAt >= debounceMs
+                        && allComplete()) {
+                    if (dirty) {
+                        PrintUtils.info("插件目录事件溢出，自动重新加载全部插件");
+                    } else {
+                        PrintUtils.info("检测到 " + pending.size() + " 个插件jar变化，自动重新加载");
+                    }
+                    pending.clear();
+                    dirty = false;
+                    agentManager.reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 停止监听
+        } catch (Throwable t) {
+            PrintUtils.error("插件目录监听异常退出: " + t.getMessage());
+        }
+    }
+
+    private void collectEvents(WatchKey key) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                markAllPending();
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (!name.toString().toLowerCase().endsWith(".jar")) {
+                continue;
+            }
+            Path jar = pluginsDir.resolve(name);
+            pending.put(jar, sizeOf(jar));
+            lastEventAt = System.currentTimeMillis();
+            PrintUtils.debug("插件文件事件: " + event.kind().name() + " " + name);
+        }
+    }
+
+    /**
+     * 事件溢出后把目录中现有的jar全部加入待确认列表，写入完成后整体重新加载；已删除的jar由重载时的扫描发现
+     */
+    private void markAllPending() {
+        dirty = true;
+        lastEventAt = System.currentTimeMillis();
+        try (DirectoryStream<Path> jars = Files.newDirectoryStream(pluginsDir, "*.{jar,JAR}")) {
+            for (Path jar : jars) {
+                pending.put(jar, sizeOf(jar));
+            }
+        } catch (IOException e) {
+            PrintUtils.debug("列出插件目录失败: " + e.getMessage());
+        }
+        PrintUtils.warn("插件目录事件溢出，将重新加载全部插件");
+    }
+
+    /**
+     * 检查所有待确认的jar是否复制完成；未完成的更新记录的大小，等待下一个防抖周期
+     */
+    private boolean allComplete() {
+        boolean complete = true;
+        for (Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Path, Long> entry = it.next();
+            Path jar = entry.getKey();
+            long size = sizeOf(jar);
+            if (size < 0) {
+                // 已删除，无需确认
+                continue;
+            }
+            if (size != entry.getValue() || !isReadableJar(jar)) {
+                entry.setValue(size);
+                complete = false;
+            }
+        }
+        if (!complete) {
+            lastEventAt = System.currentTimeMillis();
+            PrintUtils.debug("插件jar尚未写入完成，继续等待");
+        }
+        return complete;
+    }
+
+    private static long sizeOf(Path jar) {
+        try {
+            return Files.exists(jar) ? Files.size(jar) : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isReadableJar(Path jar) {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            return jarFile.size() > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
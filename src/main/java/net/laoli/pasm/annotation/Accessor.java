@@ -0,0 +1,27 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法级注解 - 在@Pasm接口中声明目标类字段的访问器
+ * PASM让目标类实现该接口，并生成直接读写字段的公开方法，插件通过 ((XxxAccessor) obj).getX() 访问，没有反射开销：
+ * <ul>
+ *     <li>T getX() / T isX()：读取字段</li>
+ *     <li>void setX(T value)：写入字段（不支持final字段）</li>
+ * </ul>
+ * 接口会被导出到系统类加载器，目标类和插件看到同一个接口；
+ * 接口方法签名中只能使用目标类加载器和插件都能看到的类型。
+ * 目标类必须在PASM加载后才被加载（新增接口和方法无法重转换到已加载的类）
+ * @author laoli
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Accessor {
+    /**
+     * 字段名，为空时由方法名推断（getX/isX/setX -> x）
+     */
+    String value() default "";
+}
@@ -0,0 +1,50 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 指令级注入位置 - 用于@Inject的at属性，把源方法体插入到目标方法中第N个匹配指令的前面或后面
+ * 源方法与HEAD注入相同：必须返回void，参数为目标方法参数的前缀
+ * @author laoli
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface At {
+    /**
+     * 匹配的指令类型
+     */
+    Value value();
+
+    /**
+     * 匹配目标
+     * INVOKE: Lcom/example/Owner;method(I)V
+     * FIELD: Lcom/example/Owner;field:I
+     * NEW: 类名（如 com.example.Owner），为空时匹配所有NEW
+     * ATHROW: 不需要
+     */
+    String target() default "";
+
+    /**
+     * 第几个匹配的指令（从0开始），-1表示所有匹配的指令
+     */
+    int ordinal() default -1;
+
+    /**
+     * 插入到匹配指令的前面还是后面
+     */
+    Shift shift() default Shift.BEFORE;
+
+    enum Value {
+        INVOKE,   // 方法调用
+        FIELD,    // 字段读写
+        NEW,      // 创建对象
+        ATHROW    // 抛出异常
+    }
+
+    enum Shift {
+        BEFORE,
+        AFTER
+    }
+}
@@ -31,4 +31,56 @@ public @interface Inject {
      * 优先级（数值越小优先级越高）
      */
     int priority() default 1000;
+
+    /**
+     * 指令级注入位置；指定后忽略type，按@At插入到目标方法中间（只使用第一个）
+     */
+    At[] at() default {};
+
+    /**
+     * 是否在PASM异步执行器中执行：调用线程只打包参数并入队，钩子在后台线程执行
+     * 适用于日志、统计等副作用，只支持返回void的 BEFORE/HEAD/AFTER/TAIL/AT 注入；
+     * 钩子拿到的是提交时的参数值，不能修改目标方法的状态和控制流
+     */
+    boolean async() default false;
+
+    /**
+     * 采样：每N次调用执行一次钩子，1表示每次都执行
+     * 与 maxRate 同时指定时先采样再限流；只支持返回void的 BEFORE/HEAD/AFTER/TAIL/AT 注入
+     */
+    int sampleEvery() default 1;
+
+    /**
+     * 限流：钩子每秒最多执行的次数，0表示不限流
+     */
+    int maxRate() default 0;
+
+    /**
+     * 是否可在运行时启用/禁用（PasmAgent.setInjectionEnabled 或 JMX net.laoli.pasm:type=HookSwitches）
+     * 开关是JIT可常量折叠的 invokedynamic 调用点，禁用后钩子不产生开销，切换不需要重转换；
+     * 只作用于返回void的 BEFORE/HEAD/AFTER/TAIL/AT 注入。
+     * 开启后目标类会引用PASM的运行时类，目标类的加载器必须能看到Agent（不委托给应用类加载器的加载器看不到）
+     */
+    boolean toggleable() default false;
+
+    /**
+     * 钩子的链接方式，默认把方法体复制到目标方法中
+     */
+    Link link() default Link.COPY;
+
+    enum Link {
+        /**
+         * 方法体复制到目标方法中，目标类中是纯静态代码；修改钩子后需要重转换目标类
+         */
+        COPY,
+        /**
+         * 目标方法中只生成一条 invokedynamic，调用点绑定到钩子的方法句柄；
+         * 修改钩子后热重载只替换调用点目标，不重转换目标类。
+         * 支持 BEFORE/HEAD/AFTER/TAIL/AT/REPLACE，目标类需为Java 7及以上的类文件，钩子不能访问目标类包内的非公开成员。
+         * 插件类在每个目标类的加载器下、每个版本各定义一份：静态初始化块会多次执行，
+         * 每个目标类看到的是各自的一份静态字段，热重载后静态字段从初始值重新开始；需要共享的状态应放在目标类可见的类中。
+         * 与 async 同时指定时按异步钩子复制方法体，忽略INDY
+         */
+        INDY
+    }
 }
\ No newline at end of file
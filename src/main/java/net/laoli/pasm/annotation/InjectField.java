@@ -0,0 +1,23 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 字段级注解 - 把@Pasm类中声明的字段添加到目标类，插件状态直接挂在目标对象上，访问只是一次字段读写
+ * 字段以私有（保留static/volatile/transient）形式添加，名称和类型不变，建议使用带插件前缀的名称避免冲突。
+ * 访问方式：
+ * <ul>
+ *     <li>@Pasm(interfaces = ...) 复制到目标类的方法中直接使用 this.field</li>
+ *     <li>@Accessor 接口方法按字段名绑定</li>
+ * </ul>
+ * 字段初始值总是默认值（0/false/null），初始化器和构造器中的赋值不会被复制，需要时延迟初始化。
+ * 与 {@link Accessor} 一样，只能作用于PASM之后加载的类
+ * @author laoli
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InjectField {
+}
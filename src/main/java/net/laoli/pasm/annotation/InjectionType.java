@@ -10,5 +10,13 @@ public enum InjectionType {
     REPLACE,     // 替换整个方法
     AROUND,      // 环绕方法（替换+调用原方法）
     HEAD,        // 在方法头部注入（位于参数之后，第一条指令之前）
-    TAIL         // 在方法尾部注入（所有return之前）
+    TAIL,        // 在方法尾部注入（所有return之前）
+    REDIRECT,    // 重定向方法内的某条方法调用或字段访问指令（由@Redirect声明）
+    MODIFY_CONSTANT, // 修改方法内的常量（由@ModifyConstant声明）
+    AT,          // 插入到方法内某条指令的前后（由@Inject的at属性声明）
+    MEMOIZE,     // 为方法生成结果缓存（由@Memoize声明）
+    ACCESSOR,    // 目标类实现插件接口，生成字段访问器（由@Accessor声明）
+    INVOKER,     // 目标类实现插件接口，生成方法调用器（由@Invoker声明）
+    IMPLEMENT,   // 目标类实现接口，复制插件类中的实现方法（由@Pasm的interfaces声明）
+    FIELD        // 向目标类添加字段（由@InjectField声明）
 }
@@ -0,0 +1,21 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法级注解 - 在@Pasm接口中声明目标类方法（包括私有方法）的调用器
+ * PASM让目标类实现该接口，并生成直接调用目标方法的公开方法，接口方法的描述符即目标方法的描述符。
+ * 导出和加载时机的限制与 {@link Accessor} 相同
+ * @author laoli
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Invoker {
+    /**
+     * 目标方法名，为空时由方法名推断（callX/invokeX -> x）
+     */
+    String value() default "";
+}
@@ -0,0 +1,59 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法级注解 - 为目标方法生成有界缓存，相同参数的调用直接返回上次的结果
+ * 只适用于纯函数（结果只取决于参数，没有副作用）；抛出异常的调用不缓存。
+ * 当前方法不会被复制，只作为声明载体（必须是静态方法）。
+ * 只有一个基本类型参数、或两个不超过32位的基本类型参数时，键直接编码为long，不装箱；
+ * 其余情况参数装箱后组合为键（按equals比较）。
+ * 缓存可通过 PasmAgent.invalidateMemo 清空，命中统计见 PasmAgent.getMemoStats
+ * @author laoli
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Memoize {
+    /**
+     * 目标方法名
+     */
+    String name();
+
+    /**
+     * 目标方法描述符（不能返回void）
+     */
+    String desc();
+
+    /**
+     * 缓存条目上限，向上取整为2的幂；按哈希直接映射，冲突时新结果淘汰旧结果
+     */
+    int maxSize() default 1024;
+
+    /**
+     * 缓存范围，默认实例方法按实例缓存、静态方法全局缓存
+     */
+    Scope scope() default Scope.AUTO;
+
+    /**
+     * 优先级（数值越小优先级越高）
+     */
+    int priority() default 1000;
+
+    enum Scope {
+        /**
+         * 实例方法按INSTANCE处理，静态方法按GLOBAL处理
+         */
+        AUTO,
+        /**
+         * 所有调用共用一个缓存；用于实例方法时键不包含this，只有结果与实例无关时才能使用
+         */
+        GLOBAL,
+        /**
+         * 每个实例一个缓存（maxSize按实例计算），实例被回收后缓存随之释放；静态方法按GLOBAL处理
+         */
+        INSTANCE
+    }
+}
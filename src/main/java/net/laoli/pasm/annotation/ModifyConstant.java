@@ -0,0 +1,55 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法级注解 - 修改目标方法中的常量（ICONST/BIPUSH/SIPUSH/LDC等）
+ * 两种用法：
+ * <ul>
+ *     <li>指定 replace：转换时直接替换为新的字面量，当前方法不会被复制，只作为声明载体</li>
+ *     <li>不指定 replace：常量值交给当前方法处理，方法签名必须为 static T m(T original)</li>
+ * </ul>
+ * @author laoli
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ModifyConstant {
+    /**
+     * 目标方法名
+     */
+    String name();
+
+    /**
+     * 目标方法描述符
+     */
+    String desc();
+
+    /**
+     * 要匹配的常量值（按 type 解析）
+     */
+    String value();
+
+    /**
+     * 常量类型：int.class / long.class / float.class / double.class / String.class
+     * boolean、char、byte、short 常量在字节码中都是 int
+     */
+    Class<?> type() default int.class;
+
+    /**
+     * 第几个匹配的常量（从0开始），-1表示所有匹配的常量
+     */
+    int ordinal() default -1;
+
+    /**
+     * 替换后的字面量（按 type 解析），为空时常量交给当前方法处理
+     */
+    String replace() default "";
+
+    /**
+     * 优先级（数值越小优先级越高）
+     */
+    int priority() default 1000;
+}
@@ -21,4 +21,13 @@ public @interface Pasm {
      * 目标类名（内部名），可选
      */
     String internalName() default "";
+
+    /**
+     * 让目标类实现的接口（全限定名）
+     * 当前类中非静态的方法（构造器和带PASM注解的方法除外，包括编译器生成的桥接方法）会被复制到目标类，
+     * 方法中对当前类的引用改为目标类，this即目标对象；接口的默认方法无需复制。
+     * 这些方法调用的静态方法和 lambda 一并复制；访问的字段只能是常量或 {@link InjectField} 字段，实例状态不会随方法复制。
+     * 插件jar中的接口会被导出到系统类加载器，限制与 {@link Accessor} 相同
+     */
+    String[] interfaces() default {};
 }
\ No newline at end of file
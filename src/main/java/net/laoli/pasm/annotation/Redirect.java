@@ -0,0 +1,49 @@
+package net.laoli.pasm.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 方法级注解 - 将目标方法中的某条方法调用或字段访问指令重定向到当前静态方法
+ * 当前方法会被复制到目标类中（私有合成静态方法），原指令替换为对它的调用，操作数保持不变：
+ * <ul>
+ *     <li>静态方法调用 owner.m(A,B)R：hook(A,B)R</li>
+ *     <li>实例方法调用 owner.m(A,B)R：hook(Owner,A,B)R</li>
+ *     <li>GETFIELD：hook(Owner)T，PUTFIELD：hook(Owner,T)V</li>
+ *     <li>GETSTATIC：hook()T，PUTSTATIC：hook(T)V</li>
+ * </ul>
+ * 字段目标同时匹配读和写，按当前方法的描述符只重定向其中一种
+ * @author laoli
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Redirect {
+    /**
+     * 目标方法名
+     */
+    String name();
+
+    /**
+     * 目标方法描述符
+     */
+    String desc();
+
+    /**
+     * 要重定向的指令
+     * 方法调用: Lcom/example/Owner;method(I)V
+     * 字段访问: Lcom/example/Owner;field:I
+     */
+    String target();
+
+    /**
+     * 第几个匹配的指令（从0开始），-1表示所有匹配的指令；字段目标只在源方法选中的读或写中计数
+     */
+    int ordinal() default -1;
+
+    /**
+     * 优先级（数值越小优先级越高）
+     */
+    int priority() default 1000;
+}
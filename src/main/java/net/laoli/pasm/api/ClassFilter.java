@@ -0,0 +1,144 @@
+package net.laoli.pasm.api;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Set;
+
+/**
+ * 类过滤器 - 声明类处理器关心哪些类，满足任一条件即匹配
+ * 条件包括：完整类名、类名前缀、直接父类或接口、类上可能带有的注解；没有任何条件时匹配所有类。
+ * 类名统一使用内部名（com/example/Foo），构建时也接受点分形式。
+ *
+ * @author laoli
+ */
+public final class ClassFilter {
+    /**
+     * 匹配所有类
+     */
+    public static final ClassFilter ALL = builder().build();
+
+    private final ImmutableSet<String> classes;
+    private final ImmutableSet<String> prefixes;
+    private final ImmutableSet<String> superclasses;
+    private final ImmutableSet<String> annotations;
+
+    private ClassFilter(Builder builder) {
+        this.classes = builder.classes.build();
+        this.prefixes = builder.prefixes.build();
+        this.superclasses = builder.superclasses.build();
+        this.annotations = builder.annotations.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 合并两个过滤器，满足任一过滤器即匹配；任一方匹配所有类时结果也匹配所有类
+     */
+    public ClassFilter or(ClassFilter other) {
+        if (other == null || other == this) {
+            return this;
+        }
+        if (isMatchAll() || other.isMatchAll()) {
+            return ALL;
+        }
+        Builder builder = builder();
+        builder.classes.addAll(classes).addAll(other.classes);
+        builder.prefixes.addAll(prefixes).addAll(other.prefixes);
+        builder.superclasses.addAll(superclasses).addAll(other.superclasses);
+        builder.annotations.addAll(annotations).addAll(other.annotations);
+        return builder.build();
+    }
+
+    public boolean isMatchAll() {
+        return classes.isEmpty() && prefixes.isEmpty() && superclasses.isEmpty() && annotations.isEmpty();
+    }
+
+    /**
+     * 完整类名（内部名）
+     */
+    public Set<String> getClasses() {
+        return classes;
+    }
+
+    /**
+     * 类名前缀（内部名）
+     */
+    public Set<String> getPrefixes() {
+        return prefixes;
+    }
+
+    /**
+     * 直接父类或直接实现的接口（内部名）
+     */
+    public Set<String> getSuperclasses() {
+        return superclasses;
+    }
+
+    /**
+     * 注解描述符（Lcom/example/Foo;）
+     */
+    public Set<String> getAnnotations() {
+        return annotations;
+    }
+
+    @Override
+    public String toString() {
+        return "ClassFilter{classes=" + classes + ", prefixes=" + prefixes +
+                ", superclasses=" + superclasses + ", annotations=" + annotations + '}';
+    }
+
+    public static final class Builder {
+        private final ImmutableSet.Builder<String> classes = ImmutableSet.builder();
+        private final ImmutableSet.Builder<String> prefixes = ImmutableSet.builder();
+        private final ImmutableSet.Builder<String> superclasses = ImmutableSet.builder();
+        private final ImmutableSet.Builder<String> annotations = ImmutableSet.builder();
+
+        private Builder() {
+        }
+
+        /**
+         * 完整类名
+         */
+        public Builder className(String className) {
+            classes.add(toInternalName(className));
+            return this;
+        }
+
+        /**
+         * 类名前缀，如 net.minecraft.server.
+         */
+        public Builder prefix(String prefix) {
+            prefixes.add(toInternalName(prefix));
+            return this;
+        }
+
+        /**
+         * 直接父类或直接实现的接口（只检查类文件头，不加载类、不检查间接父类）
+         */
+        public Builder superclass(String className) {
+            superclasses.add(toInternalName(className));
+            return this;
+        }
+
+        /**
+         * 注解类名；按常量池检查，可能有误判（例如只在方法上使用了该注解），处理器应自行确认
+         */
+        public Builder annotation(String className) {
+            String name = className.trim();
+            annotations.add(name.startsWith("L") && name.endsWith(";")
+                    ? name.replace('.', '/')
+                    : "L" + toInternalName(name) + ";");
+            return this;
+        }
+
+        public ClassFilter build() {
+            return new ClassFilter(this);
+        }
+
+        private static String toInternalName(String name) {
+            return name.trim().replace('.', '/');
+        }
+    }
+}
@@ -13,4 +13,12 @@ public interface PasmAsmProcessor {
      * 注意：此方法会在每次 reload() 时执行，包括首次初始化后的第一次 reload。
      */
     default void onReload(Instrumentation instrumentation) {}
+
+    /**
+     * 是否与其他处理器相互独立（不依赖其他处理器的执行结果，也不共享可变状态）。
+     * 同一优先级中返回 true 的处理器会并行执行 onInit/onReload。
+     */
+    default boolean isIndependent() {
+        return false;
+    }
 }
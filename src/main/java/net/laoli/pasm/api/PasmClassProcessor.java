@@ -0,0 +1,39 @@
+package net.laoli.pasm.api;
+
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * 接入PASM转换流水线的ASM处理器
+ * 无需自行注册 ClassFileTransformer：PASM只解析一次类，依次交给PASM注入和各处理器修改同一个 ClassNode，
+ * 最后统一计算栈映射帧并写出一次。
+ * <p>
+ * 限制：PASM只登记有注入计划的目标类，只被类处理器选中的类不登记（不带过滤器的处理器会选中所有类，登记原始字节码代价过高），
+ * 热重载时不会重转换这些类：新增或修改的处理器只作用于之后加载的类，以及因注入计划变化而被重转换的类。
+ * 需要让已加载的类应用新的处理逻辑时，在热重载完成后自行调用 {@link java.lang.instrument.Instrumentation#retransformClasses}，
+ * 或重启
+ *
+ * @author laoli
+ */
+public interface PasmClassProcessor extends PasmAsmProcessor {
+
+    /**
+     * 处理一个正在加载（或重转换）的类。
+     * 传入的 ClassNode 不含栈映射帧；只有处理器修改类、没有PASM注入时保留调试信息。
+     * 多个处理器按优先级依次执行，看到的是前面的处理器修改后的结果。
+     *
+     * @param classNode 已解析的类，直接修改即可
+     * @param loader    定义该类的类加载器
+     * @return 是否修改了该类；所有处理器都返回 false 且没有PASM注入时不重新写出字节码
+     */
+    boolean processClass(ClassNode classNode, ClassLoader loader);
+
+    /**
+     * 声明处理器关心的类。PASM据此在解析类之前排除不相关的类，不匹配的类不会交给 processClass。
+     * 与 pasm.json 中 asms 条目的 filter 配置合并（满足任一即匹配）；两处都没有声明时处理所有类。
+     *
+     * @return 类过滤器，null 表示未声明
+     */
+    default ClassFilter getClassFilter() {
+        return null;
+    }
+}
@@ -1,15 +1,11 @@
 package net.laoli.pasm.injector;
 
-import com.google.common.io.ByteStreams;
-import net.laoli.pasm.annotation.InjectionType;
 import net.laoli.pasm.model.InjectionInfo;
-import net.laoli.pasm.scanner.PluginScanner;
 import net.laoli.pasm.transformer.BytecodeMerger;
 import net.laoli.pasm.utils.PrintUtils;
-import net.laoli.pasm.loader.InjectionClassLoader;
+import net.laoli.pasm.loader.PluginJarStore;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
-import java.io.InputStream;
 import java.util.*;
 
 /**
@@ -18,14 +14,30 @@ import java.util.*;
  */
 public class MethodInjector {
 
-    private static final InjectionClassLoader CLASS_LOADER =
-            PluginScanner.getInjectionClassLoader();
-
     /**
      * 根据注入信息注入字节码
      */
     public static boolean injectMethod(MethodNode methodNode,
                                        InjectionInfo injectionInfo) {
+        return injectMethod(null, methodNode, injectionInfo);
+    }
+
+    /**
+     * 根据注入信息注入字节码；需要向目标类添加方法的注入类型（如REDIRECT）必须提供 classNode
+     */
+    public static boolean injectMethod(ClassNode classNode,
+                                       MethodNode methodNode,
+                                       InjectionInfo injectionInfo) {
+        return injectMethod(classNode, methodNode, injectionInfo, null);
+    }
+
+    /**
+     * loader 为目标类的定义加载器（null表示启动类加载器或未知）
+     */
+    public static boolean injectMethod(ClassNode classNode,
+                                       MethodNode methodNode,
+                                       InjectionInfo injectionInfo,
+                                       ClassLoader loader) {
 
         try {
             // 参数验证
@@ -73,7 +85,7 @@ public class MethodInjector {
             }
 
             // 4. 使用方法体复制进行注入
-            return BytecodeMerger.mergeMethodBody(methodNode, sourceMethod, injectionInfo);
+            return BytecodeMerger.mergeMethodBody(classNode, methodNode, sourceMethod, injectionInfo, loader);
 
         } catch (Exception e) {
             String injectionId = injectionInfo != null ? injectionInfo.getInjectionId() : "未知";
@@ -88,17 +100,13 @@ public class MethodInjector {
      */
     private static byte[] loadClassBytes(String className) {
         try {
-            // 使用统一类加载器获取资源
-            String resourcePath = className + ".class";
-            InputStream is = CLASS_LOADER.getResourceAsStream(resourcePath);
-
-            if (is != null) {
-                byte[] bytes = ByteStreams.toByteArray(is);
-                is.close();
+            // 直接从共用的插件jar仓库读取
+            byte[] bytes = PluginJarStore.getInstance().readClass(className);
+            if (bytes != null) {
                 return bytes;
             }
 
-            PrintUtils.warn("无法找到类资源: " + resourcePath);
+            PrintUtils.warn("无法找到类资源: " + className + ".class");
             return null;
 
         } catch (Exception e) {
@@ -107,35 +115,27 @@ public class MethodInjector {
         }
     }
 
+    /**
+     * 按注入计划中的顺序依次注入（排序与REPLACE独占已在InjectionPlan构建时完成）
+     */
     public static int injectMultiple(MethodNode methodNode,
                                      List<InjectionInfo> injections) {
-        // 按优先级排序（数值小优先级高）
-        injections.sort(Comparator.comparingInt(InjectionInfo::getPriority));
-
-        // 查找是否存在 REPLACE 注入
-        Optional<InjectionInfo> replaceOpt = injections.stream()
-                .filter(info -> info.getType() == InjectionType.REPLACE)
-                .findFirst();
-
-        if (replaceOpt.isPresent()) {
-            InjectionInfo replace = replaceOpt.get();
-            long replaceCount = injections.stream()
-                    .filter(info -> info.getType() == InjectionType.REPLACE)
-                    .count();
-            if (replaceCount > 1) {
-                PrintUtils.warn("方法 " + methodNode.name + " 存在多个 REPLACE 注入，仅执行优先级最高的: "
-                        + replace.getSourceMethod());
-            } else {
-                PrintUtils.debug("检测到 REPLACE 注入，跳过其他 " + (injections.size() - 1) + " 个注入点");
-            }
-            // ⚠️ 关键：仅执行这一个 REPLACE，直接返回
-            return injectMethod(methodNode, replace) ? 1 : 0;
-        }
+        return injectMultiple(null, methodNode, injections);
+    }
+
+    public static int injectMultiple(ClassNode classNode,
+                                     MethodNode methodNode,
+                                     List<InjectionInfo> injections) {
+        return injectMultiple(classNode, methodNode, injections, null);
+    }
 
-        // 无 REPLACE：执行所有注入
+    public static int injectMultiple(ClassNode classNode,
+                                     MethodNode methodNode,
+                                     List<InjectionInfo> injections,
+                                     ClassLoader loader) {
         int success = 0;
         for (InjectionInfo info : injections) {
-            if (injectMethod(methodNode, info)) success++;
+            if (injectMethod(classNode, methodNode, info, loader)) success++;
         }
         return success;
     }
@@ -0,0 +1,115 @@
+package net.laoli.pasm.loader;
+
+import net.laoli.pasm.annotation.InjectionType;
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * 访问器接口导出 - 把@Accessor/@Invoker接口和@Pasm(interfaces)中来自插件的接口写入临时jar，
+ * 追加到系统类加载器的搜索路径
+ * 目标类（由服务端类加载器加载）和插件类（插件类加载器父加载器优先）因此解析到同一个接口类。
+ * 系统类加载器中的类无法卸载或替换：接口导出后被修改，需要重启才能生效
+ *
+ * @author laoli
+ */
+public final class AccessorInterfaceExporter {
+    // 已导出的接口（内部名）-> 字节码校验和
+    private final Map<String, Long> exported = new HashMap<>();
+    private int jarCount;
+
+    /**
+     * 导出注入信息中尚未导出的访问器接口，接口字节码从注入快照对应的插件jar中读取
+     *
+     * @return 本次新导出的接口数量
+     */
+    public synchronized int export(Collection<? extends List<InjectionInfo>> injections,
+                                  PluginJarStore.Snapshot jars, Instrumentation inst) {
+        Set<String> interfaces = new TreeSet<>();
+        // @Pasm(interfaces)中的接口可能来自服务端或JDK，插件jar中找不到时不导出
+        Set<String> implemented = new TreeSet<>();
+        for (List<InjectionInfo> list : injections) {
+            for (InjectionInfo info : list) {
+                if (info.getType() == InjectionType.ACCESSOR || info.getType() == InjectionType.INVOKER) {
+                    interfaces.add(info.getSourceClass());
+                } else if (info.getType() == InjectionType.IMPLEMENT) {
+                    implemented.add(info.getTargetMethod());
+                }
+            }
+        }
+
+        for (String name : implemented) {
+            try {
+                if (jars.readClass(name) != null) {
+                    interfaces.add(name);
+                }
+            } catch (IOException e) {
+                PrintUtils.debug("读取接口失败: " + name + " - " + e.getMessage());
+            }
+        }
+
+        Map<String, byte[]> pending = new LinkedHashMap<>();
+        for (String name : interfaces) {
+            byte[] bytes;
+            try {
+                bytes = jars.readClass(name);
+            } catch (IOException e) {
+                PrintUtils.warn("读取访问器接口失败: " + name + " - " + e.getMessage());
+                continue;
+            }
+            if (bytes == null) {
+                PrintUtils.warn("找不到访问器接口: " + name);
+                continue;
+            }
+            Long previous = exported.get(name);
+            if (previous == null) {
+                pending.put(name, bytes);
+            } else if (previous != checksum(bytes)) {
+                PrintUtils.warn("访问器接口已修改，需要重启才能生效: " + name);
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            File jar = File.createTempFile("pasm-accessors-" + (++jarCount) + "-", ".jar");
+            jar.deleteOnExit();
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+                for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+                    out.putNextEntry(new ZipEntry(entry.getKey() + ".class"));
+                    out.write(entry.getValue());
+                    out.closeEntry();
+                }
+            }
+            inst.appendToSystemClassLoaderSearch(new JarFile(jar));
+            // 插件类加载器之前找不到的类现在可能由系统类加载器提供
+            PluginClassLoaders.getInstance().clearParentMisses();
+        } catch (IOException e) {
+            PrintUtils.error("导出访问器接口失败: " + e.getMessage());
+            return 0;
+        }
+
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            exported.put(entry.getKey(), checksum(entry.getValue()));
+            PrintUtils.debug("导出访问器接口: " + entry.getKey());
+        }
+        PrintUtils.info("导出 " + pending.size() + " 个访问器接口到系统类加载器");
+        return pending.size();
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+}
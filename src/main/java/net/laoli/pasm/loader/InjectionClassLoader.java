@@ -1,28 +1,176 @@
 package net.laoli.pasm.loader;
 
+import com.google.common.cache.CacheBuilder;
 import net.laoli.pasm.utils.PrintUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.jar.Manifest;
 
 /**
  * 统一的类加载器 - 既能加载插件类，也能看到目标类
+ * 支持并行加载；父加载器确认不存在的类和资源会被缓存，插件类和资源通过包索引直接定位到所在的jar。
+ * 类和资源都从 {@link PluginJarStore} 的共享句柄读取，不经过URLClassPath，不会另外打开jar文件
+ * 查找顺序：父加载器 -> 自己的jar -> 其他插件jar（按路径顺序，由各自的加载器定义），插件之间可以互相引用类
  * @author laoli
  */
 public class InjectionClassLoader extends URLClassLoader {
+    static {
+        registerAsParallelCapable();
+    }
+
+    // 父加载器确认找不到的类最多缓存的数量
+    private static final int MAX_PARENT_MISSES = 4096;
+
+    // 父加载器已确认找不到的类（类名）和资源（"/"加资源路径），避免每次都由父加载器抛出ClassNotFoundException
+    // 或遍历类路径；有上限，父加载器的搜索路径变化（重载、导出接口）后清空
+    private final Set<String> parentMisses = Collections.newSetFromMap(
+            CacheBuilder.newBuilder().maximumSize(MAX_PARENT_MISSES).<String, Boolean>build().asMap());
+    // 包名（内部名，如 com/example/）-> 包含该包的插件jar
+    private final Map<String, List<IndexedJar>> packageIndex = new ConcurrentHashMap<>();
+    private final Map<File, IndexedJar> jars = new ConcurrentHashMap<>();
+    // 查找其他插件jar中的类，为null时只查找自己的jar
+    private final PluginClassLoaders peers;
+    // 持有的jar句柄，加载器被回收（或关闭）后释放
+    private final JarHandles handles = new JarHandles();
+    // 本加载器从中解析过类的其他插件加载器，按首次使用顺序；淘汰后只在这些加载器中查找
+    private final CopyOnWriteArrayList<InjectionClassLoader> linkedPeers = new CopyOnWriteArrayList<>();
+    // 从本加载器解析过类的加载器，弱引用，不阻止它们被回收
+    private final Set<InjectionClassLoader> dependents =
+            Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private volatile boolean retired;
+
+    /**
+     * 加载器持有的jar句柄，只释放一次；不引用加载器本身，加载器被回收后仍可释放
+     */
+    static final class JarHandles {
+        private final List<PluginJar> jars = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void add(PluginJar jar) {
+            jars.add(jar);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                for (PluginJar jar : jars) {
+                    jar.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * 已建立索引的插件jar；句柄在加载器的整个生命周期内保持不变，jar被替换后仍读取创建时的内容，加载器被回收后释放
+     */
+    private static final class IndexedJar {
+        final PluginJar jar;
+        final URL url;
+        final CodeSource codeSource;
+        final URLStreamHandler handler;
+
+        IndexedJar(PluginJar jar, URL url) {
+            this.jar = jar;
+            this.url = url;
+            this.codeSource = new CodeSource(url, (CodeSigner[]) null);
+            this.handler = new EntryHandler(jar);
+        }
+
+        PluginJar jar() {
+            return jar;
+        }
+
+        /**
+         * 资源URL，格式与 jar: URL 相同，但由句柄直接读取，不另外打开jar文件
+         */
+        URL resourceUrl(String name) throws MalformedURLException {
+            return new URL(null, "jar:" + url + "!/" + name, handler);
+        }
+    }
+
+    /**
+     * 从插件jar句柄读取条目的URL处理器
+     */
+    private static final class EntryHandler extends URLStreamHandler {
+        private final PluginJar jar;
+
+        EntryHandler(PluginJar jar) {
+            this.jar = jar;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL u) {
+            String spec = u.getFile();
+            String name = spec.substring(spec.indexOf("!/") + 2);
+            return new URLConnection(u) {
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    byte[] bytes = jar.read(name);
+                    if (bytes == null) {
+                        throw new FileNotFoundException(u.toString());
+                    }
+                    return new ByteArrayInputStream(bytes);
+                }
+
+                @Override
+                public long getContentLengthLong() {
+                    PluginJar.Entry entry = jar.getEntry(name);
+                    return entry != null ? entry.getSize() : -1;
+                }
+            };
+        }
+    }
+
     public InjectionClassLoader(ClassLoader parent) {
+        this(parent, null);
+    }
+
+    InjectionClassLoader(ClassLoader parent, PluginClassLoaders peers) {
         super(new URL[0], parent);
+        this.peers = peers;
     }
 
     /**
-     * 添加插件JAR到类路径
+     * 添加插件JAR并建立包索引（不加入URLClassPath，类和资源都从共享句柄读取）
      */
     public void addPluginJar(File jarFile) throws Exception {
-        addURL(jarFile.toURI().toURL());
-        PrintUtils.debug("添加插件到类路径: " + jarFile.getName());
+        if (jars.containsKey(jarFile.getAbsoluteFile())) {
+            return;
+        }
+        URL url = jarFile.toURI().toURL();
+
+        IndexedJar indexed = new IndexedJar(PluginJarStore.getInstance().acquire(jarFile), url);
+        handles.add(indexed.jar);
+        jars.put(jarFile.getAbsoluteFile(), indexed);
+        Set<String> packages = new HashSet<>();
+        for (PluginJar.Entry entry : indexed.jar().getEntries()) {
+            if (!entry.isDirectory()) {
+                packages.add(packageOf(entry.getName()));
+            }
+        }
+        for (String pkg : packages) {
+            packageIndex.computeIfAbsent(pkg, k -> new CopyOnWriteArrayList<>()).add(indexed);
+        }
+        PrintUtils.debug("添加插件到类路径: " + jarFile.getName() + "（" + packages.size() + " 个包）");
     }
 
     @Override
@@ -33,7 +181,7 @@ public class InjectionClassLoader extends URLClassLoader {
             return getParent().loadClass(name);
         }
 
-        // 2. 检查是否已加载
+        // 2. 检查是否已加载（并行加载器按类名加锁）
         synchronized (getClassLoadingLock(name)) {
             Class<?> c = findLoadedClass(name);
             if (c != null) {
@@ -41,30 +189,256 @@ public class InjectionClassLoader extends URLClassLoader {
                 return c;
             }
 
-            // 3. 委托给父加载器（不再打印“父加载器无法加载”的调试信息）
-            try {
-                c = getParent().loadClass(name);
-                if (resolve) resolveClass(c);
-                return c;
-            } catch (ClassNotFoundException ignored) {
-                // 父加载器找不到，准备本地加载（不打印调试）
+            // 3. 委托给父加载器（已确认父加载器没有的类直接跳过）
+            if (!parentMisses.contains(name)) {
+                try {
+                    c = getParent().loadClass(name);
+                    if (resolve) resolveClass(c);
+                    return c;
+                } catch (ClassNotFoundException ignored) {
+                    parentMisses.add(name);
+                }
             }
 
             // 4. 本地加载
-            try {
-                c = findClass(name);
+            c = defineLocal(name);
+
+            // 5. 其他插件jar
+            if (c == null && peers != null) {
+                c = peers.findPeerClass(name, this);
+            }
+            if (c != null) {
                 if (resolve) resolveClass(c);
                 return c;
-            } catch (ClassNotFoundException e) {
-                // 只在 DEBUG 模式下打印，且仅对非系统类打印
-                if (PrintUtils.isDebugEnabled() &&
-                        !name.startsWith("java.") && !name.startsWith("javax.")) {
-                    PrintUtils.debug("类加载器无法找到类: " + name);
+            }
+
+            // 只在 DEBUG 模式下打印，且仅对非系统类打印
+            if (PrintUtils.isDebugEnabled() &&
+                    !name.startsWith("java.") && !name.startsWith("javax.")) {
+                PrintUtils.debug("类加载器无法找到类: " + name);
+            }
+            throw new ClassNotFoundException(name);
+        }
+    }
+
+    /**
+     * 只在自己的jar中查找类，不委托父加载器和其他插件，jar中没有该类时返回null
+     * 供其他插件的加载器调用：先判断jar中是否有该类再加锁，避免加载器之间互相等待
+     */
+    Class<?> loadLocal(String name) throws ClassNotFoundException {
+        if (findEntry(name.replace('.', '/') + ".class") == null) {
+            return null;
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            return c != null ? c : defineLocal(name);
+        }
+    }
+
+    /**
+     * 通过包索引直接在所属jar中查找类
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> c = defineLocal(name);
+        if (c == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return c;
+    }
+
+    /**
+     * 在自己的jar中定义类，没有该类时返回null；调用方需持有类名对应的锁
+     */
+    private Class<?> defineLocal(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/') + ".class";
+        IndexedJar indexed = findEntry(path);
+        if (indexed == null) {
+            return null;
+        }
+        try {
+            PluginJar jar = indexed.jar();
+            byte[] bytes = jar.read(path);
+            if (bytes == null) {
+                return null;
+            }
+            definePackageIfNeeded(name, indexed, jar);
+            return defineClass(name, bytes, 0, bytes.length, indexed.codeSource);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    /**
+     * 通过包索引找到包含该条目的jar
+     */
+    private IndexedJar findEntry(String path) {
+        List<IndexedJar> candidates = packageIndex.get(packageOf(path));
+        if (candidates != null) {
+            for (IndexedJar indexed : candidates) {
+                if (indexed.jar().contains(path)) {
+                    return indexed;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 通过包索引直接在所属jar中查找资源
+     */
+    @Override
+    public URL findResource(String name) {
+        IndexedJar indexed = findEntry(name);
+        if (indexed == null) {
+            return null;
+        }
+        try {
+            return indexed.resourceUrl(name);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 在所有包含该资源的jar中查找
+     */
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        List<URL> urls = new ArrayList<>();
+        List<IndexedJar> candidates = packageIndex.get(packageOf(name));
+        if (candidates != null) {
+            for (IndexedJar indexed : candidates) {
+                if (indexed.jar().contains(name)) {
+                    urls.add(indexed.resourceUrl(name));
                 }
-                throw e;
             }
         }
+        return Collections.enumeration(urls);
     }
 
+    /**
+     * 与类的查找顺序一致，父加载器优先（父加载器确认没有的资源直接跳过）
+     */
+    @Override
+    public URL getResource(String name) {
+        String key = "/" + name;
+        if (!parentMisses.contains(key)) {
+            ClassLoader parent = getParent();
+            URL url = parent != null ? parent.getResource(name) : getSystemResource(name);
+            if (url != null) {
+                return url;
+            }
+            parentMisses.add(key);
+        }
+        return findResource(name);
+    }
 
-}
\ No newline at end of file
+    /**
+     * 与类的查找顺序一致，父加载器优先；插件jar中的资源直接读取，不经过URL连接
+     */
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        String key = "/" + name;
+        if (!parentMisses.contains(key)) {
+            ClassLoader parent = getParent();
+            InputStream in = parent != null ? parent.getResourceAsStream(name) : getSystemResourceAsStream(name);
+            if (in != null) {
+                return in;
+            }
+            parentMisses.add(key);
+        }
+        IndexedJar indexed = findEntry(name);
+        if (indexed == null) {
+            return null;
+        }
+        try {
+            byte[] bytes = indexed.jar().read(name);
+            return bytes != null ? new ByteArrayInputStream(bytes) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 记录从其他插件加载器解析到了类，该加载器被淘汰时本加载器也要淘汰
+     */
+    void linkPeer(InjectionClassLoader peer) {
+        if (linkedPeers.addIfAbsent(peer)) {
+            peer.dependents.add(this);
+        }
+    }
+
+    List<InjectionClassLoader> getLinkedPeers() {
+        return linkedPeers;
+    }
+
+    List<InjectionClassLoader> getDependents() {
+        synchronized (dependents) {
+            return new ArrayList<>(dependents);
+        }
+    }
+
+    JarHandles getHandles() {
+        return handles;
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    void markRetired() {
+        retired = true;
+    }
+
+    /**
+     * 加载器的描述（所含jar的文件名，共享加载器没有jar），用于日志
+     */
+    String describe() {
+        if (jars.isEmpty()) {
+            return "共享加载器";
+        }
+        StringJoiner joiner = new StringJoiner(", ");
+        for (File file : new TreeSet<>(jars.keySet())) {
+            joiner.add(file.getName());
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * 清空父加载器找不到的类和资源的缓存，父加载器的搜索路径变化后调用
+     */
+    void clearParentMisses() {
+        parentMisses.clear();
+    }
+
+    private void definePackageIfNeeded(String className, IndexedJar indexed, PluginJar jar) throws IOException {
+        int dot = className.lastIndexOf('.');
+        if (dot < 0) return;
+        String pkg = className.substring(0, dot);
+        if (getPackage(pkg) != null) return;
+        try {
+            Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                definePackage(pkg, manifest, indexed.url);
+            } else {
+                definePackage(pkg, null, null, null, null, null, null, null);
+            }
+        } catch (IllegalArgumentException ignored) {
+            // 并行加载时其他线程已定义
+        }
+    }
+
+    private static String packageOf(String entryName) {
+        int slash = entryName.lastIndexOf('/');
+        return slash < 0 ? "" : entryName.substring(0, slash + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        packageIndex.clear();
+        jars.clear();
+        handles.release();
+        super.close();
+    }
+}
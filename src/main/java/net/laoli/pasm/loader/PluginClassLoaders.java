@@ -0,0 +1,261 @@
+package net.laoli.pasm.loader;
+
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件类加载器管理 - 每个插件jar一个独立的子类加载器
+ * jar被修改或删除时旧加载器被淘汰，不再被引用后连同其加载的类一起被回收，释放元空间；
+ * 淘汰的加载器通过弱引用跟踪，可确认是否真正被回收，回收后才释放它持有的jar句柄（旧类仍可能在运行并按需加载类）。
+ * 插件之间可以互相引用类：本插件和父加载器都找不到的类，按jar路径顺序交给包含它的插件的加载器定义；
+ * 从某个加载器解析过类的加载器（包括共享加载器）会随它一起淘汰，不会继续链接旧版本的类
+ *
+ * @author laoli
+ */
+public final class PluginClassLoaders {
+    private static final PluginClassLoaders INSTANCE = new PluginClassLoaders();
+
+    private final ClassLoader parent;
+    private final Map<File, InjectionClassLoader> loaders = new ConcurrentHashMap<>();
+    // 已淘汰但尚未被回收的加载器
+    private final ReferenceQueue<InjectionClassLoader> collectedQueue = new ReferenceQueue<>();
+    private final Set<RetiredLoader> retired = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicLong retiredCount = new AtomicLong();
+    private final AtomicLong collectedCount = new AtomicLong();
+    // 没有自己jar的共享加载器，可以看到所有插件的类
+    private volatile InjectionClassLoader sharedLoader;
+
+    /**
+     * 已淘汰加载器的弱引用，记录来源jar便于排查未被回收的加载器
+     */
+    private static final class RetiredLoader extends WeakReference<InjectionClassLoader> {
+        final String jarName;
+        final InjectionClassLoader.JarHandles handles;
+
+        RetiredLoader(InjectionClassLoader loader, ReferenceQueue<InjectionClassLoader> queue) {
+            super(loader, queue);
+            this.jarName = loader.describe();
+            this.handles = loader.getHandles();
+        }
+    }
+
+    private PluginClassLoaders() {
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        this.parent = contextLoader != null ? contextLoader : ClassLoader.getSystemClassLoader();
+    }
+
+    public static PluginClassLoaders getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取插件jar对应的类加载器，不存在时创建
+     */
+    public InjectionClassLoader getLoader(File jarFile) throws IOException {
+        File key = jarFile.getAbsoluteFile();
+        InjectionClassLoader loader = loaders.get(key);
+        if (loader != null) {
+            return loader;
+        }
+        synchronized (this) {
+            loader = loaders.get(key);
+            if (loader == null) {
+                loader = new InjectionClassLoader(parent, this);
+                try {
+                    loader.addPluginJar(key);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                loaders.put(key, loader);
+                PrintUtils.debug("创建插件类加载器: " + key.getName());
+            }
+            return loader;
+        }
+    }
+
+    /**
+     * 获取共享类加载器：自身不包含jar，父加载器找不到的类按jar路径顺序交给各插件的加载器
+     */
+    public InjectionClassLoader getSharedLoader() {
+        InjectionClassLoader loader = sharedLoader;
+        if (loader == null) {
+            synchronized (this) {
+                loader = sharedLoader;
+                if (loader == null) {
+                    loader = new InjectionClassLoader(parent, this);
+                    sharedLoader = loader;
+                }
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * 在其他插件jar中查找类（按jar路径顺序），由包含该类的插件的加载器定义，找不到时返回null
+     */
+    Class<?> findPeerClass(String name, InjectionClassLoader requester) throws ClassNotFoundException {
+        if (requester.isRetired()) {
+            // 已淘汰的加载器只从原来链接过的加载器查找，不与新版本的插件混用
+            for (InjectionClassLoader peer : requester.getLinkedPeers()) {
+                Class<?> c = peer.loadLocal(name);
+                if (c != null) {
+                    return c;
+                }
+            }
+            return null;
+        }
+        String path = name.replace('.', '/') + ".class";
+        for (PluginJar jar : PluginJarStore.getInstance().getJars()) {
+            if (!jar.contains(path)) {
+                continue;
+            }
+            InjectionClassLoader loader;
+            try {
+                loader = getLoader(jar.getFile());
+            } catch (IOException e) {
+                PrintUtils.debug("创建插件类加载器失败: " + jar.getName() + " - " + e.getMessage());
+                continue;
+            }
+            if (loader == requester) {
+                continue;
+            }
+            Class<?> c = loader.loadLocal(name);
+            if (c != null) {
+                requester.linkPeer(loader);
+                if (loader.isRetired()) {
+                    // 查找期间该加载器刚被淘汰，依赖它的加载器同样淘汰
+                    retire(requester);
+                }
+                return c;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 淘汰插件jar的类加载器（jar被修改或删除时调用），下次获取时重新创建
+     * 从它解析过类的加载器（包括共享加载器）一并淘汰；加载器不立即关闭，被回收后才释放jar句柄
+     */
+    public synchronized void retire(File jarFile) {
+        InjectionClassLoader loader = loaders.get(jarFile.getAbsoluteFile());
+        if (loader != null) {
+            retire(loader);
+        }
+        expunge();
+    }
+
+    private synchronized void retire(InjectionClassLoader root) {
+        Deque<InjectionClassLoader> queue = new ArrayDeque<>();
+        queue.add(root);
+        InjectionClassLoader loader;
+        while ((loader = queue.poll()) != null) {
+            if (loader.isRetired()) {
+                continue;
+            }
+            loader.markRetired();
+            loaders.values().remove(loader);
+            if (sharedLoader == loader) {
+                sharedLoader = null;
+            }
+            retired.add(new RetiredLoader(loader, collectedQueue));
+            retiredCount.incrementAndGet();
+            PrintUtils.debug("淘汰插件类加载器: " + loader.describe());
+            queue.addAll(loader.getDependents());
+        }
+    }
+
+    /**
+     * 清空所有活跃加载器中父加载器找不到的类的缓存（重载或系统类加载器搜索路径变化后调用）
+     */
+    public void clearParentMisses() {
+        for (InjectionClassLoader loader : loaders.values()) {
+            loader.clearParentMisses();
+        }
+        InjectionClassLoader shared = sharedLoader;
+        if (shared != null) {
+            shared.clearParentMisses();
+        }
+    }
+
+    /**
+     * 处理已被回收的加载器
+     */
+    private void expunge() {
+        Reference<? extends InjectionClassLoader> ref;
+        while ((ref = collectedQueue.poll()) != null) {
+            if (retired.remove(ref)) {
+                ((RetiredLoader) ref).handles.release();
+                collectedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 当前活跃的插件类加载器数量
+     */
+    public int getActiveCount() {
+        return loaders.size();
+    }
+
+    /**
+     * 累计淘汰的加载器数量
+     */
+    public long getRetiredCount() {
+        return retiredCount.get();
+    }
+
+    /**
+     * 累计已被回收的淘汰加载器数量
+     */
+    public long getCollectedCount() {
+        expunge();
+        return collectedCount.get();
+    }
+
+    /**
+     * 已淘汰但仍未被回收的加载器数量；长期不为0说明有对象（线程、回调、静态字段等）仍引用旧插件类
+     */
+    public int getPendingCount() {
+        expunge();
+        return retired.size();
+    }
+
+    /**
+     * 当前元空间使用量（字节），JVM不提供时返回-1
+     */
+    public static long getMetaspaceUsed() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                return pool.getUsage().getUsed();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 打印类加载器统计，调试模式下列出尚未被回收的加载器
+     */
+    public void printStats() {
+        long metaspace = getMetaspaceUsed();
+        PrintUtils.info("插件类加载器: 活跃 " + getActiveCount() + ", 已淘汰 " + getRetiredCount() +
+                ", 已回收 " + getCollectedCount() + ", 待回收 " + getPendingCount() +
+                (metaspace >= 0 ? ", 元空间 " + metaspace / 1024 + "KB" : ""));
+        if (PrintUtils.isDebugEnabled()) {
+            for (RetiredLoader ref : retired) {
+                PrintUtils.debug("  尚未回收: " + ref.jarName);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package net.laoli.pasm.loader;
+
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * 插件jar - 每个jar只保留一个打开的文件句柄
+ * 打开时读取中央目录并建立 名称->条目 索引（不做内存映射，关闭后不会继续锁住文件），
+ * 读取条目时按解压后大小一次分配缓冲区，通常一次定位读取即可拿到本地文件头和数据。
+ * 句柄按引用计数关闭：仓库持有一个引用，类加载器使用期间各持有一个，全部释放后才关闭文件
+ *
+ * @author laoli
+ */
+public final class PluginJar implements Closeable {
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int LOC_HEADER = 30;
+    private static final int END_HEADER = 22;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    // 预读本地文件头时为扩展字段预留的字节数，不够时再补读一次
+    private static final int LOCAL_EXTRA_SLACK = 64;
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries;
+    // 打开时的引用属于仓库
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private volatile Manifest manifest;
+    private volatile boolean manifestLoaded;
+
+    /**
+     * jar中的一个条目（来自中央目录）
+     */
+    public static final class Entry {
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+        final int nameLength;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset, int nameLength) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.nameLength = nameLength;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    private PluginJar(File file, long length, long lastModified, FileChannel channel, Map<String, Entry> entries) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    /**
+     * 打开jar并解析中央目录
+     */
+    public static PluginJar open(File file) throws IOException {
+        long lastModified = file.lastModified();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            return new PluginJar(file, size, lastModified, channel, readCentralDirectory(channel, size));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static Map<String, Entry> readCentralDirectory(FileChannel channel, long fileSize) throws IOException {
+        // 1. 从文件末尾查找中央目录结束记录
+        int tailSize = (int) Math.min(fileSize, END_HEADER + 0xFFFF);
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_HEADER; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("不是有效的jar文件（找不到中央目录）");
+        }
+
+        long total = tail.getShort(end + 10) & 0xFFFF;
+        long cenSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cenOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        // 2. Zip64：条目数或偏移超出范围时读取Zip64结束记录
+        if ((total == 0xFFFF || cenSize == 0xFFFFFFFFL || cenOffset == 0xFFFFFFFFL) && end >= 20
+                && tail.getInt(end - 20) == ZIP64_LOCATOR_SIG) {
+            long zip64EndOffset = tail.getLong(end - 20 + 8);
+            ByteBuffer zip64End = readFully(channel, zip64EndOffset, 56);
+            if (zip64End.getInt(0) != ZIP64_END_SIG) {
+                throw new IOException("Zip64结束记录损坏");
+            }
+            total = zip64End.getLong(32);
+            cenSize = zip64End.getLong(40);
+            cenOffset = zip64End.getLong(48);
+        }
+
+        // 3. 读取中央目录并建立索引
+        if (cenSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("中央目录过大");
+        }
+        ByteBuffer cen = readFully(channel, cenOffset, (int) cenSize);
+        Map<String, Entry> entries = new HashMap<>((int) Math.min(Integer.MAX_VALUE / 2, total * 4 / 3 + 1));
+        int pos = 0;
+        for (long i = 0; i < total; i++) {
+            if (cen.getInt(pos) != CEN_SIG) {
+                throw new IOException("中央目录损坏");
+            }
+            int method = cen.getShort(pos + 10) & 0xFFFF;
+            long compressedSize = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLength];
+            cen.position(pos + 46);
+            cen.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // Zip64扩展字段：按顺序只包含被标记为0xFFFFFFFF的值
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                int extra = pos + 46 + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int headerId = cen.getShort(extra) & 0xFFFF;
+                    int dataSize = cen.getShort(extra + 2) & 0xFFFF;
+                    if (headerId == 0x0001) {
+                        int p = extra + 4;
+                        if (size == 0xFFFFFFFFL) { size = cen.getLong(p); p += 8; }
+                        if (compressedSize == 0xFFFFFFFFL) { compressedSize = cen.getLong(p); p += 8; }
+                        if (localHeaderOffset == 0xFFFFFFFFL) { localHeaderOffset = cen.getLong(p); }
+                        break;
+                    }
+                    extra += 4 + dataSize;
+                }
+            }
+
+            entries.put(name, new Entry(name, method, compressedSize, size, localHeaderOffset, nameLength));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * 读取条目的完整内容，不存在时返回null
+     */
+    public byte[] read(String name) throws IOException {
+        Entry entry = entries.get(name);
+        return entry != null ? read(entry) : null;
+    }
+
+    /**
+     * 读取条目的完整内容（缓冲区按解压后大小一次分配）
+     */
+    public byte[] read(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE - 8 || entry.compressedSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("条目过大: " + entry.name);
+        }
+        int compressedSize = (int) entry.compressedSize;
+
+        // 一次读取本地文件头+数据；本地扩展字段超过预留长度时再补读
+        int guess = LOC_HEADER + entry.nameLength + LOCAL_EXTRA_SLACK + compressedSize;
+        ByteBuffer buf = readFully(channel, entry.localHeaderOffset,
+                (int) Math.min(guess, length - entry.localHeaderOffset));
+        if (buf.getInt(0) != LOC_SIG) {
+            throw new IOException("本地文件头损坏: " + entry.name);
+        }
+        int dataStart = LOC_HEADER + (buf.getShort(26) & 0xFFFF) + (buf.getShort(28) & 0xFFFF);
+        if (dataStart + compressedSize > buf.limit()) {
+            buf = readFully(channel, entry.localHeaderOffset + dataStart, compressedSize);
+            dataStart = 0;
+        }
+
+        byte[] out = new byte[(int) entry.size];
+        if (entry.method == STORED) {
+            buf.position(dataStart);
+            buf.get(out);
+            return out;
+        }
+        if (entry.method != DEFLATED) {
+            throw new IOException("不支持的压缩方式 " + entry.method + ": " + entry.name);
+        }
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(buf.array(), buf.arrayOffset() + dataStart, compressedSize);
+            int n = 0;
+            while (n < out.length) {
+                int r = inflater.inflate(out, n, out.length - n);
+                if (r == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != out.length) {
+                throw new IOException("解压后大小不符: " + entry.name);
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("解压失败: " + entry.name + " - " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * 获取jar的清单，没有时返回null
+     */
+    public Manifest getManifest() throws IOException {
+        if (!manifestLoaded) {
+            byte[] bytes = read("META-INF/MANIFEST.MF");
+            manifest = bytes != null ? new Manifest(new ByteArrayInputStream(bytes)) : null;
+            manifestLoaded = true;
+        }
+        return manifest;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return file.getName();
+    }
+
+    /**
+     * 文件大小和修改时间与打开时一致
+     */
+    public boolean isUpToDate() {
+        return file.length() == length && file.lastModified() == lastModified;
+    }
+
+    /**
+     * 增加一个引用；句柄已经关闭时返回false
+     */
+    public boolean retain() {
+        for (int n = refs.get(); n > 0; n = refs.get()) {
+            if (refs.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 释放一个引用，最后一个引用释放时关闭文件
+     */
+    public void release() {
+        if (refs.decrementAndGet() == 0) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                PrintUtils.debug("关闭插件jar失败: " + getName() + " - " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 立即关闭文件，不考虑其他引用
+     */
+    @Override
+    public void close() throws IOException {
+        refs.set(0);
+        channel.close();
+    }
+}
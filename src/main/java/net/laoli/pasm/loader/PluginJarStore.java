@@ -0,0 +1,225 @@
+package net.laoli.pasm.loader;
+
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * 插件jar仓库 - 扫描器、类加载器和注入器共用，每个jar只打开一次
+ * jar按文件路径排序，按类名查找时的顺序是确定的。
+ * 与注入快照一样分两阶段：扫描时把jar暂存为新快照（文件变化时打开新句柄），不影响已发布的快照；
+ * 发布时整体替换，被替换的旧句柄在下一次发布时才释放，仍在使用它的类加载器淘汰后才真正关闭
+ *
+ * @author laoli
+ */
+public final class PluginJarStore {
+    private static final PluginJarStore INSTANCE = new PluginJarStore();
+
+    /**
+     * 一组插件jar的不可变快照
+     */
+    public static final class Snapshot {
+        public static final Snapshot EMPTY = new Snapshot(ImmutableSortedMap.of());
+
+        private final ImmutableSortedMap<File, PluginJar> jars;
+
+        private Snapshot(ImmutableSortedMap<File, PluginJar> jars) {
+            this.jars = jars;
+        }
+
+        /**
+         * 获取快照中的jar，不存在时返回null
+         */
+        public PluginJar get(File file) {
+            return jars.get(file.getAbsoluteFile());
+        }
+
+        public Collection<PluginJar> getJars() {
+            return jars.values();
+        }
+
+        /**
+         * 按文件路径顺序读取类字节码，找不到时返回null
+         */
+        public byte[] readClass(String internalName) throws IOException {
+            String entryName = internalName + ".class";
+            for (PluginJar jar : jars.values()) {
+                if (jar.contains(entryName)) {
+                    return jar.read(entryName);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 快照中是否有jar包含指定类
+         */
+        public boolean containsClass(String internalName) {
+            String entryName = internalName + ".class";
+            for (PluginJar jar : jars.values()) {
+                if (jar.contains(entryName)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private volatile Snapshot published = Snapshot.EMPTY;
+    // 本次扫描暂存的jar（包括未变化、直接沿用已发布句柄的）
+    private final TreeMap<File, PluginJar> staging = new TreeMap<>();
+    // 已打开但尚未发布的句柄；重载放弃时保留，下一次扫描文件未变化时直接沿用
+    private final Map<File, PluginJar> unpublished = new HashMap<>();
+    // 上一次发布时被替换的句柄，留给仍在使用旧注入快照的转换，下一次发布时释放
+    private List<PluginJar> draining = new ArrayList<>();
+    // 当前线程读取插件类时使用的快照（预计算新快照时），为null时使用已发布的快照
+    private final ThreadLocal<Snapshot> reading = new ThreadLocal<>();
+
+    private PluginJarStore() {
+    }
+
+    public static PluginJarStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 开始一次扫描，清空暂存区
+     */
+    public synchronized void beginStage() {
+        staging.clear();
+    }
+
+    /**
+     * 暂存jar并返回其句柄：已发布或已打开的句柄文件未变化时直接沿用，否则打开新句柄；不影响已发布的快照
+     */
+    public synchronized PluginJar stage(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        PluginJar jar = published.get(key);
+        if (jar == null || !jar.isUpToDate()) {
+            jar = unpublished.get(key);
+            if (jar == null || !jar.isUpToDate()) {
+                if (jar != null) {
+                    jar.release();
+                }
+                jar = PluginJar.open(key);
+                unpublished.put(key, jar);
+            }
+        }
+        staging.put(key, jar);
+        return jar;
+    }
+
+    /**
+     * 本次扫描暂存的jar快照
+     */
+    public synchronized Snapshot getStaged() {
+        return new Snapshot(ImmutableSortedMap.copyOf(staging));
+    }
+
+    /**
+     * 发布快照，返回句柄被替换或已移除的jar文件，调用方据此淘汰对应的类加载器
+     * 也可以重新发布上一个快照（重载放弃时回滚），已发布的快照重复发布时不做任何事
+     */
+    public synchronized Set<File> publish(Snapshot snapshot) {
+        Snapshot previous = published;
+        if (snapshot == previous) {
+            return Collections.emptySet();
+        }
+        published = snapshot;
+
+        Set<File> replaced = new TreeSet<>();
+        List<PluginJar> retired = new ArrayList<>();
+        for (Map.Entry<File, PluginJar> entry : previous.jars.entrySet()) {
+            if (snapshot.get(entry.getKey()) != entry.getValue()) {
+                replaced.add(entry.getKey());
+                retired.add(entry.getValue());
+            }
+        }
+        // 未被采用的暂存句柄不再需要
+        for (Map.Entry<File, PluginJar> entry : unpublished.entrySet()) {
+            if (snapshot.get(entry.getKey()) != entry.getValue()) {
+                entry.getValue().release();
+            }
+        }
+        unpublished.clear();
+        // 回滚时旧快照重新发布，其中的句柄不再释放
+        Set<PluginJar> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(snapshot.getJars());
+        for (PluginJar jar : draining) {
+            if (!current.contains(jar)) {
+                jar.release();
+            }
+        }
+        draining = retired;
+        return replaced;
+    }
+
+    /**
+     * 在当前线程中以指定快照读取插件类（{@link #readClass}）执行操作，用于发布前按新快照预计算
+     */
+    public <T> T readWith(Snapshot snapshot, Callable<T> action) throws Exception {
+        Snapshot outer = reading.get();
+        reading.set(snapshot);
+        try {
+            return action.call();
+        } finally {
+            if (outer != null) {
+                reading.set(outer);
+            } else {
+                reading.remove();
+            }
+        }
+    }
+
+    /**
+     * 获取已发布的jar并增加一个引用，供需要长期持有同一句柄的使用方（类加载器）使用，
+     * 不再使用时调用 {@link PluginJar#release()}
+     * 句柄恰好在发布新快照时被释放的，在仓库锁内重新读取一次（发布不会同时进行），仍失败时抛出异常
+     */
+    public PluginJar acquire(File file) throws IOException {
+        PluginJar jar = published.get(file);
+        if (jar != null && jar.retain()) {
+            return jar;
+        }
+        synchronized (this) {
+            jar = published.get(file);
+            if (jar == null) {
+                throw new IOException("插件jar未发布: " + file.getName());
+            }
+            if (!jar.retain()) {
+                throw new IOException("插件jar句柄已关闭: " + file.getName());
+            }
+            return jar;
+        }
+    }
+
+    /**
+     * 获取已发布的jar，不存在时返回null
+     */
+    public PluginJar get(File file) {
+        return published.get(file);
+    }
+
+    /**
+     * 按文件路径顺序在插件jar中读取类字节码，找不到时返回null
+     */
+    public byte[] readClass(String internalName) throws IOException {
+        Snapshot snapshot = reading.get();
+        return (snapshot != null ? snapshot : published).readClass(internalName);
+    }
+
+    /**
+     * 插件jar中是否有指定类（与 {@link #readClass} 使用同一快照）
+     */
+    public boolean containsClass(String internalName) {
+        Snapshot snapshot = reading.get();
+        return (snapshot != null ? snapshot : published).containsClass(internalName);
+    }
+
+    public List<PluginJar> getJars() {
+        return new ArrayList<>(published.getJars());
+    }
+}
@@ -1,19 +1,37 @@
 package net.laoli.pasm.model;
 
+import net.laoli.pasm.api.ClassFilter;
+
+import java.io.File;
+
 /**
  * @author laoli
  */
 public class AsmProcessorInfo {
     private final String className;      // 全限定类名
     private final int priority;          // 优先级，越小越优先
+    private final File pluginJar;        // 所属插件jar，用于取得该插件的类加载器；为null时从共享加载器加载
+    private final ClassFilter classFilter; // pasm.json中声明的类过滤器，未声明为null
 
     public AsmProcessorInfo(String className, int priority) {
+        this(className, priority, null, null);
+    }
+
+    public AsmProcessorInfo(String className, int priority, File pluginJar) {
+        this(className, priority, pluginJar, null);
+    }
+
+    public AsmProcessorInfo(String className, int priority, File pluginJar, ClassFilter classFilter) {
         this.className = className;
         this.priority = priority;
+        this.pluginJar = pluginJar;
+        this.classFilter = classFilter;
     }
 
     public String getClassName() { return className; }
     public int getPriority() { return priority; }
+    public File getPluginJar() { return pluginJar; }
+    public ClassFilter getClassFilter() { return classFilter; }
 
     @Override
     public String toString() {
@@ -1,8 +1,11 @@
 package net.laoli.pasm.model;
 
 import com.google.common.base.Joiner;
+import net.laoli.pasm.annotation.Inject;
 import net.laoli.pasm.annotation.InjectionType;
 
+import java.util.Objects;
+
 /**
  * @author laoli
  */
@@ -15,10 +18,36 @@ public class InjectionInfo {
     private final String sourceDesc;       // 源方法描述符
     private final InjectionType type;      // 注入类型
     private final int priority;            // 优先级（数值越小优先级越高）
+    private final long sourceChecksum;     // 源类字节码校验和，用于热重载时识别注入代码的变化
+    private final InjectionPoint injectionPoint; // 指令级注入点（REDIRECT等），其他类型为null
+    private final InjectionOptions options;      // 注入选项
 
     public InjectionInfo(String targetClass, String targetMethod, String targetDesc,
                          String sourceClass, String sourceMethod, String sourceDesc,
                          InjectionType type, int priority) {
+        this(targetClass, targetMethod, targetDesc, sourceClass, sourceMethod, sourceDesc,
+                type, priority, 0L);
+    }
+
+    public InjectionInfo(String targetClass, String targetMethod, String targetDesc,
+                         String sourceClass, String sourceMethod, String sourceDesc,
+                         InjectionType type, int priority, long sourceChecksum) {
+        this(targetClass, targetMethod, targetDesc, sourceClass, sourceMethod, sourceDesc,
+                type, priority, sourceChecksum, null);
+    }
+
+    public InjectionInfo(String targetClass, String targetMethod, String targetDesc,
+                         String sourceClass, String sourceMethod, String sourceDesc,
+                         InjectionType type, int priority, long sourceChecksum,
+                         InjectionPoint injectionPoint) {
+        this(targetClass, targetMethod, targetDesc, sourceClass, sourceMethod, sourceDesc,
+                type, priority, sourceChecksum, injectionPoint, InjectionOptions.DEFAULT);
+    }
+
+    public InjectionInfo(String targetClass, String targetMethod, String targetDesc,
+                         String sourceClass, String sourceMethod, String sourceDesc,
+                         InjectionType type, int priority, long sourceChecksum,
+                         InjectionPoint injectionPoint, InjectionOptions options) {
         this.targetClass = targetClass;
         this.targetMethod = targetMethod;
         this.targetDesc = targetDesc;
@@ -27,6 +56,9 @@ public class InjectionInfo {
         this.sourceDesc = sourceDesc;
         this.type = type;
         this.priority = priority;
+        this.sourceChecksum = sourceChecksum;
+        this.injectionPoint = injectionPoint;
+        this.options = options != null ? options : InjectionOptions.DEFAULT;
     }
 
     // Getters
@@ -62,6 +94,18 @@ public class InjectionInfo {
         return priority;
     }
 
+    public long getSourceChecksum() {
+        return sourceChecksum;
+    }
+
+    public InjectionPoint getInjectionPoint() {
+        return injectionPoint;
+    }
+
+    public InjectionOptions getOptions() {
+        return options;
+    }
+
     /**
      * 验证注入信息是否有效
      */
@@ -84,8 +128,50 @@ public class InjectionInfo {
                 sourceClass + "." + sourceMethod + sourceDesc);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InjectionInfo)) return false;
+        InjectionInfo that = (InjectionInfo) o;
+        return effectiveChecksum() == that.effectiveChecksum() && sameDeclaration(that);
+    }
+
+    /**
+     * 除源类校验和外完全一致，即注解声明相同（源类中其他代码的变化不影响）
+     */
+    public boolean sameDeclaration(InjectionInfo that) {
+        return priority == that.priority &&
+                type == that.type &&
+                Objects.equals(targetClass, that.targetClass) &&
+                Objects.equals(targetMethod, that.targetMethod) &&
+                Objects.equals(targetDesc, that.targetDesc) &&
+                Objects.equals(sourceClass, that.sourceClass) &&
+                Objects.equals(sourceMethod, that.sourceMethod) &&
+                Objects.equals(sourceDesc, that.sourceDesc) &&
+                Objects.equals(injectionPoint, that.injectionPoint) &&
+                Objects.equals(options, that.options);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(targetClass, targetMethod, targetDesc, sourceClass, sourceMethod, sourceDesc,
+                type, priority, effectiveChecksum(), injectionPoint, options);
+    }
+
+    /**
+     * 参与比较的校验和：INDY 注入的钩子代码变化只重新链接调用点，不需要重转换目标类，因此忽略校验和；
+     * 异步钩子忽略INDY、仍复制方法体，校验和照常参与比较
+     */
+    private long effectiveChecksum() {
+        return options.getLink() == Inject.Link.INDY && !options.isAsync() ? 0 : sourceChecksum;
+    }
+
     @Override
     public String toString() {
+        if (injectionPoint != null) {
+            return String.format("InjectionInfo{id=%s, type=%s, at=%s, priority=%d}",
+                    getInjectionId(), type, injectionPoint, priority);
+        }
         return String.format("InjectionInfo{id=%s, type=%s, priority=%d}",
                 getInjectionId(), type, priority);
     }
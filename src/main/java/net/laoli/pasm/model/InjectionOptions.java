@@ -0,0 +1,163 @@
+package net.laoli.pasm.model;
+
+import net.laoli.pasm.annotation.Inject;
+import net.laoli.pasm.annotation.Memoize;
+
+import java.util.Objects;
+
+/**
+ * 注入选项 - 各注入类型的附加参数，不可变
+ *
+ * @author laoli
+ */
+public final class InjectionOptions {
+    public static final InjectionOptions DEFAULT = builder().build();
+
+    private final Object constantReplacement;   // MODIFY_CONSTANT：替换后的字面量，null表示交给源方法处理
+    private final int memoMaxSize;              // MEMOIZE：缓存条目上限
+    private final Memoize.Scope memoScope;      // MEMOIZE：缓存范围
+    private final boolean async;                // 在PASM异步执行器中执行钩子
+    private final int sampleEvery;              // 每N次调用执行一次钩子，不大于1表示每次都执行
+    private final int maxRate;                  // 钩子每秒最多执行次数，不大于0表示不限流
+    private final int fieldAccess;              // FIELD：添加到目标类的字段的访问标志
+    private final boolean toggleable;           // 钩子前加运行时开关，可通过API/JMX启用禁用
+    private final Inject.Link link;             // 钩子的链接方式：复制方法体或 invokedynamic
+
+    private InjectionOptions(Builder builder) {
+        this.constantReplacement = builder.constantReplacement;
+        this.memoMaxSize = builder.memoMaxSize;
+        this.memoScope = builder.memoScope;
+        this.async = builder.async;
+        this.sampleEvery = builder.sampleEvery;
+        this.maxRate = builder.maxRate;
+        this.fieldAccess = builder.fieldAccess;
+        this.toggleable = builder.toggleable;
+        this.link = builder.link;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Object getConstantReplacement() {
+        return constantReplacement;
+    }
+
+    public int getMemoMaxSize() {
+        return memoMaxSize;
+    }
+
+    public Memoize.Scope getMemoScope() {
+        return memoScope;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    public int getMaxRate() {
+        return maxRate;
+    }
+
+    public int getFieldAccess() {
+        return fieldAccess;
+    }
+
+    public boolean isToggleable() {
+        return toggleable;
+    }
+
+    public Inject.Link getLink() {
+        return link;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InjectionOptions)) return false;
+        InjectionOptions that = (InjectionOptions) o;
+        return memoMaxSize == that.memoMaxSize &&
+                async == that.async &&
+                sampleEvery == that.sampleEvery &&
+                maxRate == that.maxRate &&
+                fieldAccess == that.fieldAccess &&
+                toggleable == that.toggleable &&
+                Objects.equals(constantReplacement, that.constantReplacement) &&
+                memoScope == that.memoScope &&
+                link == that.link;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(constantReplacement, memoMaxSize, memoScope, async, sampleEvery, maxRate, fieldAccess, toggleable,
+                link);
+    }
+
+    public static final class Builder {
+        private Object constantReplacement;
+        private int memoMaxSize = 1024;
+        private Memoize.Scope memoScope = Memoize.Scope.AUTO;
+        private boolean async;
+        private int sampleEvery = 1;
+        private int maxRate;
+        private int fieldAccess;
+        private boolean toggleable;
+        private Inject.Link link = Inject.Link.COPY;
+
+        private Builder() {
+        }
+
+        public Builder constantReplacement(Object constantReplacement) {
+            this.constantReplacement = constantReplacement;
+            return this;
+        }
+
+        public Builder memoMaxSize(int memoMaxSize) {
+            this.memoMaxSize = memoMaxSize;
+            return this;
+        }
+
+        public Builder memoScope(Memoize.Scope memoScope) {
+            this.memoScope = memoScope;
+            return this;
+        }
+
+        public Builder async(boolean async) {
+            this.async = async;
+            return this;
+        }
+
+        public Builder sampleEvery(int sampleEvery) {
+            this.sampleEvery = sampleEvery;
+            return this;
+        }
+
+        public Builder maxRate(int maxRate) {
+            this.maxRate = maxRate;
+            return this;
+        }
+
+        public Builder fieldAccess(int fieldAccess) {
+            this.fieldAccess = fieldAccess;
+            return this;
+        }
+
+        public Builder toggleable(boolean toggleable) {
+            this.toggleable = toggleable;
+            return this;
+        }
+
+        public Builder link(Inject.Link link) {
+            this.link = link;
+            return this;
+        }
+
+        public InjectionOptions build() {
+            return new InjectionOptions(this);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package net.laoli.pasm.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.laoli.pasm.annotation.InjectionType;
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.util.*;
+
+/**
+ * 单个目标类的注入计划 - 扫描阶段一次性构建
+ * 注入点按 name+desc 索引，已完成优先级排序和 REPLACE 独占处理；
+ * 实例不可变，可在多个类加载线程之间安全共享
+ *
+ * @author laoli
+ */
+public final class InjectionPlan {
+    private final String targetClass;                                          // 目标类名（内部名）
+    private final ImmutableMap<String, ImmutableList<InjectionInfo>> hooksByMethod; // name+desc -> 有序注入点
+    private final ImmutableList<InjectionInfo> memberBindings;                 // ACCESSOR/INVOKER/IMPLEMENT/FIELD，作用于整个类
+    private final int injectionCount;                                          // 计划内实际生效的注入点数量
+
+    private InjectionPlan(String targetClass,
+                          ImmutableMap<String, ImmutableList<InjectionInfo>> hooksByMethod,
+                          ImmutableList<InjectionInfo> memberBindings) {
+        this.targetClass = targetClass;
+        this.hooksByMethod = hooksByMethod;
+        this.memberBindings = memberBindings;
+        int count = memberBindings.size();
+        for (List<InjectionInfo> hooks : hooksByMethod.values()) {
+            count += hooks.size();
+        }
+        this.injectionCount = count;
+    }
+
+    /**
+     * 根据同一目标类的全部注入信息构建注入计划
+     */
+    public static InjectionPlan build(String targetClass, List<InjectionInfo> injections) {
+        Map<String, List<InjectionInfo>> grouped = new LinkedHashMap<>();
+        ImmutableList.Builder<InjectionInfo> bindings = ImmutableList.builder();
+        for (InjectionInfo info : injections) {
+            if (!info.isValid()) continue;
+            if (info.getType() == InjectionType.ACCESSOR || info.getType() == InjectionType.INVOKER
+                    || info.getType() == InjectionType.IMPLEMENT || info.getType() == InjectionType.FIELD) {
+                bindings.add(info);
+                continue;
+            }
+            grouped.computeIfAbsent(methodKey(info.getTargetMethod(), info.getTargetDesc()),
+                    k -> new ArrayList<>()).add(info);
+        }
+
+        ImmutableMap.Builder<String, ImmutableList<InjectionInfo>> builder = ImmutableMap.builder();
+        for (Map.Entry<String, List<InjectionInfo>> entry : grouped.entrySet()) {
+            builder.put(entry.getKey(), resolve(targetClass, entry.getKey(), entry.getValue()));
+        }
+        return new InjectionPlan(targetClass, builder.build(), bindings.build());
+    }
+
+    /**
+     * 对同一方法的注入点排序（数值小优先级高，同优先级保持扫描顺序），并处理 REPLACE 独占
+     */
+    private static ImmutableList<InjectionInfo> resolve(String targetClass, String methodKey,
+                                                        List<InjectionInfo> hooks) {
+        List<InjectionInfo> sorted = new ArrayList<>(hooks);
+        sorted.sort(Comparator.comparingInt(InjectionInfo::getPriority));
+
+        InjectionInfo replace = null;
+        int replaceCount = 0;
+        for (InjectionInfo info : sorted) {
+            if (info.getType() == InjectionType.REPLACE) {
+                if (replace == null) replace = info;
+                replaceCount++;
+            }
+        }
+
+        if (replace == null) {
+            return ImmutableList.copyOf(sorted);
+        }
+        if (replaceCount > 1) {
+            PrintUtils.warn("方法 " + targetClass + "." + methodKey + " 存在多个 REPLACE 注入，仅执行优先级最高的: "
+                    + replace.getSourceMethod());
+        }
+        if (sorted.size() > replaceCount) {
+            List<String> skipped = new ArrayList<>();
+            for (InjectionInfo info : sorted) {
+                if (info.getType() != InjectionType.REPLACE) {
+                    skipped.add(info.getType() + " " + info.getSourceClass() + "." + info.getSourceMethod());
+                }
+            }
+            PrintUtils.warn("方法 " + targetClass + "." + methodKey + " 存在 REPLACE 注入，跳过其他 "
+                    + skipped.size() + " 个注入点: " + skipped);
+        }
+        // REPLACE 独占：仅保留这一个
+        return ImmutableList.of(replace);
+    }
+
+    /**
+     * 方法索引键
+     */
+    public static String methodKey(String name, String desc) {
+        return name + desc;
+    }
+
+    /**
+     * 获取指定方法的注入点（已排序），没有则返回空列表
+     */
+    public List<InjectionInfo> getHooks(String name, String desc) {
+        List<InjectionInfo> hooks = hooksByMethod.get(methodKey(name, desc));
+        return hooks != null ? hooks : ImmutableList.of();
+    }
+
+    /**
+     * 访问器/调用器/接口/字段绑定（ACCESSOR/INVOKER/IMPLEMENT/FIELD），与具体方法无关
+     */
+    public List<InjectionInfo> getMemberBindings() {
+        return memberBindings;
+    }
+
+    public String getTargetClass() {
+        return targetClass;
+    }
+
+    public Map<String, ImmutableList<InjectionInfo>> getHooksByMethod() {
+        return hooksByMethod;
+    }
+
+    public int getInjectionCount() {
+        return injectionCount;
+    }
+
+    public boolean isEmpty() {
+        return hooksByMethod.isEmpty() && memberBindings.isEmpty();
+    }
+
+    /**
+     * 两个计划（null表示没有计划）的方法钩子是否完全一致
+     * 接口注入复制到目标类的方法体也按钩子比较：源类校验和变化时方法体可能变化，通过重转换即可应用
+     */
+    public static boolean sameHooks(InjectionPlan a, InjectionPlan b) {
+        return hooksOf(a).equals(hooksOf(b)) && copiedChecksums(a).equals(copiedChecksums(b));
+    }
+
+    /**
+     * 两个计划（null表示没有计划）的成员绑定声明是否一致；只比较声明，不比较源类校验和，
+     * 源类中其他代码的变化不会改变绑定添加的成员
+     */
+    public static boolean sameBindings(InjectionPlan a, InjectionPlan b) {
+        List<InjectionInfo> oldBindings = bindingsOf(a);
+        List<InjectionInfo> newBindings = bindingsOf(b);
+        if (oldBindings.size() != newBindings.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldBindings.size(); i++) {
+            if (!oldBindings.get(i).sameDeclaration(newBindings.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 接口注入的源类（方法被复制到目标类）-> 源类校验和
+     */
+    private static Map<String, Long> copiedChecksums(InjectionPlan plan) {
+        Map<String, Long> checksums = new HashMap<>();
+        for (InjectionInfo info : bindingsOf(plan)) {
+            if (info.getType() == InjectionType.IMPLEMENT) {
+                checksums.put(info.getSourceClass(), info.getSourceChecksum());
+            }
+        }
+        return checksums;
+    }
+
+    private static Map<String, ImmutableList<InjectionInfo>> hooksOf(InjectionPlan plan) {
+        return plan != null ? plan.hooksByMethod : ImmutableMap.of();
+    }
+
+    private static List<InjectionInfo> bindingsOf(InjectionPlan plan) {
+        return plan != null ? plan.memberBindings : ImmutableList.of();
+    }
+
+    /**
+     * 两个计划的生效注入点完全一致（包括顺序和源类校验和）时相等，用于热重载时比较新旧计划
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InjectionPlan)) return false;
+        InjectionPlan that = (InjectionPlan) o;
+        return targetClass.equals(that.targetClass) && hooksByMethod.equals(that.hooksByMethod) &&
+                memberBindings.equals(that.memberBindings);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * targetClass.hashCode() + hooksByMethod.hashCode()) + memberBindings.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "InjectionPlan{target='" + targetClass + "', methods=" + hooksByMethod.size() +
+                ", injections=" + injectionCount + '}';
+    }
+}
@@ -0,0 +1,202 @@
+package net.laoli.pasm.model;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+import java.util.Objects;
+
+/**
+ * 方法内的指令级注入点 - 描述要匹配的指令及第几个匹配（ordinal）
+ * 目标字符串格式与描述符一致：方法调用 Lowner;name(desc)R，字段访问 Lowner;name:T
+ *
+ * @author laoli
+ */
+public final class InjectionPoint {
+
+    public enum Kind {
+        INVOKE,   // 方法调用
+        FIELD,    // 字段读写
+        CONSTANT, // 常量（Integer/Long/Float/Double/String）
+        NEW,      // 创建对象，owner为null时匹配所有NEW
+        ATHROW    // 抛出异常
+    }
+
+    /**
+     * 插入位置相对于匹配指令的偏移
+     */
+    public enum Shift {
+        BEFORE,
+        AFTER
+    }
+
+    private final Kind kind;
+    private final String owner;   // 内部名
+    private final String name;
+    private final String desc;
+    private final int ordinal;    // -1 表示所有匹配
+    private final Object constant; // CONSTANT 要匹配的常量值
+    private final Shift shift;
+
+    public InjectionPoint(Kind kind, String owner, String name, String desc, int ordinal) {
+        this(kind, owner, name, desc, ordinal, null, Shift.BEFORE);
+    }
+
+    private InjectionPoint(Kind kind, String owner, String name, String desc, int ordinal,
+                           Object constant, Shift shift) {
+        this.kind = kind;
+        this.owner = owner;
+        this.name = name;
+        this.desc = desc;
+        this.ordinal = ordinal;
+        this.constant = constant;
+        this.shift = shift;
+    }
+
+    /**
+     * 常量注入点
+     */
+    public static InjectionPoint constant(Object value, int ordinal) {
+        return new InjectionPoint(Kind.CONSTANT, null, null, null, ordinal, value, Shift.BEFORE);
+    }
+
+    /**
+     * 解析@At声明的注入点
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static InjectionPoint parseAt(String value, String target, int ordinal, String shift) {
+        Shift parsedShift = Shift.valueOf(shift);
+        Kind kind = Kind.valueOf(value);
+        switch (kind) {
+            case INVOKE:
+            case FIELD:
+                InjectionPoint member = parseMember(target, ordinal);
+                if (member.kind != kind) {
+                    throw new IllegalArgumentException("@At(" + kind + ") 的目标格式不匹配: " + target);
+                }
+                return member.withShift(parsedShift);
+            case NEW:
+                String owner = target.trim().isEmpty() ? null : target.trim().replace('.', '/');
+                return new InjectionPoint(Kind.NEW, owner, null, null, ordinal, null, parsedShift);
+            case ATHROW:
+                return new InjectionPoint(Kind.ATHROW, null, null, null, ordinal, null, parsedShift);
+            default:
+                throw new IllegalArgumentException("@At不支持: " + value);
+        }
+    }
+
+    private InjectionPoint withShift(Shift shift) {
+        return new InjectionPoint(kind, owner, name, desc, ordinal, constant, shift);
+    }
+
+    /**
+     * 解析方法调用或字段访问目标
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static InjectionPoint parseMember(String target, int ordinal) {
+        String spec = target.trim();
+        if (!spec.startsWith("L") || spec.indexOf(';') < 0) {
+            throw new IllegalArgumentException("目标必须以 Lowner; 开头: " + target);
+        }
+        int semicolon = spec.indexOf(';');
+        String owner = spec.substring(1, semicolon);
+        String member = spec.substring(semicolon + 1);
+
+        int paren = member.indexOf('(');
+        if (paren > 0) {
+            return new InjectionPoint(Kind.INVOKE, owner, member.substring(0, paren), member.substring(paren), ordinal);
+        }
+        int colon = member.indexOf(':');
+        if (colon > 0 && colon < member.length() - 1) {
+            return new InjectionPoint(Kind.FIELD, owner, member.substring(0, colon), member.substring(colon + 1), ordinal);
+        }
+        throw new IllegalArgumentException("无法识别的目标（应为 name(desc)R 或 name:T）: " + target);
+    }
+
+    /**
+     * 判断指令是否与该注入点的成员（方法调用/字段访问）匹配（不考虑ordinal）
+     * 常量匹配见 MethodValidationHelper.getConstantValue
+     */
+    public boolean matches(AbstractInsnNode insn) {
+        switch (kind) {
+            case INVOKE:
+                if (!(insn instanceof MethodInsnNode)) return false;
+                MethodInsnNode method = (MethodInsnNode) insn;
+                return method.owner.equals(owner) && method.name.equals(name) && method.desc.equals(desc);
+            case FIELD:
+                if (!(insn instanceof FieldInsnNode)) return false;
+                FieldInsnNode field = (FieldInsnNode) insn;
+                return field.owner.equals(owner) && field.name.equals(name) && field.desc.equals(desc);
+            case NEW:
+                return insn.getOpcode() == Opcodes.NEW && (owner == null || owner.equals(((TypeInsnNode) insn).desc));
+            case ATHROW:
+                return insn.getOpcode() == Opcodes.ATHROW;
+            default:
+                return false;
+        }
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public Object getConstant() {
+        return constant;
+    }
+
+    public Shift getShift() {
+        return shift;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InjectionPoint)) return false;
+        InjectionPoint that = (InjectionPoint) o;
+        return ordinal == that.ordinal &&
+                kind == that.kind &&
+                shift == that.shift &&
+                Objects.equals(constant, that.constant) &&
+                Objects.equals(owner, that.owner) &&
+                Objects.equals(name, that.name) &&
+                Objects.equals(desc, that.desc);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(kind, owner, name, desc, ordinal, constant, shift);
+    }
+
+    @Override
+    public String toString() {
+        String suffix = (ordinal >= 0 ? " #" + ordinal : "") + (shift == Shift.AFTER ? " (after)" : "");
+        if (kind == Kind.NEW || kind == Kind.ATHROW) {
+            return kind + (owner != null ? " " + owner : "") + suffix;
+        }
+        if (kind == Kind.CONSTANT) {
+            return kind + " " + (constant instanceof String ? "\"" + constant + "\"" : String.valueOf(constant)) + suffix;
+        }
+        String member = kind == Kind.FIELD ? name + ":" + desc : name + desc;
+        return kind + " L" + owner + ";" + member + suffix;
+    }
+}
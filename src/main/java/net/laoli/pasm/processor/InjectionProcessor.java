@@ -1,27 +1,31 @@
 package net.laoli.pasm.processor;
 
+import net.laoli.pasm.loader.PluginClassLoaders;
+import net.laoli.pasm.loader.PluginJarStore;
 import net.laoli.pasm.model.AsmProcessorInfo;
 import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.model.InjectionPlan;
 import net.laoli.pasm.scanner.PluginScanner;
 import net.laoli.pasm.utils.PrintUtils;
 import net.laoli.pasm.transformer.MethodCopyHelper.Pair;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 注解处理器 - 负责协调扫描和处理过程
+ * 注入信息以不可变快照（InjectionRegistry）的形式通过原子引用发布：
+ * 转换线程无锁读取同一份快照，reload 在旁路构建新快照后整体替换
  * @author laoli
  */
 public class InjectionProcessor {
-    private List<AsmProcessorInfo> globalAsmProcessors;
     private static InjectionProcessor instance;
-    private Map<String, List<InjectionInfo>> injectionsByTarget;
-    private Map<String, List<InjectionInfo>> injectionsByPoint;
+    private final AtomicReference<InjectionRegistry> registry;
     private boolean initialized = false;
 
     private InjectionProcessor() {
-        this.injectionsByTarget = new HashMap<>();
-        this.injectionsByPoint = new HashMap<>();
+        this.registry = new AtomicReference<>(InjectionRegistry.EMPTY);
     }
 
     public static synchronized InjectionProcessor getInstance() {
@@ -39,20 +43,7 @@ public class InjectionProcessor {
 
         PrintUtils.debug("开始初始化注解处理器...");
 
-        // 扫描所有插件，同时获得注入信息和ASM处理器
-        Pair<List<InjectionInfo>, List<AsmProcessorInfo>> scanResult = PluginScanner.scanAllPlugins();
-        List<InjectionInfo> allInjections = scanResult.getLeft();
-        List<AsmProcessorInfo> allAsmProcessors = scanResult.getRight();
-
-        // 按目标类分组注入信息
-        injectionsByTarget = PluginScanner.groupByTargetClass(allInjections);
-        injectionsByPoint = PluginScanner.groupByInjectionPoint(allInjections);
-
-        // 存储全局ASM处理器
-        this.globalAsmProcessors = new ArrayList<>(allAsmProcessors);
-
-        // 打印统计信息
-        printStatistics();
+        publish(scan());
 
         initialized = true;
         PrintUtils.debug("注解处理器初始化完成");
@@ -60,16 +51,64 @@ public class InjectionProcessor {
 
     /**
      * 重新加载插件（热部署）
+     * 新快照构建完成前，转换线程继续使用旧快照
      */
     public synchronized void reload() {
+        publish(prepareReload());
+    }
+
+    /**
+     * 两阶段重载的第一阶段：重新扫描插件并构建新快照，但不发布
+     */
+    public synchronized InjectionRegistry prepareReload() {
         PrintUtils.debug("重新加载插件...");
-        initialized = false;
-        injectionsByTarget.clear();
-        injectionsByPoint.clear();
-        if (globalAsmProcessors != null) {
-            globalAsmProcessors.clear();
+        return scan();
+    }
+
+    /**
+     * 两阶段重载的第二阶段：发布扫描时暂存的插件jar并原子替换快照，返回被替换的旧快照
+     */
+    public InjectionRegistry publish(InjectionRegistry snapshot) {
+        publishJars(snapshot);
+        InjectionRegistry previous = registry.getAndSet(snapshot);
+        initialized = true;
+        return previous;
+    }
+
+    /**
+     * 只发布快照中的插件jar，内容已变化或已删除的jar淘汰旧的类加载器，使用时按新内容重新创建
+     * 热重载在预计算前调用，ASM处理器需要从新jar加载；预计算失败时用旧快照再次调用即可回滚，
+     * 已发布的jar重复发布时不做任何事
+     */
+    public void publishJars(InjectionRegistry snapshot) {
+        Set<File> replaced = PluginJarStore.getInstance().publish(snapshot.getJars());
+        for (File jarFile : replaced) {
+            PluginClassLoaders.getInstance().retire(jarFile);
         }
-        initialize();
+        if (!replaced.isEmpty()) {
+            PluginClassLoaders.getInstance().clearParentMisses();
+        }
+    }
+
+    /**
+     * 扫描所有插件并构建新的快照（不发布）
+     */
+    private InjectionRegistry scan() {
+        // 扫描所有插件，同时获得注入信息和ASM处理器
+        Pair<List<InjectionInfo>, List<AsmProcessorInfo>> scanResult = PluginScanner.scanAllPlugins();
+        InjectionRegistry snapshot = InjectionRegistry.build(scanResult.getLeft(), scanResult.getRight(),
+                PluginJarStore.getInstance().getStaged());
+
+        // 打印统计信息
+        printStatistics(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 获取当前发布的快照，调用方在一次操作中应只读取一次以保证一致性
+     */
+    public InjectionRegistry getRegistry() {
+        return registry.get();
     }
 
     /**
@@ -78,14 +117,23 @@ public class InjectionProcessor {
     public List<InjectionInfo> getInjectionsForClass(String targetClassName) {
         // 转换为内部名格式
         String internalName = targetClassName.replace('.', '/');
-        return injectionsByTarget.getOrDefault(internalName, Collections.emptyList());
+        List<InjectionInfo> injections = registry.get().getInjectionsByTarget().get(internalName);
+        return injections != null ? injections : Collections.emptyList();
+    }
+
+    /**
+     * 获取指定目标类的注入计划，没有注入时返回null
+     */
+    public InjectionPlan getPlanForClass(String targetClassName) {
+        String internalName = targetClassName.replace('.', '/');
+        return registry.get().getPlan(internalName);
     }
 
     /**
      * 获取所有注入信息（按目标类分组）
      */
     public Map<String, List<InjectionInfo>> getAllInjectionsByTarget() {
-        return Collections.unmodifiableMap(injectionsByTarget);
+        return Collections.unmodifiableMap(registry.get().getInjectionsByTarget());
     }
 
     /**
@@ -93,13 +141,14 @@ public class InjectionProcessor {
      */
     public boolean hasInjectionsForClass(String targetClassName) {
         String internalName = targetClassName.replace('.', '/');
-        return injectionsByTarget.containsKey(internalName);
+        return registry.get().getPlan(internalName) != null;
     }
 
     /**
      * 打印统计信息
      */
-    private void printStatistics() {
+    private static void printStatistics(InjectionRegistry snapshot) {
+        Map<String, ? extends List<InjectionInfo>> injectionsByTarget = snapshot.getInjectionsByTarget();
         int totalInjections = injectionsByTarget.values().stream()
                 .mapToInt(List::size)
                 .sum();
@@ -107,7 +156,7 @@ public class InjectionProcessor {
         PrintUtils.debug("===== 注解处理器统计信息 =====");
         PrintUtils.debug("注入点总数: " + totalInjections);
         PrintUtils.debug("目标类数量: " + injectionsByTarget.size());
-        PrintUtils.debug("独立注入点: " + injectionsByPoint.size());
+        PrintUtils.debug("独立注入点: " + snapshot.getInjectionsByPoint().size());
 
         // 按注入类型统计
         Map<String, Integer> typeStats = new HashMap<>();
@@ -126,6 +175,6 @@ public class InjectionProcessor {
     }
 
     public List<AsmProcessorInfo> getGlobalAsmProcessors() {
-        return globalAsmProcessors;
+        return registry.get().getAsmProcessors();
     }
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package net.laoli.pasm.processor;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.laoli.pasm.loader.PluginJarStore;
+import net.laoli.pasm.model.AsmProcessorInfo;
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.model.InjectionPlan;
+import net.laoli.pasm.scanner.PluginScanner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 注入信息快照 - 一次扫描的完整结果，构建后不可变
+ * 通过InjectionProcessor中的原子引用整体发布，读取方无需加锁即可看到一致的数据
+ * 快照同时持有扫描时的插件jar，按它转换的类读取的是同一批插件字节码
+ *
+ * @author laoli
+ */
+public final class InjectionRegistry {
+    public static final InjectionRegistry EMPTY = new InjectionRegistry(
+            ImmutableMap.of(), ImmutableMap.of(), ImmutableMap.of(), ImmutableList.of(),
+            PluginJarStore.Snapshot.EMPTY);
+
+    private final ImmutableMap<String, ImmutableList<InjectionInfo>> injectionsByTarget;
+    private final ImmutableMap<String, ImmutableList<InjectionInfo>> injectionsByPoint;
+    private final ImmutableMap<String, InjectionPlan> plansByTarget;
+    private final ImmutableList<AsmProcessorInfo> asmProcessors;
+    private final PluginJarStore.Snapshot jars;
+
+    private InjectionRegistry(ImmutableMap<String, ImmutableList<InjectionInfo>> injectionsByTarget,
+                              ImmutableMap<String, ImmutableList<InjectionInfo>> injectionsByPoint,
+                              ImmutableMap<String, InjectionPlan> plansByTarget,
+                              ImmutableList<AsmProcessorInfo> asmProcessors,
+                              PluginJarStore.Snapshot jars) {
+        this.injectionsByTarget = injectionsByTarget;
+        this.injectionsByPoint = injectionsByPoint;
+        this.plansByTarget = plansByTarget;
+        this.asmProcessors = asmProcessors;
+        this.jars = jars;
+    }
+
+    /**
+     * 根据扫描结果构建快照（ASM处理器需已按优先级排序）
+     */
+    public static InjectionRegistry build(List<InjectionInfo> injections,
+                                          List<AsmProcessorInfo> asmProcessors,
+                                          PluginJarStore.Snapshot jars) {
+        Map<String, List<InjectionInfo>> byTarget = PluginScanner.groupByTargetClass(injections);
+        Map<String, List<InjectionInfo>> byPoint = PluginScanner.groupByInjectionPoint(injections);
+
+        // 预编译每个目标类的注入计划，转换时只做查找
+        ImmutableMap.Builder<String, InjectionPlan> plans = ImmutableMap.builder();
+        for (Map.Entry<String, List<InjectionInfo>> entry : byTarget.entrySet()) {
+            InjectionPlan plan = InjectionPlan.build(entry.getKey(), entry.getValue());
+            if (!plan.isEmpty()) {
+                plans.put(entry.getKey(), plan);
+            }
+        }
+
+        return new InjectionRegistry(copyOf(byTarget), copyOf(byPoint), plans.build(),
+                ImmutableList.copyOf(asmProcessors), jars);
+    }
+
+    /**
+     * 返回新快照，其中指定目标类（内部名）的注入沿用 other 中的注入，用于保留重转换失败的类正在运行的版本
+     */
+    public InjectionRegistry withTargetsFrom(InjectionRegistry other, Set<String> internalNames) {
+        if (internalNames.isEmpty()) {
+            return this;
+        }
+        List<InjectionInfo> injections = new ArrayList<>();
+        for (Map.Entry<String, ImmutableList<InjectionInfo>> entry : injectionsByTarget.entrySet()) {
+            if (!internalNames.contains(entry.getKey())) {
+                injections.addAll(entry.getValue());
+            }
+        }
+        for (String internalName : internalNames) {
+            List<InjectionInfo> kept = other.injectionsByTarget.get(internalName);
+            if (kept != null) {
+                injections.addAll(kept);
+            }
+        }
+        return build(injections, asmProcessors, jars);
+    }
+
+    private static ImmutableMap<String, ImmutableList<InjectionInfo>> copyOf(
+            Map<String, List<InjectionInfo>> grouped) {
+        ImmutableMap.Builder<String, ImmutableList<InjectionInfo>> builder = ImmutableMap.builder();
+        for (Map.Entry<String, List<InjectionInfo>> entry : grouped.entrySet()) {
+            builder.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * 获取目标类（内部名）的注入计划，没有注入时返回null
+     */
+    public InjectionPlan getPlan(String internalName) {
+        return plansByTarget.get(internalName);
+    }
+
+    public Map<String, ImmutableList<InjectionInfo>> getInjectionsByTarget() {
+        return injectionsByTarget;
+    }
+
+    public Map<String, ImmutableList<InjectionInfo>> getInjectionsByPoint() {
+        return injectionsByPoint;
+    }
+
+    public Map<String, InjectionPlan> getPlansByTarget() {
+        return plansByTarget;
+    }
+
+    public List<AsmProcessorInfo> getAsmProcessors() {
+        return asmProcessors;
+    }
+
+    /**
+     * 扫描时暂存的插件jar
+     */
+    public PluginJarStore.Snapshot getJars() {
+        return jars;
+    }
+}
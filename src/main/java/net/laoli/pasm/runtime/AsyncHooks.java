@@ -0,0 +1,381 @@
+package net.laoli.pasm.runtime;
+
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步钩子执行器 - @Inject(async = true) 生成的代码把参数打包后提交到这里，调用线程只付出一次入队的开销
+ * 钩子方法体被复制为目标类的私有静态方法，由后台线程首次执行时解析并缓存方法句柄；
+ * Java 21+ 默认使用虚拟线程，否则使用有界的平台线程池。队列有界，满时按溢出策略处理
+ *
+ * @author laoli
+ */
+public final class AsyncHooks {
+    /**
+     * 队列已满时的处理方式
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃新提交的任务
+         */
+        DROP,
+        /**
+         * 丢弃队列中最早的任务，再提交新任务
+         */
+        DROP_OLDEST,
+        /**
+         * 在调用线程上同步执行
+         */
+        CALLER_RUNS
+    }
+
+    private static final Object LOCK = new Object();
+    private static volatile HookSlot[] slots = new HookSlot[0];
+    // 钩子标识（目标类.钩子名描述符）-> 槽位，只在LOCK内访问
+    private static final Map<String, Integer> slotIndex = new HashMap<>();
+
+    private static volatile Executor executor;
+
+    private static final LongAdder submitted = new LongAdder();
+    private static final LongAdder completed = new LongAdder();
+    private static final LongAdder failed = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder callerRuns = new LongAdder();
+    private static final AtomicInteger peakDepth = new AtomicInteger();
+
+    private AsyncHooks() {
+    }
+
+    /**
+     * 生成代码调用：提交一次钩子执行
+     *
+     * @param slot  转换时分配的槽位
+     * @param owner 钩子所在的目标类
+     * @param args  钩子参数（基本类型已装箱）
+     */
+    public static void submit(int slot, Class<?> owner, Object[] args) {
+        submitted.increment();
+        getExecutor().submit(new Task(slots[slot], owner, args));
+    }
+
+    /**
+     * 转换时调用：为复制到目标类中的钩子方法分配槽位
+     */
+    public static int register(String targetClass, String hookName, String hookDesc) {
+        String id = targetClass + "." + hookName + hookDesc;
+        synchronized (LOCK) {
+            Integer slot = slotIndex.get(id);
+            if (slot != null) {
+                return slot;
+            }
+            int newSlot = slots.length;
+            HookSlot[] copy = Arrays.copyOf(slots, newSlot + 1);
+            copy[newSlot] = new HookSlot(id, hookName, hookDesc);
+            slots = copy;
+            slotIndex.put(id, newSlot);
+            return newSlot;
+        }
+    }
+
+    /**
+     * 配置执行器，替换旧执行器（旧执行器中的任务继续执行完）
+     *
+     * @param threads        工作线程数，不大于0时按是否使用虚拟线程取默认值
+     * @param queueCapacity  队列容量
+     * @param policy         队列满时的处理方式
+     * @param virtualThreads 运行在Java 21+时是否使用虚拟线程
+     */
+    public static void configure(int threads, int queueCapacity, OverflowPolicy policy, boolean virtualThreads) {
+        Executor old;
+        synchronized (LOCK) {
+            old = executor;
+            executor = new Executor(threads, queueCapacity, policy, virtualThreads);
+        }
+        if (old != null) {
+            old.pool.shutdown();
+        }
+    }
+
+    /**
+     * 当前执行统计
+     */
+    public static Stats getStats() {
+        Executor current = executor;
+        return new Stats(submitted.sum(), completed.sum(), failed.sum(), dropped.sum(), callerRuns.sum(),
+                current != null ? current.queue.size() : 0, peakDepth.get(),
+                current != null ? current.capacity : 0,
+                current != null ? current.threads : 0,
+                current != null && current.virtual);
+    }
+
+    private static Executor getExecutor() {
+        Executor current = executor;
+        if (current == null) {
+            synchronized (LOCK) {
+                current = executor;
+                if (current == null) {
+                    current = executor = new Executor(0, 10000, OverflowPolicy.DROP, true);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 钩子槽位，方法句柄在后台线程首次执行时解析
+     * 同名类可能由不同的类加载器加载（每个都注入了同一钩子），按类对象各自缓存；缓存随类一起回收
+     */
+    private static final class HookSlot {
+        final String id;
+        final String name;
+        final String desc;
+        final ClassValue<MethodHandle> handles = new ClassValue<MethodHandle>() {
+            @Override
+            protected MethodHandle computeValue(Class<?> owner) {
+                try {
+                    return resolve(owner);
+                } catch (ReflectiveOperationException e) {
+                    throw new UndeclaredThrowableException(e);
+                }
+            }
+        };
+        volatile boolean failureReported;
+
+        HookSlot(String id, String name, String desc) {
+            this.id = id;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        MethodHandle handle(Class<?> owner) throws ReflectiveOperationException {
+            try {
+                return handles.get(owner);
+            } catch (UndeclaredThrowableException e) {
+                throw (ReflectiveOperationException) e.getUndeclaredThrowable();
+            }
+        }
+
+        private MethodHandle resolve(Class<?> owner) throws ReflectiveOperationException {
+            for (Method method : owner.getDeclaredMethods()) {
+                if (method.getName().equals(name) && Type.getMethodDescriptor(method).equals(desc)) {
+                    method.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(method)
+                            .asSpreader(Object[].class, method.getParameterCount())
+                            .asType(MethodType.methodType(void.class, Object[].class));
+                }
+            }
+            throw new NoSuchMethodException(owner.getName() + "." + name + desc);
+        }
+    }
+
+    private static final class Task implements Runnable {
+        final HookSlot slot;
+        final Class<?> owner;
+        final Object[] args;
+
+        Task(HookSlot slot, Class<?> owner, Object[] args) {
+            this.slot = slot;
+            this.owner = owner;
+            this.args = args;
+        }
+
+        @Override
+        public void run() {
+            try {
+                slot.handle(owner).invokeExact(args);
+                completed.increment();
+            } catch (Throwable t) {
+                failed.increment();
+                // 每个钩子只报告第一次失败，之后只计数
+                if (!slot.failureReported) {
+                    slot.failureReported = true;
+                    PrintUtils.error("异步钩子执行失败: " + slot.id + " - " + t);
+                }
+            }
+        }
+    }
+
+    /**
+     * 有界线程池；Java 21+ 且允许时线程工厂创建虚拟线程
+     */
+    private static final class Executor {
+        final ThreadPoolExecutor pool;
+        final BlockingQueue<Runnable> queue;
+        final OverflowPolicy policy;
+        final int capacity;
+        final int threads;
+        final boolean virtual;
+
+        Executor(int threads, int queueCapacity, OverflowPolicy policy, boolean virtualThreads) {
+            ThreadFactory virtualFactory = virtualThreads ? virtualThreadFactory() : null;
+            this.virtual = virtualFactory != null;
+            this.threads = threads > 0 ? threads
+                    : virtual ? 64 : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+            this.capacity = Math.max(1, queueCapacity);
+            this.policy = policy;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+
+            ThreadFactory factory = virtualFactory != null ? virtualFactory : new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "PASM-Async-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            this.pool = new ThreadPoolExecutor(this.threads, this.threads, 30, TimeUnit.SECONDS, queue, factory,
+                    (task, executor) -> overflow(task));
+            this.pool.allowCoreThreadTimeOut(true);
+            PrintUtils.debug("异步钩子执行器: " + this.threads + (virtual ? " 个虚拟线程" : " 个线程") +
+                    "，队列容量 " + capacity + "，溢出策略 " + policy);
+        }
+
+        void submit(Runnable task) {
+            pool.execute(task);
+            int depth = queue.size();
+            int peak = peakDepth.get();
+            while (depth > peak && !peakDepth.compareAndSet(peak, depth)) {
+                peak = peakDepth.get();
+            }
+        }
+
+        private void overflow(Runnable task) {
+            if (pool.isShutdown()) {
+                dropped.increment();
+                return;
+            }
+            switch (policy) {
+                case CALLER_RUNS:
+                    callerRuns.increment();
+                    task.run();
+                    break;
+                case DROP_OLDEST:
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                    if (!queue.offer(task)) {
+                        dropped.increment();
+                    }
+                    break;
+                default:
+                    dropped.increment();
+                    break;
+            }
+        }
+
+        /**
+         * 通过反射获取虚拟线程工厂（Thread.ofVirtual().name("PASM-Async-", 1).factory()），不支持时返回null
+         */
+        private static ThreadFactory virtualThreadFactory() {
+            try {
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "PASM-Async-", 1L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 执行统计快照
+     */
+    public static final class Stats {
+        private final long submitted;
+        private final long completed;
+        private final long failed;
+        private final long dropped;
+        private final long callerRuns;
+        private final int queueDepth;
+        private final int peakQueueDepth;
+        private final int queueCapacity;
+        private final int threads;
+        private final boolean virtualThreads;
+
+        Stats(long submitted, long completed, long failed, long dropped, long callerRuns,
+              int queueDepth, int peakQueueDepth, int queueCapacity, int threads, boolean virtualThreads) {
+            this.submitted = submitted;
+            this.completed = completed;
+            this.failed = failed;
+            this.dropped = dropped;
+            this.callerRuns = callerRuns;
+            this.queueDepth = queueDepth;
+            this.peakQueueDepth = peakQueueDepth;
+            this.queueCapacity = queueCapacity;
+            this.threads = threads;
+            this.virtualThreads = virtualThreads;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * 因队列已满被丢弃的任务数
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * 因队列已满在调用线程上执行的任务数
+         */
+        public long getCallerRuns() {
+            return callerRuns;
+        }
+
+        /**
+         * 当前排队中的任务数
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getPeakQueueDepth() {
+            return peakQueueDepth;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        @Override
+        public String toString() {
+            return "AsyncHooks{submitted=" + submitted + ", completed=" + completed + ", failed=" + failed +
+                    ", dropped=" + dropped + ", callerRuns=" + callerRuns +
+                    ", queue=" + queueDepth + "/" + queueCapacity + " (peak " + peakQueueDepth + ")" +
+                    ", threads=" + threads + (virtualThreads ? " virtual" : "") + '}';
+        }
+    }
+}
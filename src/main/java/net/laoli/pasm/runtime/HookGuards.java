@@ -0,0 +1,102 @@
+package net.laoli.pasm.runtime;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 钩子采样/限流守卫 - @Inject(sampleEvery = N, maxRate = K) 生成的代码在钩子前调用 allow(slot)，返回false时跳过钩子
+ * 采样使用分段计数器（按线程分散到不同计数器，避免多线程争用同一缓存行），
+ * 限流使用基于 nanoTime 的令牌桶（GCRA），桶容量为一秒的配额
+ *
+ * @author laoli
+ */
+public final class HookGuards {
+    private static final Object LOCK = new Object();
+    private static volatile Guard[] guards = new Guard[0];
+    // 注入标识 -> 槽位，只在LOCK内访问
+    private static final Map<String, Integer> slotIndex = new HashMap<>();
+
+    private HookGuards() {
+    }
+
+    /**
+     * 生成代码调用：本次调用是否执行钩子
+     */
+    public static boolean allow(int slot) {
+        return guards[slot].allow();
+    }
+
+    /**
+     * 转换时调用：为注入分配槽位；同一注入重新转换时沿用原槽位，参数变化时换成新守卫
+     *
+     * @param id          注入标识
+     * @param sampleEvery 每N次调用执行一次，不大于1表示不采样
+     * @param maxRate     每秒最多执行次数，不大于0表示不限流
+     */
+    public static int register(String id, int sampleEvery, int maxRate) {
+        synchronized (LOCK) {
+            Integer slot = slotIndex.get(id);
+            if (slot != null) {
+                Guard existing = guards[slot];
+                if (existing.sampleEvery != sampleEvery || existing.maxRate != maxRate) {
+                    Guard[] copy = guards.clone();
+                    copy[slot] = new Guard(sampleEvery, maxRate);
+                    guards = copy;
+                }
+                return slot;
+            }
+            int newSlot = guards.length;
+            Guard[] copy = Arrays.copyOf(guards, newSlot + 1);
+            copy[newSlot] = new Guard(sampleEvery, maxRate);
+            guards = copy;
+            slotIndex.put(id, newSlot);
+            return newSlot;
+        }
+    }
+
+    private static final class Guard {
+        // 每个分段计数器之间间隔16个long（128字节），避免伪共享
+        private static final int STRIPES = 8;
+        private static final int PADDING = 16;
+
+        final int sampleEvery;
+        final int maxRate;
+        private final AtomicLongArray counters;
+        // 令牌桶：理论到达时间（TAT）
+        private final AtomicLong tat;
+        private final long intervalNanos;
+        private final long burstNanos;
+
+        Guard(int sampleEvery, int maxRate) {
+            this.sampleEvery = sampleEvery;
+            this.maxRate = maxRate;
+            this.counters = sampleEvery > 1 ? new AtomicLongArray(STRIPES * PADDING) : null;
+            this.tat = maxRate > 0 ? new AtomicLong(System.nanoTime()) : null;
+            this.intervalNanos = maxRate > 0 ? Math.max(1, 1_000_000_000L / maxRate) : 0;
+            this.burstNanos = 1_000_000_000L;
+        }
+
+        boolean allow() {
+            if (counters != null) {
+                int stripe = (int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+                if (counters.getAndIncrement(stripe) % sampleEvery != 0) {
+                    return false;
+                }
+            }
+            if (tat != null) {
+                long now = System.nanoTime();
+                long current = tat.get();
+                long next = Math.max(current, now) + intervalNanos;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                // 并发竞争失败时直接跳过本次，限流只会更严格
+                return tat.compareAndSet(current, next);
+            }
+            return true;
+        }
+    }
+}
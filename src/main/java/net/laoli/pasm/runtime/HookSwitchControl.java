@@ -0,0 +1,91 @@
+package net.laoli.pasm.runtime;
+
+import net.laoli.pasm.utils.PrintUtils;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 钩子开关的JMX实现，可在 jconsole / VisualVM 中直接切换
+ *
+ * @author laoli
+ */
+public class HookSwitchControl implements HookSwitchControlMBean {
+    public static final String OBJECT_NAME = "net.laoli.pasm:type=HookSwitches";
+    // 延迟注册的时间：premain阶段启动平台MBeanServer会提前初始化JUL，抢在应用配置日志之前
+    private static final long REGISTER_DELAY_MS = 10_000;
+    private static final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * 在后台守护线程中延迟注册，只执行一次；出现第一个可切换的注入时调用
+     */
+    public static void registerLater() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(REGISTER_DELAY_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            register();
+        }, "PASM-JMX");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 注册到平台MBeanServer，已注册时跳过
+     */
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new HookSwitchControl(), name);
+                PrintUtils.debug("注册JMX: " + OBJECT_NAME);
+            }
+        } catch (Exception e) {
+            PrintUtils.warn("注册钩子开关JMX失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String[] getInjections() {
+        Map<String, Boolean> switches = HookSwitches.getSwitches();
+        String[] result = new String[switches.size()];
+        int i = 0;
+        for (Map.Entry<String, Boolean> entry : switches.entrySet()) {
+            result[i++] = entry.getKey() + " = " + entry.getValue();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean enable(String injectionId) {
+        return HookSwitches.setEnabled(injectionId, true);
+    }
+
+    @Override
+    public boolean disable(String injectionId) {
+        return HookSwitches.setEnabled(injectionId, false);
+    }
+
+    @Override
+    public int enableHook(String sourceClass, String method) {
+        return HookSwitches.setEnabled(sourceClass, emptyToNull(method), true);
+    }
+
+    @Override
+    public int disableHook(String sourceClass, String method) {
+        return HookSwitches.setEnabled(sourceClass, emptyToNull(method), false);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
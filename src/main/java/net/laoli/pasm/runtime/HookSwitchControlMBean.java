@@ -0,0 +1,27 @@
+package net.laoli.pasm.runtime;
+
+/**
+ * 钩子开关的JMX接口（net.laoli.pasm:type=HookSwitches）
+ *
+ * @author laoli
+ */
+public interface HookSwitchControlMBean {
+    /**
+     * 所有可切换的注入，格式 "注入标识 = true/false"
+     */
+    String[] getInjections();
+
+    boolean enable(String injectionId);
+
+    boolean disable(String injectionId);
+
+    /**
+     * 启用插件类中的钩子，method为空时启用类中所有钩子
+     */
+    int enableHook(String sourceClass, String method);
+
+    /**
+     * 禁用插件类中的钩子，method为空时禁用类中所有钩子
+     */
+    int disableHook(String sourceClass, String method);
+}
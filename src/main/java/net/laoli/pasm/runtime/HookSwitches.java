@@ -0,0 +1,135 @@
+package net.laoli.pasm.runtime;
+
+import com.google.common.collect.ImmutableMap;
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 钩子开关 - 运行时启用/禁用单个注入，不需要重转换
+ * 钩子前生成 invokedynamic 守卫，调用点绑定到槽位共享的 MutableCallSite，目标是返回常量的方法句柄；
+ * JIT把开关当作常量折叠，禁用的钩子编译后不产生任何代码。切换时只替换调用点目标，依赖它的编译代码被逐出后重新编译。
+ * 类文件版本低于Java 7（不支持invokedynamic）时退化为读取volatile字段
+ *
+ * @author laoli
+ */
+public final class HookSwitches {
+    private static final Object LOCK = new Object();
+    private static volatile Switch[] switches = new Switch[0];
+    // 注入标识 -> 槽位，只在LOCK内访问
+    private static final Map<String, Integer> slotIndex = new HashMap<>();
+
+    private HookSwitches() {
+    }
+
+    /**
+     * invokedynamic 引导方法：同一槽位的所有调用点共享一个 MutableCallSite
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, int slot) {
+        return switches[slot].site;
+    }
+
+    /**
+     * 低版本类文件的退化路径
+     */
+    public static boolean isEnabled(int slot) {
+        return switches[slot].enabled;
+    }
+
+    /**
+     * 转换时调用：为注入分配槽位；重新转换时沿用原槽位和当前开关状态
+     */
+    public static int register(String injectionId) {
+        synchronized (LOCK) {
+            Integer slot = slotIndex.get(injectionId);
+            if (slot != null) {
+                return slot;
+            }
+            int newSlot = switches.length;
+            Switch[] copy = Arrays.copyOf(switches, newSlot + 1);
+            copy[newSlot] = new Switch(injectionId);
+            switches = copy;
+            slotIndex.put(injectionId, newSlot);
+            if (newSlot == 0) {
+                HookSwitchControl.registerLater();
+            }
+            return newSlot;
+        }
+    }
+
+    /**
+     * 启用/禁用注入
+     *
+     * @param injectionId 注入标识（InjectionInfo.getInjectionId）
+     * @return 是否找到该注入
+     */
+    public static boolean setEnabled(String injectionId, boolean enabled) {
+        Integer slot;
+        synchronized (LOCK) {
+            slot = slotIndex.get(injectionId);
+        }
+        if (slot == null) {
+            return false;
+        }
+        switches[slot].set(enabled);
+        return true;
+    }
+
+    /**
+     * 按钩子方法启用/禁用注入（同一钩子注入到多处时全部切换）
+     *
+     * @param sourceClass  钩子所在的插件类（点分或内部名）
+     * @param sourceMethod 钩子方法名，null表示类中所有钩子
+     * @return 切换的注入数量
+     */
+    public static int setEnabled(String sourceClass, String sourceMethod, boolean enabled) {
+        String marker = "->" + sourceClass.replace('.', '/') + "." + (sourceMethod != null ? sourceMethod + "(" : "");
+        int count = 0;
+        for (Switch s : switches) {
+            if (s.injectionId.contains(marker)) {
+                s.set(enabled);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 所有可切换的注入及其当前状态
+     */
+    public static Map<String, Boolean> getSwitches() {
+        ImmutableMap.Builder<String, Boolean> builder = ImmutableMap.builder();
+        for (Switch s : switches) {
+            builder.put(s.injectionId, s.enabled);
+        }
+        return builder.build();
+    }
+
+    private static final class Switch {
+        final String injectionId;
+        final MutableCallSite site = new MutableCallSite(MethodType.methodType(boolean.class));
+        volatile boolean enabled;
+
+        Switch(String injectionId) {
+            this.injectionId = injectionId;
+            this.enabled = true;
+            site.setTarget(MethodHandles.constant(boolean.class, true));
+        }
+
+        synchronized void set(boolean value) {
+            if (enabled == value) {
+                return;
+            }
+            enabled = value;
+            site.setTarget(MethodHandles.constant(boolean.class, value));
+            MutableCallSite.syncAll(new MutableCallSite[]{site});
+            PrintUtils.debug("钩子" + (value ? "启用" : "禁用") + ": " + injectionId);
+        }
+    }
+}
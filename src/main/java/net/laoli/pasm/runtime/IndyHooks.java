@@ -0,0 +1,224 @@
+package net.laoli.pasm.runtime;
+
+import net.laoli.pasm.utils.PrintUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * invokedynamic 链接的钩子 - @Inject(link = Link.INDY) 的目标类只包含一条 invokedynamic，
+ * 引导方法把调用点绑定到钩子方法的方法句柄；热重载时只替换调用点目标，目标类不需要重转换，JIT随后重新内联新版本
+ * <p>
+ * 插件类的原始字节码在目标类加载器的子加载器中定义（每个目标类、每个版本一份），
+ * 钩子能访问的类与复制模式下相同：目标类可见的类和插件类自身
+ *
+ * @author laoli
+ */
+public final class IndyHooks {
+    private static final Object LOCK = new Object();
+    // 插件类（内部名）-> 当前版本和已链接的调用点，只在LOCK内修改
+    private static final Map<String, HookClass> hookClasses = new HashMap<>();
+
+    private static final MethodHandle NOOP;
+
+    static {
+        try {
+            NOOP = MethodHandles.lookup().findStatic(IndyHooks.class, "noop", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private IndyHooks() {
+    }
+
+    /**
+     * invokedynamic 引导方法
+     *
+     * @param name        钩子方法名
+     * @param type        钩子方法签名
+     * @param sourceClass 插件类内部名
+     */
+    public static CallSite bootstrap(MethodHandles.Lookup lookup, String name, MethodType type, String sourceClass) {
+        Class<?> target = lookup.lookupClass();
+        HookClass hookClass;
+        synchronized (LOCK) {
+            hookClass = hookClasses.get(sourceClass);
+        }
+        if (hookClass == null) {
+            throw new IllegalStateException("钩子类未注册: " + sourceClass);
+        }
+        MutableCallSite site = new MutableCallSite(type);
+        synchronized (hookClass) {
+            site.setTarget(resolve(hookClass.current, target, name, type));
+            hookClass.sites.add(new LinkedSite(site, target, name));
+        }
+        return site;
+    }
+
+    /**
+     * 转换时调用：首次注入时登记插件类字节码，已登记时保持当前版本（版本更新由重载时的 update 负责）
+     */
+    public static void register(String sourceClass, byte[] classBytes) {
+        synchronized (LOCK) {
+            if (!hookClasses.containsKey(sourceClass)) {
+                hookClasses.put(sourceClass, new HookClass(sourceClass, classBytes));
+            }
+        }
+    }
+
+    /**
+     * 热重载时调用：插件类字节码变化时切换到新版本，所有已链接的调用点重新指向新版本的钩子
+     *
+     * @return 重新链接的调用点数量，字节码未变化或未注册时返回0
+     */
+    public static int update(String sourceClass, byte[] classBytes) {
+        HookClass hookClass;
+        synchronized (LOCK) {
+            hookClass = hookClasses.get(sourceClass);
+            if (hookClass == null) {
+                hookClasses.put(sourceClass, new HookClass(sourceClass, classBytes));
+                return 0;
+            }
+        }
+        synchronized (hookClass) {
+            if (Arrays.equals(hookClass.current.bytes, classBytes)) {
+                return 0;
+            }
+            Version version = new Version(sourceClass, classBytes);
+            hookClass.current = version;
+
+            List<MutableCallSite> relinked = new ArrayList<>();
+            for (Iterator<LinkedSite> it = hookClass.sites.iterator(); it.hasNext(); ) {
+                LinkedSite linked = it.next();
+                MutableCallSite site = linked.site.get();
+                Class<?> target = linked.target.get();
+                if (site == null || target == null) {
+                    it.remove();
+                    continue;
+                }
+                site.setTarget(resolve(version, target, linked.name, site.type()));
+                relinked.add(site);
+            }
+            if (!relinked.isEmpty()) {
+                MutableCallSite.syncAll(relinked.toArray(new MutableCallSite[0]));
+            }
+            PrintUtils.debug("钩子类新版本: " + sourceClass + "，重新链接 " + relinked.size() + " 个调用点");
+            return relinked.size();
+        }
+    }
+
+    /**
+     * 在目标类可见的环境中解析钩子方法；失败时void钩子绑定为空操作，其余钩子调用时抛出异常
+     */
+    private static MethodHandle resolve(Version version, Class<?> target, String name, MethodType type) {
+        try {
+            Class<?> hook = version.definitions.get(target);
+            for (Method method : hook.getDeclaredMethods()) {
+                if (method.getName().equals(name) && Modifier.isStatic(method.getModifiers()) &&
+                        MethodType.methodType(method.getReturnType(), method.getParameterTypes()).equals(type)) {
+                    method.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(method);
+                }
+            }
+            throw new NoSuchMethodException(version.className + "." + name + type);
+        } catch (Throwable t) {
+            PrintUtils.error("链接钩子失败: " + version.className + "." + name + " -> " + target.getName() + " - " + t);
+            if (type.returnType() == void.class) {
+                return MethodHandles.dropArguments(NOOP, 0, type.parameterList());
+            }
+            IllegalStateException error = new IllegalStateException("钩子链接失败: " + version.className + "." + name);
+            MethodHandle thrower = MethodHandles.insertArguments(
+                    MethodHandles.throwException(type.returnType(), IllegalStateException.class), 0, error);
+            return MethodHandles.dropArguments(thrower, 0, type.parameterList());
+        }
+    }
+
+    private static void noop() {
+    }
+
+    private static final class HookClass {
+        volatile Version current;
+        final List<LinkedSite> sites = new ArrayList<>();
+
+        HookClass(String sourceClass, byte[] bytes) {
+            this.current = new Version(sourceClass, bytes);
+        }
+    }
+
+    /**
+     * 插件类的一个版本；每个目标类按需定义一份（ClassValue 随目标类一起回收）
+     */
+    private static final class Version {
+        final String className;
+        final byte[] bytes;
+        final ClassValue<Class<?>> definitions = new ClassValue<Class<?>>() {
+            @Override
+            protected Class<?> computeValue(Class<?> target) {
+                return new HookLoader(target.getClassLoader(), className, bytes).define();
+            }
+        };
+
+        Version(String sourceClass, byte[] bytes) {
+            this.className = sourceClass.replace('/', '.');
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 调用点及其所在的目标类，弱引用不阻止目标类卸载
+     */
+    private static final class LinkedSite {
+        final WeakReference<MutableCallSite> site;
+        final WeakReference<Class<?>> target;
+        final String name;
+
+        LinkedSite(MutableCallSite site, Class<?> target, String name) {
+            this.site = new WeakReference<>(site);
+            this.target = new WeakReference<>(target);
+            this.name = name;
+        }
+    }
+
+    /**
+     * 定义一个插件类版本的加载器，父加载器为目标类的加载器；插件类本身总是使用这里的版本
+     */
+    private static final class HookLoader extends ClassLoader {
+        private final String className;
+        private final byte[] bytes;
+        private Class<?> defined;
+
+        HookLoader(ClassLoader parent, String className, byte[] bytes) {
+            super(parent);
+            this.className = className;
+            this.bytes = bytes;
+        }
+
+        synchronized Class<?> define() {
+            if (defined == null) {
+                defined = defineClass(className, bytes, 0, bytes.length);
+            }
+            return defined;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.equals(className)) {
+                return define();
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package net.laoli.pasm.runtime;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Memoize 生成代码使用的缓存
+ * 每个缓存表按键的哈希直接映射到固定大小的槽位，冲突时新条目覆盖旧条目（淘汰），查找和写入都不加锁；
+ * 条目不可变，并发读写最多导致一次未命中，不会读到错误的结果
+ *
+ * @author laoli
+ */
+public final class MemoCache {
+    /**
+     * 未命中时 get 的返回值
+     */
+    public static final Object MISS = new Object();
+
+    // 缓存的结果为null时存放的占位对象
+    private static final Object NULL_VALUE = new Object();
+    // 引用类型键为null时使用的占位键
+    private static final Object NULL_KEY = new Object();
+
+    private final String id;
+    private final int capacity;
+    private final boolean perInstance;
+    private volatile Table shared;
+    // 按实例隔离时：实例（弱引用，按==比较）-> 缓存表
+    private final ConcurrentMap<Object, Table> instanceTables;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    MemoCache(String id, int maxSize, boolean perInstance) {
+        this.id = id;
+        this.capacity = tableSizeFor(maxSize);
+        this.perInstance = perInstance;
+        this.shared = new Table(this);
+        this.instanceTables = perInstance ? new MapMaker().weakKeys().makeMap() : null;
+    }
+
+    /**
+     * 获取调用使用的缓存表；owner 为 null 或缓存不按实例隔离时返回共享表
+     */
+    public Table table(Object owner) {
+        if (owner == null || !perInstance) {
+            return shared;
+        }
+        Table table = instanceTables.get(owner);
+        if (table == null) {
+            Table created = new Table(this);
+            table = instanceTables.putIfAbsent(owner, created);
+            if (table == null) {
+                table = created;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 清空所有缓存结果，统计保留
+     */
+    public void invalidate() {
+        shared = new Table(this);
+        if (instanceTables != null) {
+            instanceTables.clear();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isPerInstance() {
+        return perInstance;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * 当前缓存的条目数（遍历所有槽位，只用于监控）
+     */
+    public int size() {
+        int size = shared.size();
+        if (instanceTables != null) {
+            for (Table table : instanceTables.values()) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        long h = getHits();
+        long m = getMisses();
+        return id + "{hits=" + h + ", misses=" + m +
+                ", hitRate=" + (h + m == 0 ? 0 : h * 100 / (h + m)) + "%" +
+                ", evictions=" + getEvictions() + ", size=" + size() + "/" + capacity +
+                (perInstance ? " per instance" : "") + '}';
+    }
+
+    static int tableSizeFor(int maxSize) {
+        int size = Math.max(1, Math.min(maxSize, 1 << 30));
+        return size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 缓存表 - long键和引用键分开存放，long键不装箱
+     */
+    public static final class Table {
+        private final MemoCache owner;
+        private final int mask;
+        private LongEntry[] longEntries;
+        private ObjectEntry[] objectEntries;
+
+        Table(MemoCache owner) {
+            this.owner = owner;
+            this.mask = owner.capacity - 1;
+        }
+
+        public Object get(long key) {
+            LongEntry[] entries = longEntries;
+            if (entries != null) {
+                LongEntry entry = entries[spread(key) & mask];
+                if (entry != null && entry.key == key) {
+                    owner.hits.increment();
+                    return entry.value == NULL_VALUE ? null : entry.value;
+                }
+            }
+            owner.misses.increment();
+            return MISS;
+        }
+
+        /**
+         * 写入结果，返回 value 本身（方便生成代码在return前直接调用）
+         */
+        public Object put(long key, Object value) {
+            LongEntry[] entries = longEntries;
+            if (entries == null) {
+                entries = longEntries = new LongEntry[mask + 1];
+            }
+            int index = spread(key) & mask;
+            LongEntry old = entries[index];
+            if (old != null && old.key != key) {
+                owner.evictions.increment();
+            }
+            entries[index] = new LongEntry(key, value == null ? NULL_VALUE : value);
+            return value;
+        }
+
+        public Object get(Object key) {
+            Object k = key == null ? NULL_KEY : key;
+            ObjectEntry[] entries = objectEntries;
+            if (entries != null) {
+                ObjectEntry entry = entries[spread(k.hashCode()) & mask];
+                if (entry != null && (entry.key == k || entry.key.equals(k))) {
+                    owner.hits.increment();
+                    return entry.value == NULL_VALUE ? null : entry.value;
+                }
+            }
+            owner.misses.increment();
+            return MISS;
+        }
+
+        /**
+         * 写入结果，返回 value 本身
+         */
+        public Object put(Object key, Object value) {
+            Object k = key == null ? NULL_KEY : key;
+            ObjectEntry[] entries = objectEntries;
+            if (entries == null) {
+                entries = objectEntries = new ObjectEntry[mask + 1];
+            }
+            int index = spread(k.hashCode()) & mask;
+            ObjectEntry old = entries[index];
+            if (old != null && !old.key.equals(k)) {
+                owner.evictions.increment();
+            }
+            entries[index] = new ObjectEntry(k, value == null ? NULL_VALUE : value);
+            return value;
+        }
+
+        int size() {
+            int size = 0;
+            LongEntry[] longs = longEntries;
+            if (longs != null) {
+                for (LongEntry entry : longs) {
+                    if (entry != null) size++;
+                }
+            }
+            ObjectEntry[] objects = objectEntries;
+            if (objects != null) {
+                for (ObjectEntry entry : objects) {
+                    if (entry != null) size++;
+                }
+            }
+            return size;
+        }
+    }
+
+    private static final class LongEntry {
+        final long key;
+        final Object value;
+
+        LongEntry(long key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class ObjectEntry {
+        final Object key;
+        final Object value;
+
+        ObjectEntry(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
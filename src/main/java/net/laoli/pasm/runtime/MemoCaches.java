@@ -0,0 +1,160 @@
+package net.laoli.pasm.runtime;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * @Memoize 缓存注册表
+ * 转换时为每个被缓存的方法分配一个槽位，生成的代码按槽位直接取缓存（数组访问），不经过反射和Map查找；
+ * 同一方法重新转换时沿用原槽位，配置变化时换成新缓存。
+ * 槽位按目标类的加载器分组，注册表只弱引用加载器；加载器被回收后（其中的类不会再执行）释放它的槽位和缓存，槽位留给之后注册的方法
+ *
+ * @author laoli
+ */
+public final class MemoCaches {
+    private static final Object LOCK = new Object();
+    private static volatile MemoCache[] caches = new MemoCache[0];
+    // 以下只在LOCK内访问
+    // 加载器 -> 该加载器中的方法槽位，值只弱引用加载器，不影响回收
+    private static final Map<ClassLoader, LoaderSlots> slotsByLoader = new WeakHashMap<>();
+    // 启动类加载器（null）中的方法槽位
+    private static final Map<String, Integer> bootstrapSlots = new HashMap<>();
+    private static final ReferenceQueue<ClassLoader> collectedLoaders = new ReferenceQueue<>();
+    // 保持LoaderSlots本身可达，直到它从引用队列取出（WeakHashMap清理条目时会丢弃值）
+    private static final Set<LoaderSlots> pending = new HashSet<>();
+    // 已释放、可以重新分配的槽位
+    private static final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    /**
+     * 一个加载器中的方法槽位（方法标识 -> 槽位），加载器被回收后进入引用队列
+     */
+    private static final class LoaderSlots extends WeakReference<ClassLoader> {
+        final Map<String, Integer> slots = new HashMap<>();
+
+        LoaderSlots(ClassLoader loader) {
+            super(loader, collectedLoaders);
+        }
+    }
+
+    private MemoCaches() {
+    }
+
+    /**
+     * 生成代码调用：获取槽位上的缓存
+     */
+    public static MemoCache get(int slot) {
+        return caches[slot];
+    }
+
+    /**
+     * 转换时调用：为方法分配槽位，已分配且配置相同时复用原缓存
+     *
+     * @param loader 目标类的定义加载器，null表示启动类加载器
+     * @param id     方法标识，格式 com/example/Foo.method(I)I@加载器
+     */
+    public static int register(ClassLoader loader, String id, int maxSize, boolean perInstance) {
+        synchronized (LOCK) {
+            expunge();
+            Map<String, Integer> slots;
+            if (loader == null) {
+                slots = bootstrapSlots;
+            } else {
+                LoaderSlots loaderSlots = slotsByLoader.get(loader);
+                if (loaderSlots == null) {
+                    loaderSlots = new LoaderSlots(loader);
+                    slotsByLoader.put(loader, loaderSlots);
+                    pending.add(loaderSlots);
+                }
+                slots = loaderSlots.slots;
+            }
+
+            Integer slot = slots.get(id);
+            if (slot != null) {
+                MemoCache existing = caches[slot];
+                if (existing.getCapacity() != MemoCache.tableSizeFor(maxSize) || existing.isPerInstance() != perInstance) {
+                    MemoCache[] copy = caches.clone();
+                    copy[slot] = new MemoCache(id, maxSize, perInstance);
+                    caches = copy;
+                }
+                return slot;
+            }
+            Integer free = freeSlots.poll();
+            int newSlot = free != null ? free : caches.length;
+            MemoCache[] copy = Arrays.copyOf(caches, Math.max(caches.length, newSlot + 1));
+            copy[newSlot] = new MemoCache(id, maxSize, perInstance);
+            caches = copy;
+            slots.put(id, newSlot);
+            return newSlot;
+        }
+    }
+
+    /**
+     * 释放已被回收的加载器的槽位（LOCK内调用）
+     */
+    private static void expunge() {
+        Reference<? extends ClassLoader> ref;
+        MemoCache[] copy = null;
+        while ((ref = collectedLoaders.poll()) != null) {
+            if (!pending.remove(ref)) {
+                continue;
+            }
+            if (copy == null) {
+                copy = caches.clone();
+            }
+            for (int slot : ((LoaderSlots) ref).slots.values()) {
+                copy[slot] = null;
+                freeSlots.add(slot);
+            }
+        }
+        if (copy != null) {
+            caches = copy;
+        }
+    }
+
+    /**
+     * 清空类中所有被缓存方法的结果
+     *
+     * @param className  类名（点分或内部名）
+     * @param methodName 方法名，null表示类中所有方法
+     * @return 清空的缓存数量
+     */
+    public static int invalidate(String className, String methodName) {
+        String prefix = className.replace('.', '/') + "." + (methodName != null ? methodName + "(" : "");
+        int count = 0;
+        for (MemoCache cache : caches) {
+            if (cache != null && cache.getId().startsWith(prefix)) {
+                cache.invalidate();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 清空所有缓存结果
+     */
+    public static void invalidateAll() {
+        for (MemoCache cache : caches) {
+            if (cache != null) {
+                cache.invalidate();
+            }
+        }
+    }
+
+    /**
+     * 所有缓存，键为方法标识
+     */
+    public static Map<String, MemoCache> getCaches() {
+        ImmutableMap.Builder<String, MemoCache> builder = ImmutableMap.builder();
+        for (MemoCache cache : caches) {
+            if (cache != null) {
+                builder.put(cache.getId(), cache);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,40 @@
+package net.laoli.pasm.runtime;
+
+import java.util.Arrays;
+
+/**
+ * @Memoize 多参数缓存键 - 按参数逐个equals比较（数组参数按引用比较）
+ *
+ * @author laoli
+ */
+public final class MemoKey {
+    private final Object[] args;
+    private final int hash;
+
+    private MemoKey(Object[] args) {
+        this.args = args;
+        this.hash = Arrays.hashCode(args);
+    }
+
+    public static Object of(Object[] args) {
+        return new MemoKey(args);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MemoKey)) return false;
+        MemoKey that = (MemoKey) o;
+        return hash == that.hash && Arrays.equals(args, that.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(args);
+    }
+}
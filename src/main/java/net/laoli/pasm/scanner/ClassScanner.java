@@ -1,6 +1,10 @@
 package net.laoli.pasm.scanner;
 
+import net.laoli.pasm.annotation.Inject;
+import net.laoli.pasm.annotation.Memoize;
 import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.model.InjectionOptions;
+import net.laoli.pasm.model.InjectionPoint;
 import net.laoli.pasm.utils.PrintUtils;
 import org.objectweb.asm.*;
 
@@ -8,9 +12,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.CRC32;
 
+import static net.laoli.pasm.scanner.PluginScanner.ACCESSOR_ANNOTATION_DESC;
 import static net.laoli.pasm.scanner.PluginScanner.INJECT_ANNOTATION_DESC;
+import static net.laoli.pasm.scanner.PluginScanner.INJECT_FIELD_ANNOTATION_DESC;
+import static net.laoli.pasm.scanner.PluginScanner.INVOKER_ANNOTATION_DESC;
+import static net.laoli.pasm.scanner.PluginScanner.MEMOIZE_ANNOTATION_DESC;
+import static net.laoli.pasm.scanner.PluginScanner.MODIFY_CONSTANT_ANNOTATION_DESC;
 import static net.laoli.pasm.scanner.PluginScanner.PASM_ANNOTATION_DESC;
+import static net.laoli.pasm.scanner.PluginScanner.REDIRECT_ANNOTATION_DESC;
 
 /**
  * @author laoli
@@ -22,6 +33,8 @@ public class ClassScanner {
     public static List<InjectionInfo> scanClass(byte[] classBytes) {
         List<InjectionInfo> injections = new ArrayList<>();
         final String[] targetClass = new String[1]; // 存储类级注解的目标类
+        final List<String> interfaces = new ArrayList<>(); // 类级注解声明的接口
+        final long checksum = checksum(classBytes);  // 源类校验和，注入代码变化时随之变化
 
         ClassReader cr = new ClassReader(classBytes);
 
@@ -50,11 +63,61 @@ public class ClassScanner {
                                 PrintUtils.debug("  类级注解@Pasm: target=" + targetClass[0]);
                             }
                         }
+
+                        @Override
+                        public AnnotationVisitor visitArray(String name) {
+                            if (!"interfaces".equals(name)) {
+                                return null;
+                            }
+                            return new AnnotationVisitor(Opcodes.ASM9) {
+                                @Override
+                                public void visit(String key, Object value) {
+                                    interfaces.add(((String) value).trim().replace('.', '/'));
+                                }
+                            };
+                        }
                     };
                 }
                 return null;
             }
 
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor,
+                                           String signature, Object value) {
+                return new FieldVisitor(Opcodes.ASM9) {
+                    @Override
+                    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                        // @InjectField：字段添加到目标类，只保留static/volatile/transient，统一为私有
+                        if (INJECT_FIELD_ANNOTATION_DESC.equals(desc) && targetClass[0] != null) {
+                            int fieldAccess = Opcodes.ACC_PRIVATE |
+                                    (access & (Opcodes.ACC_STATIC | Opcodes.ACC_VOLATILE | Opcodes.ACC_TRANSIENT));
+                            InjectionInfo info = new InjectionInfo(targetClass[0], name, descriptor,
+                                    currentClassName, name, descriptor,
+                                    net.laoli.pasm.annotation.InjectionType.FIELD, 1000, checksum, null,
+                                    InjectionOptions.builder().fieldAccess(fieldAccess).build());
+                            injections.add(info);
+                            PrintUtils.debug("  发现字段注入: " + targetClass[0] + "." + name + ":" + descriptor);
+                        }
+                        return null;
+                    }
+                };
+            }
+
+            @Override
+            public void visitEnd() {
+                // @Pasm(interfaces = ...)：每个接口一条IMPLEMENT注入
+                if (targetClass[0] != null) {
+                    for (String iface : interfaces) {
+                        InjectionInfo info = new InjectionInfo(targetClass[0], iface, "L" + iface + ";",
+                                currentClassName, "*", "*",
+                                net.laoli.pasm.annotation.InjectionType.IMPLEMENT, 1000, checksum);
+                        injections.add(info);
+                        PrintUtils.debug("  发现接口注入: " + targetClass[0] + " implements " + iface);
+                    }
+                }
+                super.visitEnd();
+            }
+
             @Override
             public MethodVisitor visitMethod(int access, String name, String descriptor,
                                              String signature, String[] exceptions) {
@@ -63,13 +126,29 @@ public class ClassScanner {
 
                     @Override
                     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-                        // 检查是否为@Inject方法级注解
-                        if (INJECT_ANNOTATION_DESC.equals(desc)) {
+                        // 检查是否为@Inject、@Redirect、@ModifyConstant、@Memoize、@Accessor或@Invoker方法级注解
+                        if (INJECT_ANNOTATION_DESC.equals(desc) || REDIRECT_ANNOTATION_DESC.equals(desc)
+                                || MODIFY_CONSTANT_ANNOTATION_DESC.equals(desc)
+                                || MEMOIZE_ANNOTATION_DESC.equals(desc)
+                                || ACCESSOR_ANNOTATION_DESC.equals(desc)
+                                || INVOKER_ANNOTATION_DESC.equals(desc)) {
                             injectAnnotationValues = new HashMap<>();
+                            if (REDIRECT_ANNOTATION_DESC.equals(desc)) {
+                                injectAnnotationValues.put("type", "REDIRECT");
+                            } else if (MODIFY_CONSTANT_ANNOTATION_DESC.equals(desc)) {
+                                injectAnnotationValues.put("type", "MODIFY_CONSTANT");
+                            } else if (MEMOIZE_ANNOTATION_DESC.equals(desc)) {
+                                injectAnnotationValues.put("type", "MEMOIZE");
+                            } else if (ACCESSOR_ANNOTATION_DESC.equals(desc)) {
+                                injectAnnotationValues.put("type", "ACCESSOR");
+                            } else if (INVOKER_ANNOTATION_DESC.equals(desc)) {
+                                injectAnnotationValues.put("type", "INVOKER");
+                            }
                             return new AnnotationVisitor(Opcodes.ASM9) {
                                 @Override
                                 public void visit(String key, Object value) {
-                                    injectAnnotationValues.put(key, value);
+                                    // Class类型的值单独存放，避免与注入类型type冲突
+                                    injectAnnotationValues.put(value instanceof Type ? key + "$class" : key, value);
                                 }
 
                                 @Override
@@ -79,6 +158,9 @@ public class ClassScanner {
 
                                 @Override
                                 public AnnotationVisitor visitArray(String name) {
+                                    if ("at".equals(name)) {
+                                        return collectAtValues(injectAnnotationValues);
+                                    }
                                     return this;
                                 }
                             };
@@ -100,7 +182,8 @@ public class ClassScanner {
                                     descriptor,
                                     access,
                                     injectAnnotationValues,
-                                    targetClass[0]
+                                    targetClass[0],
+                                    checksum
                             );
 
                             if (info != null && info.isValid()) {
@@ -121,6 +204,59 @@ public class ClassScanner {
     }
 
 
+    /**
+     * 收集@Inject的at数组中每个@At注解的属性，存为 at -> List<Map>
+     */
+    private static AnnotationVisitor collectAtValues(Map<String, Object> injectAnnotationValues) {
+        List<Map<String, Object>> atList = new ArrayList<>();
+        injectAnnotationValues.put("at", atList);
+        return new AnnotationVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+                Map<String, Object> at = new HashMap<>();
+                atList.add(at);
+                return new AnnotationVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visit(String key, Object value) {
+                        at.put(key, value);
+                    }
+
+                    @Override
+                    public void visitEnum(String key, String descriptor, String value) {
+                        at.put(key, value);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 按常量类型解析@ModifyConstant中的字面量
+     */
+    private static Object parseConstant(Type type, String text) {
+        switch (type.getSort()) {
+            case Type.INT:
+                return Integer.decode(text.trim());
+            case Type.LONG:
+                return Long.decode(text.trim());
+            case Type.FLOAT:
+                return Float.parseFloat(text.trim());
+            case Type.DOUBLE:
+                return Double.parseDouble(text.trim());
+            default:
+                if ("java/lang/String".equals(type.getInternalName())) {
+                    return text;
+                }
+                throw new IllegalArgumentException("不支持的常量类型: " + type.getClassName());
+        }
+    }
+
+    private static long checksum(byte[] classBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(classBytes, 0, classBytes.length);
+        return crc.getValue();
+    }
+
     /**
      * 从ASM解析的数据创建注入信息（新版本，包含targetClass参数）
      */
@@ -130,9 +266,16 @@ public class ClassScanner {
             String sourceMethodDesc,
             int methodAccess,
             Map<String, Object> annotationValues,
-            String targetClassFromPasm) {
+            String targetClassFromPasm,
+            long sourceChecksum) {
 
         try {
+            String bindingType = (String) annotationValues.get("type");
+            if ("ACCESSOR".equals(bindingType) || "INVOKER".equals(bindingType)) {
+                return createMemberBinding(sourceClassName, sourceMethodName, sourceMethodDesc, methodAccess,
+                        annotationValues, targetClassFromPasm, sourceChecksum);
+            }
+
             // 验证源方法必须是静态方法
             if ((methodAccess & Opcodes.ACC_STATIC) == 0) {
                 PrintUtils.warn("注入方法必须为静态方法 - " +
@@ -150,6 +293,65 @@ public class ClassScanner {
             net.laoli.pasm.annotation.InjectionType injectionType =
                     net.laoli.pasm.annotation.InjectionType.valueOf(typeStr);
 
+            // 指令级注入点
+            InjectionPoint injectionPoint = null;
+            if (injectionType == net.laoli.pasm.annotation.InjectionType.REDIRECT) {
+                String target = (String) annotationValues.get("target");
+                int ordinal = (Integer) annotationValues.getOrDefault("ordinal", -1);
+                if (target == null) {
+                    PrintUtils.warn("@Redirect缺少target - " + sourceClassName + "." + sourceMethodName);
+                    return null;
+                }
+                injectionPoint = InjectionPoint.parseMember(target, ordinal);
+            }
+
+            // @Inject(at = @At(...))：指令级插入
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> atList = (List<Map<String, Object>>) annotationValues.get("at");
+            if (atList != null && !atList.isEmpty()) {
+                if (atList.size() > 1) {
+                    PrintUtils.warn("@Inject只使用第一个@At - " + sourceClassName + "." + sourceMethodName);
+                }
+                Map<String, Object> at = atList.get(0);
+                injectionType = net.laoli.pasm.annotation.InjectionType.AT;
+                injectionPoint = InjectionPoint.parseAt(
+                        (String) at.get("value"),
+                        (String) at.getOrDefault("target", ""),
+                        (Integer) at.getOrDefault("ordinal", -1),
+                        (String) at.getOrDefault("shift", "BEFORE"));
+            }
+
+            InjectionOptions.Builder options = InjectionOptions.builder();
+            options.async((Boolean) annotationValues.getOrDefault("async", false))
+                    .sampleEvery((Integer) annotationValues.getOrDefault("sampleEvery", 1))
+                    .maxRate((Integer) annotationValues.getOrDefault("maxRate", 0))
+                    .toggleable((Boolean) annotationValues.getOrDefault("toggleable", false))
+                    .link(Inject.Link.valueOf((String) annotationValues.getOrDefault("link", "COPY")));
+            if (injectionType == net.laoli.pasm.annotation.InjectionType.MODIFY_CONSTANT) {
+                Type constantType = (Type) annotationValues.getOrDefault("type$class", Type.INT_TYPE);
+                String value = (String) annotationValues.get("value");
+                int ordinal = (Integer) annotationValues.getOrDefault("ordinal", -1);
+                String replace = (String) annotationValues.getOrDefault("replace", "");
+                if (value == null) {
+                    PrintUtils.warn("@ModifyConstant缺少value - " + sourceClassName + "." + sourceMethodName);
+                    return null;
+                }
+                injectionPoint = InjectionPoint.constant(parseConstant(constantType, value), ordinal);
+                if (!replace.isEmpty()) {
+                    options.constantReplacement(parseConstant(constantType, replace));
+                }
+            }
+
+            if (injectionType == net.laoli.pasm.annotation.InjectionType.MEMOIZE) {
+                int maxSize = (Integer) annotationValues.getOrDefault("maxSize", 1024);
+                if (maxSize <= 0) {
+                    PrintUtils.warn("@Memoize的maxSize必须大于0 - " + sourceClassName + "." + sourceMethodName);
+                    return null;
+                }
+                options.memoMaxSize(maxSize)
+                        .memoScope(Memoize.Scope.valueOf((String) annotationValues.getOrDefault("scope", "AUTO")));
+            }
+
             // 创建注入信息（目标类来自类级@Pasm注解）
             return new InjectionInfo(
                     targetClassFromPasm,           // 来自@Pasm注解
@@ -159,7 +361,10 @@ public class ClassScanner {
                     sourceMethodName,              // 源方法
                     sourceMethodDesc,              // 源方法描述符
                     injectionType,                 // 注入类型
-                    priority                       // 优先级
+                    priority,                      // 优先级
+                    sourceChecksum,                // 源类校验和
+                    injectionPoint,                // 指令级注入点
+                    options.build()                // 注入选项
             );
 
         } catch (Exception e) {
@@ -168,4 +373,72 @@ public class ClassScanner {
             return null;
         }
     }
+
+    /**
+     * @Accessor/@Invoker：目标为字段（名称+字段描述符）或方法（名称+方法描述符），源为接口中的抽象方法
+     */
+    private static InjectionInfo createMemberBinding(
+            String sourceClassName,
+            String sourceMethodName,
+            String sourceMethodDesc,
+            int methodAccess,
+            Map<String, Object> annotationValues,
+            String targetClassFromPasm,
+            long sourceChecksum) {
+        if ((methodAccess & Opcodes.ACC_ABSTRACT) == 0 || (methodAccess & Opcodes.ACC_STATIC) != 0) {
+            PrintUtils.warn("@Accessor/@Invoker必须声明在@Pasm接口的抽象方法上 - " +
+                    sourceClassName + "." + sourceMethodName);
+            return null;
+        }
+
+        boolean accessor = "ACCESSOR".equals(annotationValues.get("type"));
+        String memberName = (String) annotationValues.getOrDefault("value", "");
+        String memberDesc;
+        if (accessor) {
+            Type[] args = Type.getArgumentTypes(sourceMethodDesc);
+            Type returnType = Type.getReturnType(sourceMethodDesc);
+            if (args.length == 0 && returnType.getSort() != Type.VOID) {
+                memberDesc = returnType.getDescriptor();
+            } else if (args.length == 1 && returnType.getSort() == Type.VOID) {
+                memberDesc = args[0].getDescriptor();
+            } else {
+                PrintUtils.warn("@Accessor方法必须是 T getX() 或 void setX(T) - " +
+                        sourceClassName + "." + sourceMethodName + sourceMethodDesc);
+                return null;
+            }
+            if (memberName.isEmpty()) {
+                memberName = stripPrefix(sourceMethodName, "get", "is", "set");
+            }
+        } else {
+            memberDesc = sourceMethodDesc;
+            if (memberName.isEmpty()) {
+                memberName = stripPrefix(sourceMethodName, "call", "invoke");
+            }
+        }
+
+        return new InjectionInfo(
+                targetClassFromPasm,
+                memberName,
+                memberDesc,
+                sourceClassName,
+                sourceMethodName,
+                sourceMethodDesc,
+                accessor ? net.laoli.pasm.annotation.InjectionType.ACCESSOR
+                        : net.laoli.pasm.annotation.InjectionType.INVOKER,
+                1000,
+                sourceChecksum);
+    }
+
+    /**
+     * getHealth -> health；没有匹配的前缀时原样返回
+     */
+    private static String stripPrefix(String methodName, String... prefixes) {
+        for (String prefix : prefixes) {
+            if (methodName.length() > prefix.length() && methodName.startsWith(prefix)) {
+                String rest = methodName.substring(prefix.length());
+                return Character.toLowerCase(rest.charAt(0)) + rest.substring(1);
+            }
+        }
+        return methodName;
+    }
 }
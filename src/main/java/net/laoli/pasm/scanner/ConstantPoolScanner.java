@@ -0,0 +1,114 @@
+package net.laoli.pasm.scanner;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 常量池快速扫描器 - 不构建ClassReader，直接遍历class文件常量池查找UTF8常量
+ * 用于在完整扫描前快速排除不包含@Pasm注解的类
+ *
+ * @author laoli
+ */
+public class ConstantPoolScanner {
+    private static final int MAGIC = 0xCAFEBABE;
+
+    static final byte[] PASM_ANNOTATION_UTF8 =
+            PluginScanner.PASM_ANNOTATION_DESC.getBytes(StandardCharsets.UTF_8);
+
+    private ConstantPoolScanner() {
+    }
+
+    /**
+     * 判断类字节码是否可能带有@Pasm注解
+     */
+    public static boolean mayHavePasmAnnotation(byte[] classBytes) {
+        return containsUtf8(classBytes, PASM_ANNOTATION_UTF8);
+    }
+
+    /**
+     * 判断常量池中是否存在与给定字节完全相同的UTF8常量
+     * 遇到无法识别的常量类型时保守地返回true，交给完整扫描处理
+     */
+    public static boolean containsUtf8(byte[] classBytes, byte[] utf8) {
+        return containsAnyUtf8(classBytes, new byte[][]{utf8});
+    }
+
+    /**
+     * 判断常量池中是否存在任一给定的UTF8常量，只遍历一次常量池
+     * 遇到无法识别的常量类型时保守地返回true，交给完整扫描处理
+     */
+    public static boolean containsAnyUtf8(byte[] classBytes, byte[][] candidates) {
+        if (classBytes == null || classBytes.length < 10 || readInt(classBytes, 0) != MAGIC) {
+            return false;
+        }
+
+        int count = readUnsignedShort(classBytes, 8);
+        int offset = 10;
+        for (int i = 1; i < count; i++) {
+            // 截断或损坏的class文件交给完整扫描报告错误
+            if (offset + 3 > classBytes.length) {
+                return true;
+            }
+            int tag = classBytes[offset];
+            switch (tag) {
+                case 1: // CONSTANT_Utf8
+                    int length = readUnsignedShort(classBytes, offset + 1);
+                    for (byte[] utf8 : candidates) {
+                        if (length == utf8.length && regionEquals(classBytes, offset + 3, utf8)) {
+                            return true;
+                        }
+                    }
+                    offset += 3 + length;
+                    break;
+                case 3:  // CONSTANT_Integer
+                case 4:  // CONSTANT_Float
+                case 9:  // CONSTANT_Fieldref
+                case 10: // CONSTANT_Methodref
+                case 11: // CONSTANT_InterfaceMethodref
+                case 12: // CONSTANT_NameAndType
+                case 17: // CONSTANT_Dynamic
+                case 18: // CONSTANT_InvokeDynamic
+                    offset += 5;
+                    break;
+                case 5: // CONSTANT_Long
+                case 6: // CONSTANT_Double
+                    offset += 9;
+                    i++; // 占用两个常量池槽位
+                    break;
+                case 7:  // CONSTANT_Class
+                case 8:  // CONSTANT_String
+                case 16: // CONSTANT_MethodType
+                case 19: // CONSTANT_Module
+                case 20: // CONSTANT_Package
+                    offset += 3;
+                    break;
+                case 15: // CONSTANT_MethodHandle
+                    offset += 4;
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(byte[] bytes, int offset, byte[] expected) {
+        if (offset + expected.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readUnsignedShort(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
@@ -1,7 +1,10 @@
 package net.laoli.pasm.scanner;
 
-import com.google.common.io.ByteStreams;
+import net.laoli.pasm.api.ClassFilter;
 import net.laoli.pasm.loader.InjectionClassLoader;
+import net.laoli.pasm.loader.PluginClassLoaders;
+import net.laoli.pasm.loader.PluginJar;
+import net.laoli.pasm.loader.PluginJarStore;
 import net.laoli.pasm.model.AsmProcessorInfo;
 import net.laoli.pasm.model.InjectionInfo;
 import net.laoli.pasm.transformer.MethodCopyHelper.Pair;
@@ -9,10 +12,8 @@ import net.laoli.pasm.utils.PrintUtils;
 import com.google.gson.*;
 
 import java.io.File;
-import java.io.InputStream;
+import java.io.IOException;
 import java.util.*;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 import static net.laoli.pasm.scanner.ClassScanner.scanClass;
 
@@ -21,12 +22,39 @@ import static net.laoli.pasm.scanner.ClassScanner.scanClass;
  * 使用ASM进行无加载解析，避免反射加载类
  */
 public class PluginScanner {
-    private static InjectionClassLoader injectionClassLoader;
     private static String PLUGINS_DIR = "./plugins"; // 默认值
     private static final String CONFIG_FILE = "pasm.json";
     private static final String AGENT_CONFIG_FILE = "pasm.json";
     static final String PASM_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/Pasm;";
     static final String INJECT_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/Inject;";
+    static final String REDIRECT_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/Redirect;";
+    static final String MODIFY_CONSTANT_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/ModifyConstant;";
+    static final String MEMOIZE_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/Memoize;";
+    static final String ACCESSOR_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/Accessor;";
+    static final String INVOKER_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/Invoker;";
+    static final String INJECT_FIELD_ANNOTATION_DESC = "Lnet/laoli/pasm/annotation/InjectField;";
+
+    // 按jar路径缓存的扫描结果，重载时只重新扫描新增或修改过的jar
+    private static final Map<String, ScannedPlugin> SCAN_CACHE = new HashMap<>();
+
+    /**
+     * 单个插件jar的扫描结果及其指纹（文件大小+修改时间）
+     */
+    private static final class ScannedPlugin {
+        final long length;
+        final long lastModified;
+        final Pair<List<InjectionInfo>, List<AsmProcessorInfo>> result;
+
+        ScannedPlugin(long length, long lastModified, Pair<List<InjectionInfo>, List<AsmProcessorInfo>> result) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.result = result;
+        }
+
+        boolean matches(File jarFile) {
+            return length == jarFile.length() && lastModified == jarFile.lastModified();
+        }
+    }
 
     // 静态初始化块，读取JavaAgent同级目录下的pasm.json配置文件
     static {
@@ -93,6 +121,13 @@ public class PluginScanner {
         }
     }
 
+    /**
+     * 获取插件目录
+     */
+    public static File getPluginsDir() {
+        return new File(PLUGINS_DIR);
+    }
+
     /**
      * 按目标类分组注入信息
      */
@@ -153,36 +188,39 @@ public class PluginScanner {
                 info.getTargetDesc());
     }
 
+    /**
+     * @deprecated 每个插件jar已有独立的类加载器（{@link PluginClassLoaders}），无需单独初始化
+     */
+    @Deprecated
     public static void initializeClassLoader() {
-        if (injectionClassLoader == null) {
-            injectionClassLoader = new InjectionClassLoader(
-                    Thread.currentThread().getContextClassLoader()
-            );
-
-            PrintUtils.debug("初始化统一类加载器完成");
-        }
+        PluginClassLoaders.getInstance().getSharedLoader();
     }
 
     /**
      * 获取统一类加载器
+     *
+     * @deprecated 返回 {@link PluginClassLoaders#getSharedLoader()}，可以看到所有插件的类；
+     * 加载某个插件自己的类请使用 {@link PluginClassLoaders#getLoader(File)}
      */
+    @Deprecated
     public static InjectionClassLoader getInjectionClassLoader() {
-        if (injectionClassLoader == null) {
-            initializeClassLoader();
-        }
-        return injectionClassLoader;
+        return PluginClassLoaders.getInstance().getSharedLoader();
     }
 
     /**
      * 扫描所有插件，返回所有注入信息和所有ASM处理器
+     * 增量扫描：未变化的jar直接复用上一次的扫描结果，只重新扫描新增或修改过的jar
      */
-    public static Pair<List<InjectionInfo>, List<AsmProcessorInfo>> scanAllPlugins() {
+    public static synchronized Pair<List<InjectionInfo>, List<AsmProcessorInfo>> scanAllPlugins() {
         List<InjectionInfo> allInjections = new ArrayList<>();
         List<AsmProcessorInfo> allAsmProcessors = new ArrayList<>();
         File pluginsDir = new File(PLUGINS_DIR);
+        // jar句柄只暂存，随注入快照发布时才替换已发布的jar
+        PluginJarStore.getInstance().beginStage();
 
         if (!pluginsDir.exists() || !pluginsDir.isDirectory()) {
             PrintUtils.warn("插件目录不存在: " + PLUGINS_DIR);
+            SCAN_CACHE.clear();
             return Pair.create(allInjections, allAsmProcessors);
         }
 
@@ -191,14 +229,48 @@ public class PluginScanner {
 
         if (jarFiles == null || jarFiles.length == 0) {
             PrintUtils.info("未找到插件jar文件");
+            SCAN_CACHE.clear();
             return Pair.create(allInjections, allAsmProcessors);
         }
 
         PrintUtils.debug("开始扫描 " + jarFiles.length + " 个插件...");
 
+        Set<String> present = new HashSet<>();
+        int added = 0, modified = 0, unchanged = 0;
+
         for (File jarFile : jarFiles) {
+            String key = jarFile.getAbsolutePath();
+            present.add(key);
+
+            ScannedPlugin cached = SCAN_CACHE.get(key);
+            if (cached != null && cached.matches(jarFile)) {
+                try {
+                    PluginJarStore.getInstance().stage(jarFile);
+                } catch (IOException e) {
+                    SCAN_CACHE.remove(key);
+                    PrintUtils.error("打开插件失败: " + jarFile.getName() + " - " + e.getMessage());
+                    continue;
+                }
+                unchanged++;
+                allInjections.addAll(cached.result.getLeft());
+                allAsmProcessors.addAll(cached.result.getRight());
+                PrintUtils.debug("插件未变化，复用扫描结果: " + jarFile.getName());
+                continue;
+            }
+
+            // 先记录指纹再扫描，扫描过程中文件又被修改时下次重载会再次扫描
+            long length = jarFile.length();
+            long lastModified = jarFile.lastModified();
             try {
+                // 修改过的jar的旧类加载器在发布时淘汰，使用时按新内容重新创建
+                if (cached == null) {
+                    added++;
+                } else {
+                    modified++;
+                }
+
                 Pair<List<InjectionInfo>, List<AsmProcessorInfo>> pluginConfig = scanPlugin(jarFile);
+                SCAN_CACHE.put(key, new ScannedPlugin(length, lastModified, pluginConfig));
                 allInjections.addAll(pluginConfig.getLeft());
                 allAsmProcessors.addAll(pluginConfig.getRight());
 
@@ -210,10 +282,23 @@ public class PluginScanner {
                     PrintUtils.debug("插件扫描完成: " + jarFile.getName() + "，未找到任何配置");
                 }
             } catch (Exception e) {
+                SCAN_CACHE.remove(key);
                 PrintUtils.error("扫描插件失败: " + jarFile.getName() + " - " + e.getMessage());
             }
         }
 
+        // 移除已删除jar的扫描结果
+        int removed = 0;
+        for (Iterator<String> it = SCAN_CACHE.keySet().iterator(); it.hasNext(); ) {
+            String key = it.next();
+            if (!present.contains(key)) {
+                it.remove();
+                removed++;
+            }
+        }
+        PrintUtils.debug("增量扫描: 新增 " + added + ", 修改 " + modified + ", 移除 " + removed +
+                ", 未变化 " + unchanged);
+
         // 验证所有注入信息
         AnnotationScanner.validateInjections(allInjections);
 
@@ -238,118 +323,218 @@ public class PluginScanner {
         List<InjectionInfo> injections = new ArrayList<>();
         List<AsmProcessorInfo> asmProcessors = new ArrayList<>();
 
-        try (JarFile jar = new JarFile(jarFile)) {
-            // 将插件JAR添加到类加载器
-            getInjectionClassLoader().addPluginJar(jarFile);
+        PluginJar jar = PluginJarStore.getInstance().stage(jarFile);
 
-            // 读取配置
-            JarEntry configEntry = jar.getJarEntry(CONFIG_FILE);
+        // 读取配置
+        byte[] configBytes = jar.read(CONFIG_FILE);
 
-            if (configEntry == null) {
+        if (configBytes == null) {
+            return Pair.create(injections, asmProcessors);
+        }
+
+        // 读取配置
+        try {
+            String configContent = new String(configBytes);
+            JsonElement jsonElement = JsonParser.parseString(configContent);
+            
+            if (!jsonElement.isJsonObject()) {
+                PrintUtils.warn("配置文件格式错误: 根元素必须是JSON对象");
                 return Pair.create(injections, asmProcessors);
             }
-
-            // 读取配置
-            try (InputStream inputStream = jar.getInputStream(configEntry)) {
-                String configContent = new String(ByteStreams.toByteArray(inputStream));
-                JsonElement jsonElement = JsonParser.parseString(configContent);
-                
-                if (!jsonElement.isJsonObject()) {
-                    PrintUtils.warn("配置文件格式错误: 根元素必须是JSON对象");
-                    return Pair.create(injections, asmProcessors);
-                }
-                
-                JsonObject config = jsonElement.getAsJsonObject();
-
-                if (config.has("pasms")) {
-                    JsonElement pasmsElement = config.get("pasms");
-                    if (pasmsElement.isJsonArray()) {
-                        JsonArray pasmsArray = pasmsElement.getAsJsonArray();
-                        List<String> classesToScan = new ArrayList<>();
-
-                        // 解析类名
-                        for (JsonElement element : pasmsArray) {
-                            if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
-                                String[] classNames = element.getAsString().split(",\\s*");
-                                for (String className : classNames) {
-                                    if (!className.trim().isEmpty()) {
-                                        classesToScan.add(className.trim());
-                                    }
+            
+            JsonObject config = jsonElement.getAsJsonObject();
+
+            // 已扫描的类文件，避免pasms列表与自动发现重复扫描
+            Set<String> scannedEntries = new HashSet<>();
+
+            if (config.has("pasms")) {
+                JsonElement pasmsElement = config.get("pasms");
+                if (pasmsElement.isJsonArray()) {
+                    JsonArray pasmsArray = pasmsElement.getAsJsonArray();
+                    List<String> classesToScan = new ArrayList<>();
+
+                    // 解析类名
+                    for (JsonElement element : pasmsArray) {
+                        if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+                            String[] classNames = element.getAsString().split(",\\s*");
+                            for (String className : classNames) {
+                                if (!className.trim().isEmpty()) {
+                                    classesToScan.add(className.trim());
                                 }
-                            } else {
-                                PrintUtils.warn("pasms数组元素必须是字符串");
                             }
+                        } else {
+                            PrintUtils.warn("pasms数组元素必须是字符串");
                         }
+                    }
 
-                        for (String className : classesToScan) {
-                            String classFilePath = className.replace('.', '/') + ".class";
-                            JarEntry classEntry = jar.getJarEntry(classFilePath);
-                            if (classEntry == null) {
-                                PrintUtils.warn("类文件不存在: " + classFilePath);
-                                continue;
-                            }
-                            try (InputStream classInputStream = jar.getInputStream(classEntry)) {
-                                byte[] classBytes = ByteStreams.toByteArray(classInputStream);
-                                List<InjectionInfo> classInjections = scanClass(classBytes);
-                                injections.addAll(classInjections);
-                            } catch (Exception e) {
-                                PrintUtils.warn("扫描类失败: " + className + " - " + e.getMessage());
-                            }
+                    for (String className : classesToScan) {
+                        String classFilePath = className.replace('.', '/') + ".class";
+                        PluginJar.Entry classEntry = jar.getEntry(classFilePath);
+                        if (classEntry == null) {
+                            PrintUtils.warn("类文件不存在: " + classFilePath);
+                            continue;
+                        }
+                        if (!scannedEntries.add(classFilePath)) {
+                            continue;
+                        }
+                        try {
+                            byte[] classBytes = jar.read(classEntry);
+                            List<InjectionInfo> classInjections = scanClass(classBytes);
+                            injections.addAll(classInjections);
+                        } catch (Exception e) {
+                            PrintUtils.warn("扫描类失败: " + className + " - " + e.getMessage());
                         }
-                    } else {
-                        PrintUtils.warn("pasms必须是JSON数组");
                     }
+                } else {
+                    PrintUtils.warn("pasms必须是JSON数组");
                 }
+            }
 
-                if (config.has("asms")) {
-                    JsonElement asmsElement = config.get("asms");
-                    if (asmsElement.isJsonArray()) {
-                        JsonArray asmsArray = asmsElement.getAsJsonArray();
-                        for (JsonElement elem : asmsArray) {
-                            if (elem.isJsonPrimitive() && elem.getAsJsonPrimitive().isString()) {
-                                // 格式1：纯字符串 -> 默认优先级 1000
-                                String className = elem.getAsString().trim();
-                                if (!className.isEmpty()) {
-                                    asmProcessors.add(new AsmProcessorInfo(className, 1000));
-                                }
-                            } else if (elem.isJsonObject()) {
-                                // 格式2：对象
-                                JsonObject obj = elem.getAsJsonObject();
-                                if (obj.has("class")) {
-                                    JsonElement classElement = obj.get("class");
-                                    if (classElement.isJsonPrimitive() && classElement.getAsJsonPrimitive().isString()) {
-                                        String className = classElement.getAsString().trim();
-                                        int priority = 1000;
-                                        if (obj.has("priority")) {
-                                            JsonElement priorityElement = obj.get("priority");
-                                            if (priorityElement.isJsonPrimitive() && priorityElement.getAsJsonPrimitive().isNumber()) {
-                                                priority = priorityElement.getAsInt();
-                                            } else {
-                                                PrintUtils.warn("priority必须是数字");
-                                            }
-                                        }
-                                        if (!className.isEmpty()) {
-                                            asmProcessors.add(new AsmProcessorInfo(className, priority));
+            if (config.has("autoScan")) {
+                JsonElement autoScanElement = config.get("autoScan");
+                if (autoScanElement.isJsonPrimitive() && autoScanElement.getAsJsonPrimitive().isBoolean()) {
+                    if (autoScanElement.getAsBoolean()) {
+                        injections.addAll(autoScanPasmClasses(jar, scannedEntries));
+                    }
+                } else {
+                    PrintUtils.warn("autoScan必须是布尔值");
+                }
+            }
+
+            if (config.has("asms")) {
+                JsonElement asmsElement = config.get("asms");
+                if (asmsElement.isJsonArray()) {
+                    JsonArray asmsArray = asmsElement.getAsJsonArray();
+                    for (JsonElement elem : asmsArray) {
+                        if (elem.isJsonPrimitive() && elem.getAsJsonPrimitive().isString()) {
+                            // 格式1：纯字符串 -> 默认优先级 1000
+                            String className = elem.getAsString().trim();
+                            if (!className.isEmpty()) {
+                                asmProcessors.add(new AsmProcessorInfo(className, 1000, jar.getFile()));
+                            }
+                        } else if (elem.isJsonObject()) {
+                            // 格式2：对象
+                            JsonObject obj = elem.getAsJsonObject();
+                            if (obj.has("class")) {
+                                JsonElement classElement = obj.get("class");
+                                if (classElement.isJsonPrimitive() && classElement.getAsJsonPrimitive().isString()) {
+                                    String className = classElement.getAsString().trim();
+                                    int priority = 1000;
+                                    if (obj.has("priority")) {
+                                        JsonElement priorityElement = obj.get("priority");
+                                        if (priorityElement.isJsonPrimitive() && priorityElement.getAsJsonPrimitive().isNumber()) {
+                                            priority = priorityElement.getAsInt();
+                                        } else {
+                                            PrintUtils.warn("priority必须是数字");
                                         }
-                                    } else {
-                                        PrintUtils.warn("class必须是字符串");
+                                    }
+                                    ClassFilter classFilter = null;
+                                    if (obj.has("filter")) {
+                                        classFilter = parseClassFilter(obj.get("filter"));
+                                    }
+                                    if (!className.isEmpty()) {
+                                        asmProcessors.add(new AsmProcessorInfo(className, priority, jar.getFile(), classFilter));
                                     }
                                 } else {
-                                    PrintUtils.warn("ASM处理器配置缺少class字段");
+                                    PrintUtils.warn("class必须是字符串");
                                 }
                             } else {
-                                PrintUtils.warn("asms数组元素必须是字符串或对象");
+                                PrintUtils.warn("ASM处理器配置缺少class字段");
                             }
+                        } else {
+                            PrintUtils.warn("asms数组元素必须是字符串或对象");
                         }
-                    } else {
-                        PrintUtils.warn("asms必须是JSON数组");
                     }
+                } else {
+                    PrintUtils.warn("asms必须是JSON数组");
                 }
-            } catch (JsonSyntaxException e) {
-                PrintUtils.warn("配置文件语法错误: " + e.getMessage());
             }
+        } catch (JsonSyntaxException e) {
+            PrintUtils.warn("配置文件语法错误: " + e.getMessage());
         }
 
         return Pair.create(injections, asmProcessors);
     }
-}
\ No newline at end of file
+
+    /**
+     * 解析ASM处理器的类过滤器配置
+     * 格式: {"classes": [...], "prefixes": [...], "superclasses": [...], "annotations": [...]}
+     */
+    private static ClassFilter parseClassFilter(JsonElement filterElement) {
+        if (!filterElement.isJsonObject()) {
+            PrintUtils.warn("filter必须是JSON对象");
+            return null;
+        }
+        JsonObject filter = filterElement.getAsJsonObject();
+        ClassFilter.Builder builder = ClassFilter.builder();
+        for (String name : readStringArray(filter, "classes")) {
+            builder.className(name);
+        }
+        for (String prefix : readStringArray(filter, "prefixes")) {
+            builder.prefix(prefix);
+        }
+        for (String superclass : readStringArray(filter, "superclasses")) {
+            builder.superclass(superclass);
+        }
+        for (String annotation : readStringArray(filter, "annotations")) {
+            builder.annotation(annotation);
+        }
+        return builder.build();
+    }
+
+    private static List<String> readStringArray(JsonObject obj, String key) {
+        List<String> values = new ArrayList<>();
+        if (!obj.has(key)) {
+            return values;
+        }
+        JsonElement element = obj.get(key);
+        if (!element.isJsonArray()) {
+            PrintUtils.warn(key + "必须是JSON数组");
+            return values;
+        }
+        for (JsonElement item : element.getAsJsonArray()) {
+            if (item.isJsonPrimitive() && item.getAsJsonPrimitive().isString()
+                    && !item.getAsString().trim().isEmpty()) {
+                values.add(item.getAsString().trim());
+            } else {
+                PrintUtils.warn(key + "数组元素必须是非空字符串");
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 自动发现模式：通过常量池快速扫描找出带@Pasm注解的类，仅对命中的类执行完整扫描
+     */
+    private static List<InjectionInfo> autoScanPasmClasses(PluginJar jar, Set<String> scannedEntries) {
+        List<InjectionInfo> injections = new ArrayList<>();
+        long start = System.nanoTime();
+        int classCount = 0;
+        int matchedCount = 0;
+
+        for (PluginJar.Entry entry : jar.getEntries()) {
+            String entryName = entry.getName();
+            if (entry.isDirectory() || !entryName.endsWith(".class") ||
+                    entryName.startsWith("META-INF/") || entryName.endsWith("module-info.class") ||
+                    scannedEntries.contains(entryName)) {
+                continue;
+            }
+            classCount++;
+            try {
+                byte[] classBytes = jar.read(entry);
+                if (!ConstantPoolScanner.mayHavePasmAnnotation(classBytes)) {
+                    continue;
+                }
+                matchedCount++;
+                scannedEntries.add(entryName);
+                injections.addAll(scanClass(classBytes));
+            } catch (Exception e) {
+                PrintUtils.warn("扫描类失败: " + entryName + " - " + e.getMessage());
+            }
+        }
+
+        PrintUtils.debug("自动发现完成: " + jar.getName() + "，检查 " + classCount + " 个类，命中 " +
+                matchedCount + " 个，耗时 " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return injections;
+    }
+}
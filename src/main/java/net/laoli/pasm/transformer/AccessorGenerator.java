@@ -0,0 +1,185 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.annotation.InjectionType;
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 访问器/调用器生成 - 目标类实现插件声明的接口，接口方法实现为直接的字段读写或方法调用
+ * 接口注入（IMPLEMENT）交给 {@link InterfaceImplementer}；注入的字段（FIELD）最先添加，访问器和复制的方法都能使用
+ *
+ * @author laoli
+ */
+public class AccessorGenerator {
+
+    /**
+     * 为目标类生成所有绑定，返回成功的数量
+     *
+     * @param loader 目标类的定义加载器；插件接口导出到系统类加载器，系统类加载器不是它的祖先时跳过需要插件接口的绑定
+     */
+    public static int apply(ClassNode classNode, List<InjectionInfo> bindings, ClassLoader loader) {
+        if ((classNode.access & Opcodes.ACC_INTERFACE) != 0) {
+            PrintUtils.warn("@Accessor/@Invoker的目标不能是接口: " + classNode.name);
+            return 0;
+        }
+        int success = 0;
+        for (InjectionInfo info : bindings) {
+            if (info.getType() == InjectionType.FIELD && addField(classNode, info)) {
+                success++;
+            }
+        }
+
+        Set<String> copiedSources = new HashSet<>();
+        for (InjectionInfo info : bindings) {
+            if (info.getType() == InjectionType.FIELD) {
+                continue;
+            }
+            if (info.getType() == InjectionType.IMPLEMENT) {
+                if (InterfaceImplementer.implement(classNode, info, copiedSources.add(info.getSourceClass()), loader)) {
+                    success++;
+                }
+                continue;
+            }
+            if (findMethod(classNode, info.getSourceMethod(), info.getSourceDesc()) != null) {
+                PrintUtils.warn("目标类已存在同名方法，跳过: " + classNode.name + "." +
+                        info.getSourceMethod() + info.getSourceDesc());
+                continue;
+            }
+            if (!seesSystemLoader(loader)) {
+                PrintUtils.warn("目标类的加载器无法看到系统类加载器中的插件接口，跳过: " + classNode.name +
+                        " implements " + info.getSourceClass());
+                continue;
+            }
+            MethodNode method = info.getType() == InjectionType.ACCESSOR
+                    ? createAccessor(classNode, info)
+                    : createInvoker(classNode, info);
+            if (method == null) {
+                continue;
+            }
+            if (!classNode.interfaces.contains(info.getSourceClass())) {
+                classNode.interfaces.add(info.getSourceClass());
+            }
+            classNode.methods.add(method);
+            success++;
+            PrintUtils.debug("  生成" + (info.getType() == InjectionType.ACCESSOR ? "访问器" : "调用器") + ": " +
+                    info.getSourceMethod() + info.getSourceDesc() + " -> " + info.getTargetMethod());
+        }
+        return success;
+    }
+
+    /**
+     * 系统类加载器是否是指定加载器本身或其祖先，即导出到系统类加载器的插件接口能否从该加载器解析
+     */
+    static boolean seesSystemLoader(ClassLoader loader) {
+        ClassLoader system = ClassLoader.getSystemClassLoader();
+        for (ClassLoader current = loader; current != null; current = current.getParent()) {
+            if (current == system) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean addField(ClassNode classNode, InjectionInfo info) {
+        for (FieldNode field : classNode.fields) {
+            if (field.name.equals(info.getTargetMethod())) {
+                PrintUtils.warn("目标类已存在同名字段，跳过: " + classNode.name + "." + field.name);
+                return false;
+            }
+        }
+        classNode.fields.add(new FieldNode(Opcodes.ASM9, info.getOptions().getFieldAccess(),
+                info.getTargetMethod(), info.getTargetDesc(), null, null));
+        PrintUtils.debug("  添加字段: " + classNode.name + "." + info.getTargetMethod() + ":" + info.getTargetDesc());
+        return true;
+    }
+
+    private static MethodNode createAccessor(ClassNode classNode, InjectionInfo info) {
+        FieldNode field = null;
+        for (FieldNode candidate : classNode.fields) {
+            if (candidate.name.equals(info.getTargetMethod()) && candidate.desc.equals(info.getTargetDesc())) {
+                field = candidate;
+                break;
+            }
+        }
+        if (field == null) {
+            PrintUtils.warn("找不到字段: " + classNode.name + "." + info.getTargetMethod() + ":" + info.getTargetDesc());
+            return null;
+        }
+
+        boolean isStatic = (field.access & Opcodes.ACC_STATIC) != 0;
+        boolean setter = Type.getReturnType(info.getSourceDesc()).getSort() == Type.VOID;
+        if (setter && (field.access & Opcodes.ACC_FINAL) != 0) {
+            PrintUtils.warn("不能为final字段生成setter: " + classNode.name + "." + field.name);
+            return null;
+        }
+
+        Type fieldType = Type.getType(field.desc);
+        MethodNode method = newPublicMethod(info);
+        InsnList insns = method.instructions;
+        if (!isStatic) {
+            insns.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        }
+        if (setter) {
+            insns.add(new VarInsnNode(fieldType.getOpcode(Opcodes.ILOAD), 1));
+            insns.add(new FieldInsnNode(isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD,
+                    classNode.name, field.name, field.desc));
+            insns.add(new InsnNode(Opcodes.RETURN));
+        } else {
+            insns.add(new FieldInsnNode(isStatic ? Opcodes.GETSTATIC : Opcodes.GETFIELD,
+                    classNode.name, field.name, field.desc));
+            insns.add(new InsnNode(fieldType.getOpcode(Opcodes.IRETURN)));
+        }
+        method.maxLocals = 1 + fieldType.getSize();
+        method.maxStack = 1 + fieldType.getSize();
+        return method;
+    }
+
+    private static MethodNode createInvoker(ClassNode classNode, InjectionInfo info) {
+        MethodNode target = findMethod(classNode, info.getTargetMethod(), info.getTargetDesc());
+        if (target == null || target.name.startsWith("<")) {
+            PrintUtils.warn("找不到方法: " + classNode.name + "." + info.getTargetMethod() + info.getTargetDesc());
+            return null;
+        }
+
+        boolean isStatic = (target.access & Opcodes.ACC_STATIC) != 0;
+        MethodNode method = newPublicMethod(info);
+        InsnList insns = method.instructions;
+        int local = 1;
+        if (!isStatic) {
+            insns.add(new VarInsnNode(Opcodes.ALOAD, 0));
+        }
+        for (Type arg : Type.getArgumentTypes(target.desc)) {
+            insns.add(new VarInsnNode(arg.getOpcode(Opcodes.ILOAD), local));
+            local += arg.getSize();
+        }
+        int opcode = isStatic ? Opcodes.INVOKESTATIC
+                : (target.access & Opcodes.ACC_PRIVATE) != 0 ? Opcodes.INVOKESPECIAL
+                : Opcodes.INVOKEVIRTUAL;
+        insns.add(new MethodInsnNode(opcode, classNode.name, target.name, target.desc, false));
+        insns.add(new InsnNode(Type.getReturnType(target.desc).getOpcode(Opcodes.IRETURN)));
+        method.maxLocals = local;
+        method.maxStack = Math.max(local, 2);
+        return method;
+    }
+
+    private static MethodNode newPublicMethod(InjectionInfo info) {
+        return new MethodNode(Opcodes.ASM9, Opcodes.ACC_PUBLIC,
+                info.getSourceMethod(), info.getSourceDesc(), null, null);
+    }
+
+    private static MethodNode findMethod(ClassNode classNode, String name, String desc) {
+        for (MethodNode method : classNode.methods) {
+            if (method.name.equals(name) && method.desc.equals(desc)) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,80 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.runtime.AsyncHooks;
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+/**
+ * 异步钩子代码生成 - 源方法复制为目标类的私有静态方法，注入位置只插入参数打包和提交：
+ * <pre>
+ *   AsyncHooks.submit(slot, Target.class, new Object[]{a, b, ...});
+ * </pre>
+ * 提交代码以与源方法同签名的桩方法形式生成，再按原注入类型（HEAD/TAIL/AT等）合并，参数映射与普通钩子一致
+ *
+ * @author laoli
+ */
+public class AsyncHookGenerator {
+    private static final String ASYNC_HOOKS = "net/laoli/pasm/runtime/AsyncHooks";
+
+    /**
+     * 安装异步钩子并返回用于合并的桩方法；不满足条件时返回null
+     */
+    public static MethodNode createSubmitStub(ClassNode targetClass, MethodNode sourceMethod, InjectionInfo info) {
+        switch (info.getType()) {
+            case BEFORE:
+            case HEAD:
+            case AFTER:
+            case TAIL:
+            case AT:
+                break;
+            default:
+                PrintUtils.warn("异步执行只支持 BEFORE/HEAD/AFTER/TAIL/AT 注入: " + info.getInjectionId());
+                return null;
+        }
+        if (Type.getReturnType(sourceMethod.desc).getSort() != Type.VOID) {
+            PrintUtils.warn("异步执行的源方法必须返回void: " + info.getInjectionId());
+            return null;
+        }
+        if (targetClass == null) {
+            PrintUtils.warn("异步执行缺少目标类: " + info.getInjectionId());
+            return null;
+        }
+        // 类常量（LDC Class）需要Java 5及以上的类文件版本
+        if ((targetClass.version & 0xFFFF) < Opcodes.V1_5) {
+            PrintUtils.warn("目标类版本过低，无法异步执行: " + targetClass.name);
+            return null;
+        }
+
+        String hookName = MethodCopyHelper.installStaticHook(targetClass, info.getSourceClass(), sourceMethod);
+        int slot = AsyncHooks.register(targetClass.name, hookName, sourceMethod.desc);
+
+        MethodNode stub = new MethodNode(Opcodes.ASM9, Opcodes.ACC_STATIC, sourceMethod.name,
+                sourceMethod.desc, null, null);
+        Type[] argTypes = Type.getArgumentTypes(sourceMethod.desc);
+        InsnList insns = stub.instructions;
+        insns.add(MethodValidationHelper.createConstantInstruction(slot));
+        insns.add(new LdcInsnNode(Type.getObjectType(targetClass.name)));
+        insns.add(MethodValidationHelper.createConstantInstruction(argTypes.length));
+        insns.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"));
+        int local = 0;
+        for (int i = 0; i < argTypes.length; i++) {
+            insns.add(new InsnNode(Opcodes.DUP));
+            insns.add(MethodValidationHelper.createConstantInstruction(i));
+            insns.add(new VarInsnNode(argTypes[i].getOpcode(Opcodes.ILOAD), local));
+            MemoizeGenerator.box(insns, argTypes[i]);
+            insns.add(new InsnNode(Opcodes.AASTORE));
+            local += argTypes[i].getSize();
+        }
+        insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, ASYNC_HOOKS, "submit",
+                "(ILjava/lang/Class;[Ljava/lang/Object;)V", false));
+        insns.add(new InsnNode(Opcodes.RETURN));
+        stub.maxLocals = local;
+        stub.maxStack = 7;
+
+        PrintUtils.debug("异步钩子: " + targetClass.name + "." + hookName + " (slot=" + slot + ")");
+        return stub;
+    }
+}
@@ -1,10 +1,19 @@
 package net.laoli.pasm.transformer;
 
+import net.laoli.pasm.annotation.Inject;
 import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.model.InjectionOptions;
+import net.laoli.pasm.model.InjectionPoint;
+import net.laoli.pasm.runtime.HookGuards;
+import net.laoli.pasm.runtime.HookSwitches;
 import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
 
 import java.util.*;
 
@@ -19,6 +28,27 @@ public class BytecodeMerger {
     public static boolean mergeMethodBody(MethodNode targetMethod,
                                           MethodNode sourceMethod,
                                           InjectionInfo injectionInfo) {
+        return mergeMethodBody(null, targetMethod, sourceMethod, injectionInfo);
+    }
+
+    /**
+     * 合并方法体；targetClass 用于需要向目标类添加方法的注入类型（如REDIRECT）
+     */
+    public static boolean mergeMethodBody(ClassNode targetClass,
+                                          MethodNode targetMethod,
+                                          MethodNode sourceMethod,
+                                          InjectionInfo injectionInfo) {
+        return mergeMethodBody(targetClass, targetMethod, sourceMethod, injectionInfo, null);
+    }
+
+    /**
+     * 合并方法体；loader 为目标类的定义加载器（null表示启动类加载器或未知），用于区分不同加载器中的同名类
+     */
+    public static boolean mergeMethodBody(ClassNode targetClass,
+                                          MethodNode targetMethod,
+                                          MethodNode sourceMethod,
+                                          InjectionInfo injectionInfo,
+                                          ClassLoader loader) {
 
         try {
             PrintUtils.debug("开始合并方法体: " + sourceMethod.name + " -> " + targetMethod.name);
@@ -34,6 +64,32 @@ public class BytecodeMerger {
                 return false;
             }
 
+            // 异步执行：源方法复制到目标类，注入位置只提交参数
+            if (injectionInfo.getOptions().isAsync()) {
+                sourceMethod = AsyncHookGenerator.createSubmitStub(targetClass, sourceMethod, injectionInfo);
+                if (sourceMethod == null) {
+                    return false;
+                }
+                if (injectionInfo.getOptions().getLink() == Inject.Link.INDY) {
+                    PrintUtils.warn("异步钩子已复制到目标类，忽略invokedynamic链接: " + injectionInfo.getInjectionId());
+                }
+            } else if (injectionInfo.getOptions().getLink() == Inject.Link.INDY) {
+                // invokedynamic链接：注入位置只调用桩方法，钩子更新时不需要重转换
+                sourceMethod = IndyHookGenerator.createCallStub(targetClass, sourceMethod, injectionInfo);
+                if (sourceMethod == null) {
+                    return false;
+                }
+            }
+
+            // 运行时开关、采样/限流：钩子前加守卫，跳过时只多一次调用和分支
+            InjectionOptions options = injectionInfo.getOptions();
+            boolean sampled = options.getSampleEvery() > 1 || options.getMaxRate() > 0;
+            if (options.isToggleable() || sampled) {
+                if (!addHookGuard(targetClass, sourceMethod, injectionInfo, sampled)) {
+                    return false;
+                }
+            }
+
             // 根据注入类型进行合并
             boolean result;
             switch (injectionInfo.getType()) {
@@ -55,6 +111,22 @@ public class BytecodeMerger {
                 case AROUND:
                     result = mergeAround(targetMethod, sourceMethod);
                     break;
+                case REDIRECT:
+                    result = mergeRedirect(targetClass, targetMethod, sourceMethod, injectionInfo);
+                    break;
+                case MODIFY_CONSTANT:
+                    result = mergeModifyConstant(targetClass, targetMethod, sourceMethod, injectionInfo);
+                    break;
+                case AT:
+                    result = mergeAt(targetClass, targetMethod, sourceMethod, injectionInfo);
+                    break;
+                case MEMOIZE:
+                    if (targetClass == null) {
+                        PrintUtils.warn("MEMOIZE注入缺少目标类: " + injectionInfo.getInjectionId());
+                        return false;
+                    }
+                    result = MemoizeGenerator.apply(targetClass.name, loader, targetMethod, injectionInfo);
+                    break;
                 default:
                     throw new IllegalArgumentException("Unexpected type: " + injectionInfo.getType());
             }
@@ -68,6 +140,81 @@ public class BytecodeMerger {
     }
 
 
+    private static final String HOOK_SWITCHES = "net/laoli/pasm/runtime/HookSwitches";
+    private static final Handle SWITCH_BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC, HOOK_SWITCHES, "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;I)Ljava/lang/invoke/CallSite;",
+            false);
+
+    /**
+     * 在（本次注入新解析的）源方法开头加入守卫，任一守卫为false时跳到方法体末尾
+     * 跳转到末尾而不是直接return，复制时去掉return指令后依然正确
+     * <ul>
+     *   <li>运行时开关：invokedynamic 绑定到 HookSwitches 的 MutableCallSite，JIT按常量折叠；
+     *       目标类版本低于Java 7时改为调用 HookSwitches.isEnabled(slot)</li>
+     *   <li>采样/限流：HookGuards.allow(slot)</li>
+     * </ul>
+     * 开关只加在 BEFORE/HEAD/AFTER/TAIL/AT 且返回void的钩子上，其余类型静默跳过；采样/限流不满足时注入失败
+     */
+    private static boolean addHookGuard(ClassNode targetClass, MethodNode sourceMethod,
+                                        InjectionInfo info, boolean sampled) {
+        boolean guardable;
+        switch (info.getType()) {
+            case BEFORE:
+            case HEAD:
+            case AFTER:
+            case TAIL:
+            case AT:
+                guardable = Type.getReturnType(sourceMethod.desc).getSort() == Type.VOID;
+                break;
+            default:
+                guardable = false;
+                break;
+        }
+        if (sampled && !guardable) {
+            PrintUtils.warn("采样/限流只支持 BEFORE/HEAD/AFTER/TAIL/AT 且返回void的注入: " + info.getInjectionId());
+            return false;
+        }
+        if (!guardable) {
+            return true;
+        }
+
+        InjectionOptions options = info.getOptions();
+        LabelNode skip = new LabelNode();
+        InsnList guard = new InsnList();
+        StringBuilder detail = new StringBuilder();
+
+        if (options.isToggleable()) {
+            int slot = HookSwitches.register(info.getInjectionId());
+            if (targetClass != null && (targetClass.version & 0xFFFF) >= Opcodes.V1_7) {
+                guard.add(new InvokeDynamicInsnNode("enabled", "()Z", SWITCH_BOOTSTRAP, slot));
+            } else {
+                guard.add(MethodValidationHelper.createConstantInstruction(slot));
+                guard.add(new MethodInsnNode(Opcodes.INVOKESTATIC, HOOK_SWITCHES, "isEnabled", "(I)Z", false));
+            }
+            guard.add(new JumpInsnNode(Opcodes.IFEQ, skip));
+            detail.append("switch=").append(slot);
+        }
+        if (sampled) {
+            int slot = HookGuards.register(info.getInjectionId(), options.getSampleEvery(), options.getMaxRate());
+            guard.add(MethodValidationHelper.createConstantInstruction(slot));
+            guard.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "net/laoli/pasm/runtime/HookGuards",
+                    "allow", "(I)Z", false));
+            guard.add(new JumpInsnNode(Opcodes.IFEQ, skip));
+            if (detail.length() > 0) {
+                detail.append(", ");
+            }
+            detail.append("slot=").append(slot).append(", sampleEvery=").append(options.getSampleEvery())
+                    .append(", maxRate=").append(options.getMaxRate());
+        }
+        sourceMethod.instructions.insert(guard);
+        sourceMethod.instructions.add(skip);
+        sourceMethod.instructions.add(new InsnNode(Opcodes.RETURN));
+        sourceMethod.maxStack = Math.max(sourceMethod.maxStack, 1);
+
+        PrintUtils.debug("钩子守卫: " + info.getInjectionId() + " (" + detail + ")");
+        return true;
+    }
+
     /**
      * BEFORE合并 - 在方法开始处插入
      */
@@ -310,6 +457,215 @@ public class BytecodeMerger {
     }
 
 
+    /**
+     * REDIRECT合并 - 源方法复制为目标类的私有静态方法，匹配的指令替换为对它的调用
+     */
+    private static boolean mergeRedirect(ClassNode targetClass,
+                                         MethodNode targetMethod,
+                                         MethodNode sourceMethod,
+                                         InjectionInfo info) {
+        InjectionPoint point = info.getInjectionPoint();
+        if (targetClass == null || point == null) {
+            PrintUtils.warn("REDIRECT注入缺少目标类或注入点: " + info.getInjectionId());
+            return false;
+        }
+
+        // 字段访问按源方法描述符区分读和写，ordinal 只在被选中的一类（读或写）中计数
+        boolean field = point.getKind() == InjectionPoint.Kind.FIELD;
+        List<AbstractInsnNode> matches = MethodValidationHelper.findMatchingInstructions(targetMethod, point,
+                field ? insn -> sourceMethod.desc.equals(redirectDescriptor(insn)) : null);
+        if (matches.isEmpty()) {
+            if (field) {
+                PrintUtils.warn("REDIRECT源方法描述符与字段读写都不匹配（或ordinal超出范围）: " + sourceMethod.desc +
+                        " - " + point + " in " + targetMethod.name + targetMethod.desc);
+            } else {
+                PrintUtils.warn("REDIRECT未找到匹配的指令: " + point + " in " + targetMethod.name + targetMethod.desc);
+            }
+            return false;
+        }
+
+        // 先校验全部匹配的指令再替换，避免只替换一部分
+        List<AbstractInsnNode> redirected = new ArrayList<>();
+        for (AbstractInsnNode insn : matches) {
+            String expected = redirectDescriptor(insn);
+            if (expected == null) {
+                PrintUtils.warn("REDIRECT不支持该指令: " + point + "（构造器调用和super调用不能重定向）");
+                return false;
+            }
+            if (!expected.equals(sourceMethod.desc)) {
+                PrintUtils.warn("REDIRECT源方法描述符不匹配: 期望 " + expected + "，实际 " + sourceMethod.desc);
+                return false;
+            }
+            redirected.add(insn);
+        }
+
+        String hookName = MethodCopyHelper.installStaticHook(targetClass, info.getSourceClass(), sourceMethod);
+        boolean itf = (targetClass.access & Opcodes.ACC_INTERFACE) != 0;
+        for (AbstractInsnNode insn : redirected) {
+            targetMethod.instructions.set(insn,
+                    new MethodInsnNode(Opcodes.INVOKESTATIC, targetClass.name, hookName, sourceMethod.desc, itf));
+        }
+
+        PrintUtils.debug("REDIRECT合并完成: " + point + "，替换 " + redirected.size() + " 处");
+        return true;
+    }
+
+    /**
+     * AT合并 - 在目标方法中第N个匹配指令的前面或后面插入源方法体
+     * 源方法带 try/catch 且插入位置操作数栈非空时，先把栈上的值存入局部变量，插入的代码块结束后再恢复
+     */
+    private static boolean mergeAt(ClassNode targetClass,
+                                   MethodNode targetMethod,
+                                   MethodNode sourceMethod,
+                                   InjectionInfo info) {
+        InjectionPoint point = info.getInjectionPoint();
+        if (point == null) {
+            PrintUtils.warn("AT注入缺少注入点: " + info.getInjectionId());
+            return false;
+        }
+
+        List<AbstractInsnNode> matches = MethodValidationHelper.findMatchingInstructions(targetMethod, point);
+        if (matches.isEmpty()) {
+            PrintUtils.warn("AT未找到匹配的指令: " + point + " in " + targetMethod.name + targetMethod.desc);
+            return false;
+        }
+
+        boolean after = point.getShift() == InjectionPoint.Shift.AFTER;
+        // 异常处理器入口会清空操作数栈，必须在插入任何代码之前分析所有位置
+        OperandStackSaver saver = null;
+        List<Frame<BasicValue>> stacks = new ArrayList<>();
+        if (sourceMethod.tryCatchBlocks != null && !sourceMethod.tryCatchBlocks.isEmpty()) {
+            try {
+                saver = new OperandStackSaver(targetClass != null ? targetClass.name : null, targetMethod);
+                for (AbstractInsnNode insn : matches) {
+                    Frame<BasicValue> frame = saver.frameAt(insn, after);
+                    String reason = frame != null ? saver.checkSavable(frame) : null;
+                    if (reason != null) {
+                        PrintUtils.warn("AT注入的源方法包含try/catch，但注入位置的操作数栈无法保存（" + reason + "）: "
+                                + point + " in " + targetMethod.name + targetMethod.desc);
+                        return false;
+                    }
+                    stacks.add(frame != null && frame.getStackSize() > 0 ? frame : null);
+                }
+            } catch (AnalyzerException e) {
+                PrintUtils.warn("AT注入分析目标方法失败: " + targetMethod.name + targetMethod.desc + " - " + e.getMessage());
+                return false;
+            }
+        }
+
+        for (int i = 0; i < matches.size(); i++) {
+            AbstractInsnNode insn = matches.get(i);
+            Frame<BasicValue> stack = saver != null ? stacks.get(i) : null;
+            // 每个位置单独复制一份；保存操作数栈的局部变量先分配，代码块的局部变量放在其后
+            int base = stack != null ? saver.reserve(stack) : 0;
+            InsnList block = MethodCopyHelper.copyInlineBody(sourceMethod, targetMethod);
+            if (stack != null) {
+                block.insert(saver.save(stack, base));
+                block.add(saver.restore(stack, base));
+            }
+            if (after) {
+                targetMethod.instructions.insert(insn, block);
+            } else {
+                targetMethod.instructions.insertBefore(insn, block);
+            }
+        }
+
+        PrintUtils.debug("AT合并完成: " + point + "，插入 " + matches.size() + " 处");
+        return true;
+    }
+
+    /**
+     * MODIFY_CONSTANT合并 - 直接替换为新的字面量，或在常量之后调用复制到目标类的源方法 T m(T)
+     */
+    private static boolean mergeModifyConstant(ClassNode targetClass,
+                                               MethodNode targetMethod,
+                                               MethodNode sourceMethod,
+                                               InjectionInfo info) {
+        InjectionPoint point = info.getInjectionPoint();
+        if (point == null || point.getKind() != InjectionPoint.Kind.CONSTANT) {
+            PrintUtils.warn("MODIFY_CONSTANT注入缺少常量注入点: " + info.getInjectionId());
+            return false;
+        }
+
+        List<AbstractInsnNode> matches = MethodValidationHelper.findMatchingInstructions(targetMethod, point);
+        if (matches.isEmpty()) {
+            PrintUtils.warn("MODIFY_CONSTANT未找到匹配的常量: " + point + " in " + targetMethod.name + targetMethod.desc);
+            return false;
+        }
+
+        Object replacement = info.getOptions().getConstantReplacement();
+        if (replacement != null) {
+            // 转换时直接替换字面量，运行时没有任何额外开销
+            for (AbstractInsnNode insn : matches) {
+                targetMethod.instructions.set(insn, MethodValidationHelper.createConstantInstruction(replacement));
+            }
+            PrintUtils.debug("MODIFY_CONSTANT合并完成: " + point + " -> " + replacement + "，替换 " + matches.size() + " 处");
+            return true;
+        }
+
+        // 常量值交给源方法处理：T m(T original)
+        Type constantType = Type.getType(point.getConstant() instanceof String ? String.class
+                : point.getConstant() instanceof Long ? long.class
+                : point.getConstant() instanceof Float ? float.class
+                : point.getConstant() instanceof Double ? double.class
+                : int.class);
+        String expected = Type.getMethodDescriptor(constantType, constantType);
+        if (!expected.equals(sourceMethod.desc)) {
+            PrintUtils.warn("MODIFY_CONSTANT源方法描述符不匹配: 期望 " + expected + "，实际 " + sourceMethod.desc);
+            return false;
+        }
+        if (targetClass == null) {
+            PrintUtils.warn("MODIFY_CONSTANT注入缺少目标类: " + info.getInjectionId());
+            return false;
+        }
+
+        String hookName = MethodCopyHelper.installStaticHook(targetClass, info.getSourceClass(), sourceMethod);
+        boolean itf = (targetClass.access & Opcodes.ACC_INTERFACE) != 0;
+        for (AbstractInsnNode insn : matches) {
+            targetMethod.instructions.insert(insn,
+                    new MethodInsnNode(Opcodes.INVOKESTATIC, targetClass.name, hookName, sourceMethod.desc, itf));
+        }
+        PrintUtils.debug("MODIFY_CONSTANT合并完成: " + point + "，经过 " + hookName + " 处理 " + matches.size() + " 处");
+        return true;
+    }
+
+    /**
+     * 计算替换某条指令的静态方法应有的描述符（操作数栈上的值原样作为参数），不支持时返回null
+     */
+    private static String redirectDescriptor(AbstractInsnNode insn) {
+        if (insn instanceof MethodInsnNode) {
+            MethodInsnNode call = (MethodInsnNode) insn;
+            if (call.getOpcode() == Opcodes.INVOKESTATIC) {
+                return call.desc;
+            }
+            if (call.getOpcode() == Opcodes.INVOKESPECIAL) {
+                return null;
+            }
+            Type[] args = Type.getArgumentTypes(call.desc);
+            Type[] withOwner = new Type[args.length + 1];
+            withOwner[0] = Type.getObjectType(call.owner);
+            System.arraycopy(args, 0, withOwner, 1, args.length);
+            return Type.getMethodDescriptor(Type.getReturnType(call.desc), withOwner);
+        }
+        if (insn instanceof FieldInsnNode) {
+            FieldInsnNode field = (FieldInsnNode) insn;
+            String owner = "L" + field.owner + ";";
+            switch (field.getOpcode()) {
+                case Opcodes.GETSTATIC:
+                    return "()" + field.desc;
+                case Opcodes.PUTSTATIC:
+                    return "(" + field.desc + ")V";
+                case Opcodes.GETFIELD:
+                    return "(" + owner + ")" + field.desc;
+                case Opcodes.PUTFIELD:
+                    return "(" + owner + field.desc + ")V";
+                default:
+                    return null;
+            }
+        }
+        return null;
+    }
+
     /**
      * 验证方法签名兼容性
      */
@@ -326,24 +682,17 @@ public class BytecodeMerger {
         Type sourceReturn = Type.getReturnType(sourceDesc);
 
         switch (info.getType()) {
+            case AT:
+                if (sourceReturn.getSort() != Type.VOID) {
+                    PrintUtils.warn("AT注入的源方法必须返回void");
+                    return false;
+                }
+                // 参数规则与HEAD相同
+                return validateLeadingArgs(sourceArgs, targetArgs);
             case BEFORE:
             case HEAD:
             case TAIL:
-                // 1. 参数数量必须 ≤ 目标方法参数数量
-                if (sourceArgs.length > targetArgs.length) {
-                    PrintUtils.warn("参数数量过多: 源方法参数 " + sourceArgs.length +
-                            " > 目标方法参数 " + targetArgs.length);
-                    return false;
-                }
-                // 2. 参数类型必须完全匹配（确保字节码安全）
-                for (int i = 0; i < sourceArgs.length; i++) {
-                    if (!sourceArgs[i].equals(targetArgs[i])) {
-                        PrintUtils.warn("参数类型不兼容: 位置 " + i +
-                                " 期望 " + targetArgs[i] + "，实际 " + sourceArgs[i]);
-                        return false;
-                    }
-                }
-                return true;
+                return validateLeadingArgs(sourceArgs, targetArgs);
             case AFTER:
                 if (sourceReturn.getSort() != Type.VOID) {
                     PrintUtils.warn("AFTER注入的源方法必须返回void");
@@ -354,11 +703,37 @@ public class BytecodeMerger {
             case AROUND:
                 return Arrays.equals(targetArgs, sourceArgs) &&
                         sourceReturn.equals(targetReturn);
+            case REDIRECT:
+            case MODIFY_CONSTANT:
+                // 按匹配到的指令校验，见 mergeRedirect / mergeModifyConstant
+                return true;
+            case MEMOIZE:
+                // 源方法只是声明载体
+                return true;
             default:
                 return false;
         }
     }
 
+    /**
+     * 源方法参数必须是目标方法参数的前缀：数量不多于目标方法，类型逐个完全匹配（确保字节码安全）
+     */
+    private static boolean validateLeadingArgs(Type[] sourceArgs, Type[] targetArgs) {
+        if (sourceArgs.length > targetArgs.length) {
+            PrintUtils.warn("参数数量过多: 源方法参数 " + sourceArgs.length +
+                    " > 目标方法参数 " + targetArgs.length);
+            return false;
+        }
+        for (int i = 0; i < sourceArgs.length; i++) {
+            if (!sourceArgs[i].equals(targetArgs[i])) {
+                PrintUtils.warn("参数类型不兼容: 位置 " + i +
+                        " 期望 " + targetArgs[i] + "，实际 " + sourceArgs[i]);
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * 确保方法包含返回指令，如果没有则添加默认返回值
      *
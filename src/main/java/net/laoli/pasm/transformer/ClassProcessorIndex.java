@@ -0,0 +1,174 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.api.ClassFilter;
+import net.laoli.pasm.api.PasmClassProcessor;
+import net.laoli.pasm.scanner.ConstantPoolScanner;
+import org.objectweb.asm.ClassReader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 类处理器索引 - 由各处理器的类过滤器编译而成，用于在解析类之前快速排除不相关的处理器
+ * 按代价从低到高依次判断：完整类名（哈希查找）、类名前缀（前缀树）、
+ * 直接父类和接口（只读取类文件头）、注解（只遍历常量池）；绝大多数类在前两步就被排除，不需要解析
+ *
+ * @author laoli
+ */
+public final class ClassProcessorIndex {
+    public static final ClassProcessorIndex EMPTY =
+            new ClassProcessorIndex(Collections.emptyList(), Collections.emptyList());
+
+    // 按优先级排序的处理器
+    private final PasmClassProcessor[] processors;
+    // 匹配所有类的处理器下标
+    private final int[] matchAll;
+    // 完整类名 -> 处理器下标
+    private final Map<String, int[]> byClassName = new HashMap<>();
+    // 类名前缀树
+    private final PrefixNode prefixRoot = new PrefixNode();
+    // 父类/接口 -> 处理器下标
+    private final Map<String, int[]> bySuperclass = new HashMap<>();
+    // 带注解条件的处理器下标及对应的注解描述符
+    private final int[] annotationProcessors;
+    private final byte[][][] annotationUtf8;
+
+    /**
+     * 前缀树节点，terminal 为以该节点结尾的前缀对应的处理器下标
+     */
+    private static final class PrefixNode {
+        final Map<Character, PrefixNode> children = new HashMap<>();
+        int[] terminal;
+    }
+
+    private ClassProcessorIndex(List<PasmClassProcessor> processors, List<ClassFilter> filters) {
+        this.processors = processors.toArray(new PasmClassProcessor[0]);
+
+        List<Integer> all = new ArrayList<>();
+        List<Integer> annotated = new ArrayList<>();
+        List<byte[][]> annotationBytes = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            ClassFilter filter = filters.get(i);
+            if (filter == null || filter.isMatchAll()) {
+                all.add(i);
+                continue;
+            }
+            for (String name : filter.getClasses()) {
+                byClassName.merge(name, new int[]{i}, ClassProcessorIndex::concat);
+            }
+            for (String prefix : filter.getPrefixes()) {
+                PrefixNode node = prefixRoot;
+                for (int c = 0; c < prefix.length(); c++) {
+                    node = node.children.computeIfAbsent(prefix.charAt(c), k -> new PrefixNode());
+                }
+                node.terminal = node.terminal == null ? new int[]{i} : concat(node.terminal, new int[]{i});
+            }
+            for (String superclass : filter.getSuperclasses()) {
+                bySuperclass.merge(superclass, new int[]{i}, ClassProcessorIndex::concat);
+            }
+            if (!filter.getAnnotations().isEmpty()) {
+                annotated.add(i);
+                byte[][] utf8 = new byte[filter.getAnnotations().size()][];
+                int n = 0;
+                for (String desc : filter.getAnnotations()) {
+                    utf8[n++] = desc.getBytes(StandardCharsets.UTF_8);
+                }
+                annotationBytes.add(utf8);
+            }
+        }
+        this.matchAll = all.stream().mapToInt(Integer::intValue).toArray();
+        this.annotationProcessors = annotated.stream().mapToInt(Integer::intValue).toArray();
+        this.annotationUtf8 = annotationBytes.toArray(new byte[0][][]);
+    }
+
+    /**
+     * 编译索引，processors 与 filters 一一对应并已按优先级排序；过滤器为null表示匹配所有类
+     */
+    public static ClassProcessorIndex build(List<PasmClassProcessor> processors, List<ClassFilter> filters) {
+        if (processors.isEmpty()) {
+            return EMPTY;
+        }
+        return new ClassProcessorIndex(processors, filters);
+    }
+
+    public boolean isEmpty() {
+        return processors.length == 0;
+    }
+
+    public int size() {
+        return processors.length;
+    }
+
+    /**
+     * 选出需要处理该类的处理器（按优先级排序），没有时返回空列表
+     */
+    public List<PasmClassProcessor> select(String internalName, byte[] classBytes) {
+        if (processors.length == 0) {
+            return Collections.emptyList();
+        }
+
+        boolean[] selected = new boolean[processors.length];
+        int count = mark(selected, matchAll, 0);
+        count = mark(selected, byClassName.get(internalName), count);
+
+        // 根节点对应空前缀，匹配所有类名
+        PrefixNode node = prefixRoot;
+        count = mark(selected, node.terminal, count);
+        for (int c = 0; c < internalName.length() && node != null; c++) {
+            node = node.children.get(internalName.charAt(c));
+            if (node != null) {
+                count = mark(selected, node.terminal, count);
+            }
+        }
+
+        // 只有仍有未选中的处理器依赖类内容时才读取类文件
+        if (count < processors.length && !bySuperclass.isEmpty()) {
+            try {
+                ClassReader header = new ClassReader(classBytes);
+                count = mark(selected, bySuperclass.get(header.getSuperName()), count);
+                for (String itf : header.getInterfaces()) {
+                    count = mark(selected, bySuperclass.get(itf), count);
+                }
+            } catch (RuntimeException ignored) {
+                // 无法解析的类文件交给后续转换报告
+            }
+        }
+        for (int a = 0; a < annotationProcessors.length && count < processors.length; a++) {
+            int index = annotationProcessors[a];
+            if (!selected[index] && ConstantPoolScanner.containsAnyUtf8(classBytes, annotationUtf8[a])) {
+                selected[index] = true;
+                count++;
+            }
+        }
+
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<PasmClassProcessor> result = new ArrayList<>(count);
+        for (int i = 0; i < processors.length; i++) {
+            if (selected[i]) {
+                result.add(processors[i]);
+            }
+        }
+        return result;
+    }
+
+    private static int mark(boolean[] selected, int[] indexes, int count) {
+        if (indexes == null) {
+            return count;
+        }
+        for (int index : indexes) {
+            if (!selected[index]) {
+                selected[index] = true;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
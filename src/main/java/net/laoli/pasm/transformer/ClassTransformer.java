@@ -1,11 +1,17 @@
 package net.laoli.pasm.transformer;
 
+import net.laoli.pasm.api.PasmClassProcessor;
+import net.laoli.pasm.loader.PluginJarStore;
+import net.laoli.pasm.model.InjectionPlan;
 import net.laoli.pasm.processor.InjectionProcessor;
+import net.laoli.pasm.processor.InjectionRegistry;
 import net.laoli.pasm.utils.PrintUtils;
 
 import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
-import java.util.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 简化的类转换器 - 实现ClassFileTransformer接口
@@ -15,6 +21,15 @@ import java.util.*;
 public class ClassTransformer implements ClassFileTransformer {
 
     private final InjectionProcessor injectionProcessor;
+    // 实际加载过的目标类及其原始字节码，供热重载定位和预计算
+    private final LoadedTargetRegistry loadedTargets = new LoadedTargetRegistry();
+    // 热重载第二阶段使用的预计算结果，重转换时直接返回；整批失败后逐个重试时仍要使用，重载结束时清空
+    private final Map<Class<?>, byte[]> precomputed = new ConcurrentHashMap<>();
+    // 热重载第二阶段尚未发布的快照和类处理器索引，没有预计算结果的类重转换时使用
+    private volatile InjectionRegistry reloadRegistry;
+    private volatile ClassProcessorIndex reloadIndex;
+    // 接入转换流水线的类处理器索引，处理器初始化完成后发布
+    private volatile ClassProcessorIndex classProcessorIndex = ClassProcessorIndex.EMPTY;
 
     public ClassTransformer(InjectionProcessor processor) {
         this.injectionProcessor = processor;
@@ -32,6 +47,15 @@ public class ClassTransformer implements ClassFileTransformer {
             return null;
         }
 
+        // 重转换：优先使用预计算好的字节码
+        if (classBeingRedefined != null && !precomputed.isEmpty()) {
+            byte[] bytes = precomputed.get(classBeingRedefined);
+            if (bytes != null) {
+                PrintUtils.debug("使用预计算字节码: " + internalClassName);
+                return bytes;
+            }
+        }
+
         // 排除系统类...
         if (internalClassName.startsWith("java/") ||
                 internalClassName.startsWith("javax/") ||
@@ -43,39 +67,130 @@ public class ClassTransformer implements ClassFileTransformer {
             return null;
         }
 
-        // 检查是否有注入信息...
-        if (!injectionProcessor.hasInjectionsForClass(internalClassName)) {
+        // 检查是否有注入计划（只读取一次快照，保证本次转换看到一致的数据）...
+        // 热重载重转换期间，被重转换的类按即将发布的快照转换
+        InjectionRegistry registry = classBeingRedefined != null ? reloadRegistry : null;
+        ClassProcessorIndex index = classProcessorIndex;
+        if (registry != null) {
+            ClassProcessorIndex pending = reloadIndex;
+            if (pending != null) {
+                index = pending;
+            }
+        } else {
+            registry = injectionProcessor.getRegistry();
+        }
+        InjectionPlan plan = registry.getPlan(internalClassName);
+        // 按类过滤器选出相关的类处理器，不相关的类不解析
+        List<PasmClassProcessor> processors = index.select(internalClassName, originalClassfileBuffer);
+        if (plan == null && processors.isEmpty()) {
             return null;
         }
 
-        PrintUtils.debug("转换类: " + internalClassName);
+        if (plan != null) {
+            PrintUtils.debug("转换类: " + internalClassName);
+            loadedTargets.record(loader, internalClassName, originalClassfileBuffer, classBeingRedefined);
+        }
 
         try {
-            // 获取注入信息
-            List<net.laoli.pasm.model.InjectionInfo> injections =
-                    injectionProcessor.getInjectionsForClass(internalClassName);
-
-            if (injections == null || injections.isEmpty()) {
-                return null;
+            // 使用MixinTransformer进行转换（一次解析，PASM注入和类处理器共用，一次写出）
+            // 插件字节码从快照扫描时的jar中读取
+            byte[] result = PluginJarStore.getInstance().readWith(registry.getJars(), () ->
+                    MixinTransformer.transformClass(
+                            originalClassfileBuffer,
+                            internalClassName,
+                            plan,
+                            processors,
+                            loader
+                    ));
+            if (plan != null) {
+                if (classBeingRedefined == null) {
+                    loadedTargets.recordShape(loader, internalClassName, result);
+                } else if (!loadedTargets.isRetransformable(loader, internalClassName, result)) {
+                    // 重转换不能增删成员，保持当前版本，避免整批重转换失败
+                    PrintUtils.warn("注入需要修改类结构，重转换无法应用，需要重启才能生效: " + internalClassName);
+                    return null;
+                }
             }
-
-            // 使用MixinTransformer进行转换
-            return MixinTransformer.transformClass(
-                    originalClassfileBuffer,
-                    internalClassName,
-                    injections,
-                    loader
-            );
+            return result == originalClassfileBuffer ? null : result;
 
         } catch (Exception e) {
             PrintUtils.error("转换失败: " + internalClassName + " - " + e.getMessage());
             e.printStackTrace();
+            recordFallbackShape(loader, internalClassName, classBeingRedefined, plan, originalClassfileBuffer);
             return originalClassfileBuffer;
         } catch (Throwable t) {
             // 捕获所有异常，包括Error，确保不会导致JVM崩溃
             PrintUtils.error("转换发生严重错误: " + internalClassName + " - " + t.getMessage());
             t.printStackTrace();
+            recordFallbackShape(loader, internalClassName, classBeingRedefined, plan, originalClassfileBuffer);
             return originalClassfileBuffer;
         }
     }
-}
\ No newline at end of file
+
+    private void recordFallbackShape(ClassLoader loader, String internalClassName, Class<?> classBeingRedefined,
+                                     InjectionPlan plan, byte[] originalClassfileBuffer) {
+        if (plan != null && classBeingRedefined == null) {
+            loadedTargets.recordShape(loader, internalClassName, originalClassfileBuffer);
+        }
+    }
+
+    /**
+     * 按指定快照严格计算类的新字节码（不经过JVM回调），失败时抛出异常
+     * 新快照中没有该类的注入计划时返回原始字节码，即还原
+     */
+    public byte[] computeBytes(InjectionRegistry registry, ClassProcessorIndex index, ClassLoader loader,
+                               String internalClassName, byte[] original) throws Exception {
+        InjectionPlan plan = registry.getPlan(internalClassName);
+        List<PasmClassProcessor> processors = index.select(internalClassName, original);
+        if (plan == null && processors.isEmpty()) {
+            return original;
+        }
+        return PluginJarStore.getInstance().readWith(registry.getJars(), () ->
+                MixinTransformer.transformClassStrict(original, internalClassName, plan, processors, loader));
+    }
+
+    /**
+     * 新字节码能否通过重转换应用到已加载的类（类结构没有变化）
+     */
+    public boolean isRetransformable(ClassLoader loader, String internalClassName, byte[] newBytes) {
+        return loadedTargets.isRetransformable(loader, internalClassName, newBytes);
+    }
+
+    /**
+     * 获取目标类首次经过转换器时记录的原始字节码，未记录时返回null
+     */
+    public byte[] getOriginalBytes(ClassLoader loader, String internalClassName) {
+        return loadedTargets.getOriginalBytes(loader, internalClassName);
+    }
+
+    public LoadedTargetRegistry getLoadedTargets() {
+        return loadedTargets;
+    }
+
+    /**
+     * 开始热重载的重转换：设置预计算字节码，以及没有预计算结果的类使用的新快照和类处理器索引
+     */
+    public void beginReload(Map<Class<?>, byte[]> bytesByClass, InjectionRegistry registry,
+                            ClassProcessorIndex index) {
+        precomputed.clear();
+        precomputed.putAll(bytesByClass);
+        reloadIndex = index;
+        reloadRegistry = registry;
+    }
+
+    /**
+     * 结束热重载的重转换，清空预计算字节码
+     */
+    public void endReload() {
+        reloadRegistry = null;
+        reloadIndex = null;
+        precomputed.clear();
+    }
+
+    /**
+     * 发布接入转换流水线的类处理器索引，之后加载或重转换的类生效
+     */
+    public void setClassProcessorIndex(ClassProcessorIndex index) {
+        this.classProcessorIndex = index;
+    }
+}
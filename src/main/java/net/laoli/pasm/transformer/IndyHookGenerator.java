@@ -0,0 +1,122 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.annotation.Inject;
+import net.laoli.pasm.loader.PluginJarStore;
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.runtime.IndyHooks;
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * invokedynamic 链接的钩子代码生成 - 注入位置只调用与源方法同签名的桩方法：
+ * <pre>
+ *   invokedynamic hook(args) [IndyHooks.bootstrap, "插件类"]
+ * </pre>
+ * 桩方法再按原注入类型（HEAD/TAIL/AT等）合并，参数映射与复制模式一致；
+ * 钩子代码的更新通过 {@link #relink} 重新指向调用点完成，不改变目标类的字节码
+ *
+ * @author laoli
+ */
+public class IndyHookGenerator {
+    private static final Handle BOOTSTRAP = new Handle(Opcodes.H_INVOKESTATIC, "net/laoli/pasm/runtime/IndyHooks",
+            "bootstrap",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    /**
+     * 登记插件类并返回用于合并的桩方法；不满足条件时返回null
+     */
+    public static MethodNode createCallStub(ClassNode targetClass, MethodNode sourceMethod, InjectionInfo info) {
+        switch (info.getType()) {
+            case BEFORE:
+            case HEAD:
+            case AFTER:
+            case TAIL:
+            case AT:
+            case REPLACE:
+                break;
+            default:
+                PrintUtils.warn("invokedynamic链接只支持 BEFORE/HEAD/AFTER/TAIL/AT/REPLACE 注入: " + info.getInjectionId());
+                return null;
+        }
+        if (targetClass == null) {
+            PrintUtils.warn("invokedynamic链接缺少目标类: " + info.getInjectionId());
+            return null;
+        }
+        if ((targetClass.version & 0xFFFF) < Opcodes.V1_7) {
+            PrintUtils.warn("目标类版本过低，无法使用invokedynamic链接: " + targetClass.name);
+            return null;
+        }
+        byte[] classBytes = readSourceClass(info.getSourceClass());
+        if (classBytes == null) {
+            return null;
+        }
+        IndyHooks.register(info.getSourceClass(), classBytes);
+
+        MethodNode stub = new MethodNode(Opcodes.ASM9, Opcodes.ACC_STATIC, sourceMethod.name,
+                sourceMethod.desc, null, null);
+        InsnList insns = stub.instructions;
+        int local = 0;
+        for (Type arg : Type.getArgumentTypes(sourceMethod.desc)) {
+            insns.add(new VarInsnNode(arg.getOpcode(Opcodes.ILOAD), local));
+            local += arg.getSize();
+        }
+        insns.add(new InvokeDynamicInsnNode(sourceMethod.name, sourceMethod.desc, BOOTSTRAP, info.getSourceClass()));
+        Type returnType = Type.getReturnType(sourceMethod.desc);
+        insns.add(new InsnNode(returnType.getOpcode(Opcodes.IRETURN)));
+        stub.maxLocals = local;
+        stub.maxStack = Math.max(local, returnType.getSize());
+
+        PrintUtils.debug("invokedynamic链接: " + info.getInjectionId());
+        return stub;
+    }
+
+    /**
+     * 热重载后调用：把 INDY 注入的插件类更新为新字节码，已链接的调用点随之指向新版本
+     *
+     * @return 重新链接的调用点数量
+     */
+    public static int relink(Collection<? extends List<InjectionInfo>> injections) {
+        Set<String> sourceClasses = new LinkedHashSet<>();
+        for (List<InjectionInfo> list : injections) {
+            for (InjectionInfo info : list) {
+                if (info.getOptions().getLink() == Inject.Link.INDY) {
+                    sourceClasses.add(info.getSourceClass());
+                }
+            }
+        }
+        int relinked = 0;
+        for (String sourceClass : sourceClasses) {
+            byte[] classBytes = readSourceClass(sourceClass);
+            if (classBytes != null) {
+                relinked += IndyHooks.update(sourceClass, classBytes);
+            }
+        }
+        if (relinked > 0) {
+            PrintUtils.info("invokedynamic钩子已更新，重新链接 " + relinked + " 个调用点");
+        }
+        return relinked;
+    }
+
+    private static byte[] readSourceClass(String sourceClass) {
+        try {
+            byte[] bytes = PluginJarStore.getInstance().readClass(sourceClass);
+            if (bytes == null) {
+                PrintUtils.warn("无法找到插件类: " + sourceClass);
+            }
+            return bytes;
+        } catch (IOException e) {
+            PrintUtils.error("读取插件类失败: " + sourceClass + " - " + e.getMessage());
+            return null;
+        }
+    }
+}
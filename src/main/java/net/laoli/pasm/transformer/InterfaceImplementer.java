@@ -0,0 +1,249 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.loader.PluginJarStore;
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.MethodRemapper;
+import org.objectweb.asm.commons.SimpleRemapper;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * 接口注入 - 目标类实现 @Pasm(interfaces = ...) 声明的接口，插件类中的实例方法（含桥接方法）复制到目标类
+ * 复制时把对插件类的引用改为目标类，插件代码中的 this 即目标对象；
+ * 实例方法直接或间接调用的静态方法（含 lambda 合成方法）一并复制，合成方法改名以免与目标类自己的 lambda 冲突。
+ * 引用的插件类字段必须是常量（随方法复制）或 @InjectField 字段（已添加到目标类），否则整个接口注入失败
+ *
+ * @author laoli
+ */
+public class InterfaceImplementer {
+    private static final String PASM_ANNOTATION_PREFIX = "Lnet/laoli/pasm/annotation/";
+    private static final String INJECT_FIELD_DESC = "Lnet/laoli/pasm/annotation/InjectField;";
+
+    /**
+     * 添加接口；同一插件类的方法只在第一次时复制，复制失败时不添加接口
+     *
+     * @param copyMethods 是否复制插件类的方法
+     * @param loader      目标类的定义加载器，插件中的接口只有系统类加载器是它的祖先时才能解析
+     */
+    public static boolean implement(ClassNode classNode, InjectionInfo info, boolean copyMethods, ClassLoader loader) {
+        String iface = info.getTargetMethod();
+        // 来自服务端或JDK的接口不需要检查
+        if (PluginJarStore.getInstance().containsClass(iface) && !AccessorGenerator.seesSystemLoader(loader)) {
+            PrintUtils.warn("目标类的加载器无法看到系统类加载器中的插件接口，跳过: " + classNode.name + " implements " + iface);
+            return false;
+        }
+        if (copyMethods && !copyMethods(classNode, info.getSourceClass())) {
+            return false;
+        }
+        if (!classNode.interfaces.contains(iface)) {
+            classNode.interfaces.add(iface);
+        }
+        PrintUtils.debug("  接口注入: " + classNode.name + " implements " + iface);
+        return true;
+    }
+
+    private static boolean copyMethods(ClassNode classNode, String sourceClass) {
+        byte[] bytes;
+        try {
+            bytes = PluginJarStore.getInstance().readClass(sourceClass);
+        } catch (IOException e) {
+            PrintUtils.warn("读取插件类失败: " + sourceClass + " - " + e.getMessage());
+            return false;
+        }
+        if (bytes == null) {
+            PrintUtils.warn("无法加载插件类字节码: " + sourceClass);
+            return false;
+        }
+        ClassNode source = new ClassNode(Opcodes.ASM9);
+        new ClassReader(bytes).accept(source, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+        Set<String> fieldNames = new LinkedHashSet<>();
+        Collection<MethodNode> methods = collectMethods(source, fieldNames);
+        if ((classNode.version & 0xFFFF) < Opcodes.V1_7 && usesIndy(methods)) {
+            // 与invokedynamic链接一样不提升目标类版本（旧版本类可能含jsr/ret），直接放弃
+            PrintUtils.warn("目标类版本过低，无法复制包含invokedynamic或方法句柄常量（lambda）的方法，跳过接口注入: " +
+                    classNode.name + " implements " + sourceClass);
+            return false;
+        }
+
+        // 先检查引用的字段，任何一个无法满足时不修改目标类
+        List<FieldNode> constants = new ArrayList<>();
+        for (String name : fieldNames) {
+            FieldNode field = findField(source.fields, name);
+            if (field == null || findField(classNode.fields, name) != null) {
+                // 继承来的字段，或已由 @InjectField 添加
+                continue;
+            }
+            if ((field.access & (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL)) == (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL)
+                    && field.value != null) {
+                constants.add(field);
+                continue;
+            }
+            PrintUtils.warn("接口注入的方法引用了插件类字段 " + sourceClass + "." + name + "，只有常量会随方法复制，" +
+                    (hasAnnotation(field.visibleAnnotations, INJECT_FIELD_DESC)
+                            ? "@InjectField 字段未能添加到目标类" : "每对象状态请使用 @InjectField 声明") +
+                    "，跳过接口注入: " + classNode.name);
+            return false;
+        }
+
+        Map<String, String> mapping = new HashMap<>();
+        mapping.put(sourceClass, classNode.name);
+        String suffix = "$pasm$" + Integer.toHexString(sourceClass.hashCode());
+        for (MethodNode method : methods) {
+            if ((method.access & Opcodes.ACC_SYNTHETIC) != 0 && (method.access & Opcodes.ACC_BRIDGE) == 0) {
+                mapping.put(sourceClass + "." + method.name + method.desc, method.name + suffix);
+            }
+        }
+        SimpleRemapper remapper = new SimpleRemapper(mapping);
+
+        for (FieldNode field : constants) {
+            classNode.fields.add(new FieldNode(Opcodes.ASM9, field.access, field.name,
+                    remapper.mapDesc(field.desc), remapper.mapSignature(field.signature, true), field.value));
+        }
+        int copied = 0;
+        for (MethodNode method : methods) {
+            String name = remapper.mapMethodName(sourceClass, method.name, method.desc);
+            String desc = remapper.mapMethodDesc(method.desc);
+            if (findMethod(classNode, name, desc) != null) {
+                if ((method.access & Opcodes.ACC_BRIDGE) == 0) {
+                    PrintUtils.warn("目标类已存在同名方法，跳过: " + classNode.name + "." + name + desc);
+                }
+                continue;
+            }
+            String[] exceptions = method.exceptions != null ? method.exceptions.toArray(new String[0]) : null;
+            MethodNode copy = new MethodNode(Opcodes.ASM9, method.access, name, desc,
+                    remapper.mapSignature(method.signature, false), exceptions);
+            method.accept(new MethodRemapper(copy, remapper));
+            classNode.methods.add(copy);
+            copied++;
+        }
+        PrintUtils.debug("  从 " + sourceClass + " 复制 " + copied + " 个方法、" + constants.size() + " 个常量");
+        return true;
+    }
+
+    /**
+     * 收集需要复制的方法：非抽象实例方法，以及从它们出发经方法调用、方法句柄（lambda）可达的插件类方法；
+     * 顺带收集这些方法访问的插件类字段名
+     */
+    private static Collection<MethodNode> collectMethods(ClassNode source, Set<String> fieldNames) {
+        Map<String, MethodNode> declared = new HashMap<>();
+        for (MethodNode method : source.methods) {
+            declared.put(method.name + method.desc, method);
+        }
+
+        Set<MethodNode> selected = new LinkedHashSet<>();
+        Deque<MethodNode> pending = new ArrayDeque<>();
+        for (MethodNode method : source.methods) {
+            if ((method.access & Opcodes.ACC_STATIC) == 0 && !hasPasmAnnotation(method)) {
+                select(method, selected, pending);
+            }
+        }
+        while (!pending.isEmpty()) {
+            MethodNode method = pending.poll();
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn instanceof MethodInsnNode) {
+                    MethodInsnNode call = (MethodInsnNode) insn;
+                    if (call.owner.equals(source.name)) {
+                        select(declared.get(call.name + call.desc), selected, pending);
+                    }
+                } else if (insn instanceof FieldInsnNode) {
+                    if (((FieldInsnNode) insn).owner.equals(source.name)) {
+                        fieldNames.add(((FieldInsnNode) insn).name);
+                    }
+                } else if (insn instanceof InvokeDynamicInsnNode) {
+                    InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+                    selectHandle(indy.bsm, source.name, declared, selected, pending);
+                    for (Object arg : indy.bsmArgs) {
+                        selectHandle(arg, source.name, declared, selected, pending);
+                    }
+                } else if (insn instanceof LdcInsnNode) {
+                    selectHandle(((LdcInsnNode) insn).cst, source.name, declared, selected, pending);
+                }
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 方法中是否有Java 7之前的类文件不支持的指令：invokedynamic、方法句柄或方法类型常量
+     */
+    private static boolean usesIndy(Collection<MethodNode> methods) {
+        for (MethodNode method : methods) {
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn instanceof InvokeDynamicInsnNode) {
+                    return true;
+                }
+                if (insn instanceof LdcInsnNode) {
+                    Object cst = ((LdcInsnNode) insn).cst;
+                    if (cst instanceof Handle || (cst instanceof Type && ((Type) cst).getSort() == Type.METHOD)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void selectHandle(Object value, String owner, Map<String, MethodNode> declared,
+                                     Set<MethodNode> selected, Deque<MethodNode> pending) {
+        if (value instanceof Handle && ((Handle) value).getOwner().equals(owner)) {
+            Handle handle = (Handle) value;
+            select(declared.get(handle.getName() + handle.getDesc()), selected, pending);
+        }
+    }
+
+    private static void select(MethodNode method, Set<MethodNode> selected, Deque<MethodNode> pending) {
+        if (method != null && !method.name.startsWith("<") && (method.access & Opcodes.ACC_ABSTRACT) == 0
+                && selected.add(method)) {
+            pending.add(method);
+        }
+    }
+
+    private static FieldNode findField(List<FieldNode> fields, String name) {
+        for (FieldNode field : fields) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasAnnotation(List<AnnotationNode> annotations, String desc) {
+        if (annotations != null) {
+            for (AnnotationNode annotation : annotations) {
+                if (annotation.desc.equals(desc)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasPasmAnnotation(MethodNode method) {
+        if (method.visibleAnnotations != null) {
+            for (AnnotationNode annotation : method.visibleAnnotations) {
+                if (annotation.desc.startsWith(PASM_ANNOTATION_PREFIX)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static MethodNode findMethod(ClassNode classNode, String name, String desc) {
+        List<MethodNode> methods = classNode.methods;
+        for (MethodNode method : methods) {
+            if (method.name.equals(name) && method.desc.equals(desc)) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,195 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 已加载目标类登记表 - 记录转换器实际见过的目标类及其原始字节码，按类加载器分组
+ * 类加载器以弱引用持有，插件或服务端卸载类加载器后登记随之回收；
+ * 热重载时据此直接定位需要重转换的类，无需遍历JVM中的全部已加载类；
+ * 同时记录类当前生效的结构摘要，重转换不能增删成员或修改签名、修饰符和继承关系，结构变化的类需要重启才能生效
+ *
+ * @author laoli
+ */
+public class LoadedTargetRegistry {
+
+    private final Map<ClassLoader, Map<String, Entry>> byLoader =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final class Entry {
+        final byte[] originalBytes;
+        volatile WeakReference<Class<?>> classRef;
+        // 当前生效字节码的结构摘要，0表示未知
+        volatile long shape;
+
+        Entry(byte[] originalBytes) {
+            this.originalBytes = originalBytes;
+        }
+    }
+
+    /**
+     * 登记一次转换回调；首次加载时类对象尚不存在，重转换时一并记录类对象
+     */
+    public void record(ClassLoader loader, String internalName, byte[] originalBytes, Class<?> clazz) {
+        Entry entry = byLoader.computeIfAbsent(loader, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(internalName, k -> {
+                    Entry created = new Entry(originalBytes);
+                    if (clazz != null) {
+                        // 重转换时才首次登记，说明类加载时没有经过注入，当前结构就是原始字节码的结构
+                        created.shape = shapeOf(originalBytes);
+                    }
+                    return created;
+                });
+        if (clazz != null && entry.classRef == null) {
+            entry.classRef = new WeakReference<>(clazz);
+        }
+    }
+
+    /**
+     * 记录类当前生效字节码的结构摘要，只能在 record 之后调用
+     */
+    public void recordShape(ClassLoader loader, String internalName, byte[] appliedBytes) {
+        Map<String, Entry> byName = byLoader.get(loader);
+        Entry entry = byName != null ? byName.get(internalName) : null;
+        if (entry != null) {
+            entry.shape = shapeOf(appliedBytes);
+        }
+    }
+
+    /**
+     * 新字节码能否通过重转换应用：结构摘要与当前生效的一致，或当前结构未知
+     */
+    public boolean isRetransformable(ClassLoader loader, String internalName, byte[] newBytes) {
+        Map<String, Entry> byName = byLoader.get(loader);
+        Entry entry = byName != null ? byName.get(internalName) : null;
+        return entry == null || entry.shape == 0 || entry.shape == shapeOf(newBytes);
+    }
+
+    /**
+     * 类结构摘要：类修饰符、父类、接口以及全部字段和方法的修饰符、名称、描述符
+     */
+    public static long shapeOf(byte[] classBytes) {
+        StringBuilder header = new StringBuilder();
+        List<String> members = new ArrayList<>();
+        new ClassReader(classBytes).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public void visit(int version, int access, String name, String signature,
+                              String superName, String[] interfaces) {
+                header.append(access).append(' ').append(superName);
+                for (String itf : interfaces) {
+                    header.append(' ').append(itf);
+                }
+            }
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor,
+                                           String signature, Object value) {
+                members.add("F " + access + " " + name + " " + descriptor);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                             String signature, String[] exceptions) {
+                members.add("M " + access + " " + name + " " + descriptor);
+                return null;
+            }
+        }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        Collections.sort(members);
+
+        CRC32 crc = new CRC32();
+        crc.update(header.toString().getBytes(StandardCharsets.UTF_8));
+        for (String member : members) {
+            crc.update('\n');
+            crc.update(member.getBytes(StandardCharsets.UTF_8));
+        }
+        // 0 保留给"未知"
+        return crc.getValue() | 1L << 32;
+    }
+
+    /**
+     * 获取目标类首次经过转换器时的原始字节码，未登记时返回null
+     */
+    public byte[] getOriginalBytes(ClassLoader loader, String internalName) {
+        Map<String, Entry> byName = byLoader.get(loader);
+        Entry entry = byName != null ? byName.get(internalName) : null;
+        return entry != null ? entry.originalBytes : null;
+    }
+
+    /**
+     * 是否在任意类加载器中登记过该类
+     */
+    public boolean contains(String internalName) {
+        synchronized (byLoader) {
+            for (Map<String, Entry> byName : byLoader.values()) {
+                if (byName.containsKey(internalName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析所有类加载器中已登记且名称在给定集合内的类
+     * 重转换时登记的类直接使用记录的类对象（弱引用已清除的跳过）；首次加载时登记的类还没有类对象，
+     * 从该加载器已加载的类（Instrumentation.getInitiatedClasses）中按名称取回并记录，不会触发类加载，
+     * 找不到（类定义失败）时跳过
+     */
+    public List<Class<?>> resolve(Set<String> internalNames, Instrumentation inst) {
+        List<Class<?>> result = new ArrayList<>();
+        if (internalNames.isEmpty()) {
+            return result;
+        }
+
+        List<Map.Entry<ClassLoader, Map<String, Entry>>> snapshot;
+        synchronized (byLoader) {
+            snapshot = new ArrayList<>(byLoader.entrySet());
+        }
+
+        for (Map.Entry<ClassLoader, Map<String, Entry>> loaderEntry : snapshot) {
+            ClassLoader loader = loaderEntry.getKey();
+            if (loader == null) continue;
+            Map<String, Entry> unresolved = new HashMap<>();
+            for (String internalName : internalNames) {
+                Entry entry = loaderEntry.getValue().get(internalName);
+                if (entry == null) continue;
+
+                WeakReference<Class<?>> ref = entry.classRef;
+                if (ref == null) {
+                    unresolved.put(internalName.replace('/', '.'), entry);
+                    continue;
+                }
+                Class<?> clazz = ref.get();
+                if (clazz != null) {
+                    result.add(clazz);
+                }
+            }
+            if (unresolved.isEmpty()) continue;
+
+            for (Class<?> clazz : inst.getInitiatedClasses(loader)) {
+                if (clazz.getClassLoader() != loader) continue;
+                Entry entry = unresolved.remove(clazz.getName());
+                if (entry != null) {
+                    entry.classRef = new WeakReference<>(clazz);
+                    result.add(clazz);
+                }
+            }
+            for (String name : unresolved.keySet()) {
+                PrintUtils.debug("已登记的目标类未被加载器定义，跳过: " + name);
+            }
+        }
+        return result;
+    }
+}
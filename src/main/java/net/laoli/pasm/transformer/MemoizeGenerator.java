@@ -0,0 +1,246 @@
+package net.laoli.pasm.transformer;
+
+import net.laoli.pasm.annotation.Memoize;
+import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.runtime.MemoCaches;
+import net.laoli.pasm.utils.PrintUtils;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.List;
+
+/**
+ * MEMOIZE代码生成 - 直接在目标方法内生成缓存查找和写入，不添加字段和方法（支持重转换）
+ * <pre>
+ *   table = MemoCaches.get(slot).table(this 或 null)
+ *   key   = 参数编码（long 或 Object）
+ *   v = table.get(key); if (v != MemoCache.MISS) return (T) v;
+ *   ... 原方法体，每个 return 前： return (T) table.put(key, 结果)
+ * </pre>
+ *
+ * @author laoli
+ */
+public class MemoizeGenerator {
+    private static final String MEMO_CACHES = "net/laoli/pasm/runtime/MemoCaches";
+    private static final String MEMO_CACHE = "net/laoli/pasm/runtime/MemoCache";
+    private static final String MEMO_TABLE = "net/laoli/pasm/runtime/MemoCache$Table";
+    private static final String MEMO_KEY = "net/laoli/pasm/runtime/MemoKey";
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+
+    /**
+     * 为目标方法生成缓存
+     *
+     * @param loader 目标类的定义加载器，不同加载器中的同名类使用各自的缓存
+     */
+    public static boolean apply(String targetClassName, ClassLoader loader, MethodNode targetMethod, InjectionInfo info) {
+        Type returnType = Type.getReturnType(targetMethod.desc);
+        if (returnType.getSort() == Type.VOID) {
+            PrintUtils.warn("MEMOIZE目标方法不能返回void: " + targetMethod.name + targetMethod.desc);
+            return false;
+        }
+        if (targetMethod.name.startsWith("<")) {
+            PrintUtils.warn("MEMOIZE不支持构造器和静态初始化块: " + targetMethod.name);
+            return false;
+        }
+
+        boolean isStatic = (targetMethod.access & Opcodes.ACC_STATIC) != 0;
+        Memoize.Scope scope = info.getOptions().getMemoScope();
+        boolean perInstance = scope == Memoize.Scope.INSTANCE || (scope == Memoize.Scope.AUTO && !isStatic);
+        if (perInstance && isStatic) {
+            PrintUtils.warn("MEMOIZE静态方法不能按实例缓存，改为全局缓存: " + targetMethod.name);
+            perInstance = false;
+        }
+
+        String id = targetClassName + "." + targetMethod.name + targetMethod.desc + "@" + loaderId(loader);
+        int slot = MemoCaches.register(loader, id, info.getOptions().getMemoMaxSize(), perInstance);
+
+        Type[] argTypes = Type.getArgumentTypes(targetMethod.desc);
+        boolean longKey = isLongKey(argTypes);
+
+        // 新的局部变量放在原有局部变量之后
+        int tableLocal = targetMethod.maxLocals;
+        int keyLocal = tableLocal + 1;
+        int valueLocal = keyLocal + (longKey ? 2 : 1);
+        targetMethod.maxLocals = valueLocal + 1;
+
+        // 每个 return 前写入缓存（先收集原方法的 return，再插入前缀）
+        List<AbstractInsnNode> returns = MethodValidationHelper.findReturnNodes(targetMethod);
+        for (AbstractInsnNode ret : returns) {
+            InsnList store = new InsnList();
+            box(store, returnType);
+            store.add(new VarInsnNode(Opcodes.ASTORE, valueLocal));
+            store.add(new VarInsnNode(Opcodes.ALOAD, tableLocal));
+            store.add(new VarInsnNode(longKey ? Opcodes.LLOAD : Opcodes.ALOAD, keyLocal));
+            store.add(new VarInsnNode(Opcodes.ALOAD, valueLocal));
+            store.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, MEMO_TABLE, "put",
+                    "(" + (longKey ? "J" : OBJECT_DESC) + OBJECT_DESC + ")" + OBJECT_DESC, false));
+            unbox(store, returnType);
+            targetMethod.instructions.insertBefore(ret, store);
+        }
+
+        // 方法开头查找缓存
+        InsnList lookup = new InsnList();
+        lookup.add(MethodValidationHelper.createConstantInstruction(slot));
+        lookup.add(new MethodInsnNode(Opcodes.INVOKESTATIC, MEMO_CACHES, "get",
+                "(I)L" + MEMO_CACHE + ";", false));
+        lookup.add(perInstance ? new VarInsnNode(Opcodes.ALOAD, 0) : new InsnNode(Opcodes.ACONST_NULL));
+        lookup.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, MEMO_CACHE, "table",
+                "(" + OBJECT_DESC + ")L" + MEMO_TABLE + ";", false));
+        lookup.add(new VarInsnNode(Opcodes.ASTORE, tableLocal));
+
+        if (longKey) {
+            pushLongKey(lookup, argTypes, isStatic ? 0 : 1);
+            lookup.add(new VarInsnNode(Opcodes.LSTORE, keyLocal));
+        } else {
+            pushObjectKey(lookup, argTypes, isStatic ? 0 : 1);
+            lookup.add(new VarInsnNode(Opcodes.ASTORE, keyLocal));
+        }
+
+        LabelNode miss = new LabelNode();
+        lookup.add(new VarInsnNode(Opcodes.ALOAD, tableLocal));
+        lookup.add(new VarInsnNode(longKey ? Opcodes.LLOAD : Opcodes.ALOAD, keyLocal));
+        lookup.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, MEMO_TABLE, "get",
+                "(" + (longKey ? "J" : OBJECT_DESC) + ")" + OBJECT_DESC, false));
+        lookup.add(new InsnNode(Opcodes.DUP));
+        lookup.add(new FieldInsnNode(Opcodes.GETSTATIC, MEMO_CACHE, "MISS", OBJECT_DESC));
+        lookup.add(new JumpInsnNode(Opcodes.IF_ACMPEQ, miss));
+        unbox(lookup, returnType);
+        lookup.add(new InsnNode(returnType.getOpcode(Opcodes.IRETURN)));
+        lookup.add(miss);
+        lookup.add(new InsnNode(Opcodes.POP));
+        targetMethod.instructions.insert(lookup);
+
+        PrintUtils.debug("MEMOIZE生成完成: " + id + " (slot=" + slot + ", " + (longKey ? "long键" : "对象键") +
+                (perInstance ? ", 按实例" : "") + ")");
+        return true;
+    }
+
+    private static String loaderId(ClassLoader loader) {
+        return loader == null ? "bootstrap"
+                : loader.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(loader));
+    }
+
+    /**
+     * 参数能否不装箱地编码为一个long：无参数、一个基本类型参数、或两个不超过32位的基本类型参数
+     */
+    private static boolean isLongKey(Type[] argTypes) {
+        if (argTypes.length == 0) {
+            return true;
+        }
+        if (argTypes.length == 1) {
+            return isPrimitive(argTypes[0]);
+        }
+        return argTypes.length == 2 &&
+                isPrimitive(argTypes[0]) && argTypes[0].getSize() == 1 &&
+                isPrimitive(argTypes[1]) && argTypes[1].getSize() == 1;
+    }
+
+    private static void pushLongKey(InsnList insns, Type[] argTypes, int firstSlot) {
+        if (argTypes.length == 0) {
+            insns.add(new InsnNode(Opcodes.LCONST_0));
+            return;
+        }
+        if (argTypes.length == 1) {
+            Type type = argTypes[0];
+            insns.add(new VarInsnNode(type.getOpcode(Opcodes.ILOAD), firstSlot));
+            if (type.getSort() == Type.DOUBLE) {
+                insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false));
+            } else if (type.getSort() != Type.LONG) {
+                pushIntBits(insns, type);
+                insns.add(new InsnNode(Opcodes.I2L));
+            }
+            return;
+        }
+        // 两个32位以内的参数：高32位为第一个参数，低32位为第二个参数
+        insns.add(new VarInsnNode(argTypes[0].getOpcode(Opcodes.ILOAD), firstSlot));
+        pushIntBits(insns, argTypes[0]);
+        insns.add(new InsnNode(Opcodes.I2L));
+        insns.add(new IntInsnNode(Opcodes.BIPUSH, 32));
+        insns.add(new InsnNode(Opcodes.LSHL));
+        insns.add(new VarInsnNode(argTypes[1].getOpcode(Opcodes.ILOAD), firstSlot + 1));
+        pushIntBits(insns, argTypes[1]);
+        insns.add(new InsnNode(Opcodes.I2L));
+        insns.add(new LdcInsnNode(0xFFFFFFFFL));
+        insns.add(new InsnNode(Opcodes.LAND));
+        insns.add(new InsnNode(Opcodes.LOR));
+    }
+
+    private static void pushIntBits(InsnList insns, Type type) {
+        if (type.getSort() == Type.FLOAT) {
+            insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false));
+        }
+    }
+
+    /**
+     * 一个引用参数直接作为键，多个参数装箱后组合为 MemoKey
+     */
+    private static void pushObjectKey(InsnList insns, Type[] argTypes, int firstSlot) {
+        if (argTypes.length == 1) {
+            insns.add(new VarInsnNode(Opcodes.ALOAD, firstSlot));
+            return;
+        }
+        insns.add(MethodValidationHelper.createConstantInstruction(argTypes.length));
+        insns.add(new TypeInsnNode(Opcodes.ANEWARRAY, "java/lang/Object"));
+        int slot = firstSlot;
+        for (int i = 0; i < argTypes.length; i++) {
+            insns.add(new InsnNode(Opcodes.DUP));
+            insns.add(MethodValidationHelper.createConstantInstruction(i));
+            insns.add(new VarInsnNode(argTypes[i].getOpcode(Opcodes.ILOAD), slot));
+            box(insns, argTypes[i]);
+            insns.add(new InsnNode(Opcodes.AASTORE));
+            slot += argTypes[i].getSize();
+        }
+        insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, MEMO_KEY, "of",
+                "([" + OBJECT_DESC + ")" + OBJECT_DESC, false));
+    }
+
+    private static boolean isPrimitive(Type type) {
+        return type.getSort() >= Type.BOOLEAN && type.getSort() <= Type.DOUBLE;
+    }
+
+    static void box(InsnList insns, Type type) {
+        if (!isPrimitive(type)) {
+            return;
+        }
+        String wrapper = wrapperOf(type);
+        insns.add(new MethodInsnNode(Opcodes.INVOKESTATIC, wrapper, "valueOf",
+                "(" + type.getDescriptor() + ")L" + wrapper + ";", false));
+    }
+
+    private static void unbox(InsnList insns, Type type) {
+        if (!isPrimitive(type)) {
+            if (!OBJECT_DESC.equals(type.getDescriptor())) {
+                insns.add(new TypeInsnNode(Opcodes.CHECKCAST, type.getInternalName()));
+            }
+            return;
+        }
+        String wrapper = wrapperOf(type);
+        insns.add(new TypeInsnNode(Opcodes.CHECKCAST, wrapper));
+        insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, wrapper, type.getClassName() + "Value",
+                "()" + type.getDescriptor(), false));
+    }
+
+    private static String wrapperOf(Type type) {
+        switch (type.getSort()) {
+            case Type.BOOLEAN:
+                return "java/lang/Boolean";
+            case Type.CHAR:
+                return "java/lang/Character";
+            case Type.BYTE:
+                return "java/lang/Byte";
+            case Type.SHORT:
+                return "java/lang/Short";
+            case Type.INT:
+                return "java/lang/Integer";
+            case Type.FLOAT:
+                return "java/lang/Float";
+            case Type.LONG:
+                return "java/lang/Long";
+            case Type.DOUBLE:
+                return "java/lang/Double";
+            default:
+                throw new IllegalArgumentException("不是基本类型: " + type);
+        }
+    }
+}
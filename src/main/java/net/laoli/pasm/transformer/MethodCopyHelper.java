@@ -14,6 +14,14 @@ public class MethodCopyHelper {
 
     public static Pair<InsnList, Map<LabelNode, LabelNode>> copyMethodBodyWithOffsetAndMapping(
             MethodNode sourceMethod, MethodNode targetMethod) {
+        return copyMethodBodyWithOffsetAndMapping(sourceMethod, targetMethod, -1);
+    }
+
+    /**
+     * @param localBase 源方法非参数局部变量在目标方法中的起始索引，-1表示紧接在目标方法参数之后
+     */
+    public static Pair<InsnList, Map<LabelNode, LabelNode>> copyMethodBodyWithOffsetAndMapping(
+            MethodNode sourceMethod, MethodNode targetMethod, int localBase) {
 
         // ----- 1. 计算源方法的局部变量布局 -----
         boolean sourceIsStatic = (sourceMethod.access & Opcodes.ACC_STATIC) != 0;
@@ -38,7 +46,7 @@ public class MethodCopyHelper {
         for (int i = 0; i < argTypes.length; i++) {
             curSlot += paramSlots[i];
         }
-        int targetLocalStart = curSlot;
+        int targetLocalStart = localBase >= 0 ? localBase : curSlot;
 
         // ----- 3. 构建局部变量索引映射表 -----
         // 注意：我们只需要为源方法中出现的局部变量索引建立映射，
@@ -123,6 +131,81 @@ public class MethodCopyHelper {
         return all;
     }
 
+    /**
+     * 复制源方法体用于插入目标方法中间：
+     * 局部变量放在目标方法现有局部变量之后（不覆盖仍在使用的变量），return 改为跳到插入块末尾，
+     * 异常表加入目标方法（放在最前面，作为最内层的处理器）
+     */
+    public static InsnList copyInlineBody(MethodNode sourceMethod, MethodNode targetMethod) {
+        int sourceParamEnd = ((sourceMethod.access & Opcodes.ACC_STATIC) != 0 ? 0 : 1)
+                + (Type.getArgumentsAndReturnSizes(sourceMethod.desc) >> 2) - 1;
+        int localBase = targetMethod.maxLocals;
+
+        Pair<InsnList, Map<LabelNode, LabelNode>> copyResult =
+                copyMethodBodyWithOffsetAndMapping(sourceMethod, targetMethod, localBase);
+        InsnList body = copyResult.getLeft();
+        Map<LabelNode, LabelNode> labelMap = copyResult.getRight();
+
+        LabelNode end = new LabelNode();
+        for (AbstractInsnNode insn = body.getFirst(); insn != null; ) {
+            AbstractInsnNode next = insn.getNext();
+            int opcode = insn.getOpcode();
+            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+                body.set(insn, new JumpInsnNode(Opcodes.GOTO, end));
+            }
+            insn = next;
+        }
+        body.add(end);
+
+        if (sourceMethod.tryCatchBlocks != null) {
+            List<TryCatchBlockNode> blocks = new ArrayList<>();
+            for (TryCatchBlockNode block : sourceMethod.tryCatchBlocks) {
+                blocks.add(new TryCatchBlockNode(labelMap.get(block.start),
+                        labelMap.get(block.end), labelMap.get(block.handler), block.type));
+            }
+            targetMethod.tryCatchBlocks.addAll(0, blocks);
+        }
+
+        targetMethod.maxLocals = localBase + Math.max(0, sourceMethod.maxLocals - sourceParamEnd);
+        return body;
+    }
+
+    /**
+     * 将静态源方法完整复制到目标类中，作为私有合成静态方法，返回方法名
+     * 同一个源方法在同一个目标类中只复制一次
+     */
+    public static String installStaticHook(ClassNode targetClass, String sourceClass, MethodNode sourceMethod) {
+        String name = "pasm$" + sourceMethod.name + "$" + Integer.toHexString(sourceClass.hashCode());
+        for (MethodNode existing : targetClass.methods) {
+            if (existing.name.equals(name) && existing.desc.equals(sourceMethod.desc)) {
+                return name;
+            }
+        }
+
+        String[] exceptions = sourceMethod.exceptions != null
+                ? sourceMethod.exceptions.toArray(new String[0]) : null;
+        MethodNode hook = new MethodNode(Opcodes.ASM9,
+                Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC,
+                name, sourceMethod.desc, null, exceptions);
+
+        // 静态到静态、参数一致，局部变量索引不变
+        Pair<InsnList, Map<LabelNode, LabelNode>> copyResult =
+                copyMethodBodyWithOffsetAndMapping(sourceMethod, hook);
+        hook.instructions.add(copyResult.getLeft());
+        Map<LabelNode, LabelNode> labelMap = copyResult.getRight();
+        if (sourceMethod.tryCatchBlocks != null) {
+            for (TryCatchBlockNode block : sourceMethod.tryCatchBlocks) {
+                hook.tryCatchBlocks.add(new TryCatchBlockNode(labelMap.get(block.start),
+                        labelMap.get(block.end), labelMap.get(block.handler), block.type));
+            }
+        }
+        hook.maxLocals = sourceMethod.maxLocals;
+        hook.maxStack = sourceMethod.maxStack;
+
+        targetClass.methods.add(hook);
+        return name;
+    }
+
     public static InsnList cloneInstructionList(InsnList original) {
         InsnList cloned = new InsnList();
         Map<LabelNode, LabelNode> labelMap = new HashMap<>();
@@ -1,10 +1,12 @@
 package net.laoli.pasm.transformer;
 
+import net.laoli.pasm.model.InjectionPoint;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.*;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * 方法验证辅助类 - 专门处理指令查找和验证
@@ -60,4 +62,97 @@ public class MethodValidationHelper {
         return null;
     }
 
-}
\ No newline at end of file
+    /**
+     * 按顺序查找与注入点匹配的指令，ordinal >= 0 时只返回第 ordinal 个
+     */
+    public static List<AbstractInsnNode> findMatchingInstructions(MethodNode method, InjectionPoint point) {
+        return findMatchingInstructions(method, point, null);
+    }
+
+    /**
+     * 同上，只考虑（并只计数）满足 filter 的指令，filter 为null时不过滤
+     */
+    public static List<AbstractInsnNode> findMatchingInstructions(MethodNode method, InjectionPoint point,
+                                                                  Predicate<AbstractInsnNode> filter) {
+        List<AbstractInsnNode> matches = new ArrayList<>();
+        int index = 0;
+        for (AbstractInsnNode insn = method.instructions.getFirst();
+             insn != null; insn = insn.getNext()) {
+            boolean matched = point.getKind() == InjectionPoint.Kind.CONSTANT
+                    ? point.getConstant().equals(getConstantValue(insn))
+                    : point.matches(insn);
+            if (!matched || (filter != null && !filter.test(insn))) {
+                continue;
+            }
+            if (point.getOrdinal() < 0 || point.getOrdinal() == index) {
+                matches.add(insn);
+            }
+            index++;
+        }
+        return matches;
+    }
+
+    /**
+     * 读取常量加载指令的值（ICONST/LCONST/FCONST/DCONST/BIPUSH/SIPUSH/LDC），不是常量指令时返回null
+     */
+    public static Object getConstantValue(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+            return opcode - Opcodes.ICONST_0;
+        }
+        if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1) {
+            return (long) (opcode - Opcodes.LCONST_0);
+        }
+        if (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2) {
+            return (float) (opcode - Opcodes.FCONST_0);
+        }
+        if (opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1) {
+            return (double) (opcode - Opcodes.DCONST_0);
+        }
+        if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+            return ((IntInsnNode) insn).operand;
+        }
+        if (insn instanceof LdcInsnNode) {
+            Object cst = ((LdcInsnNode) insn).cst;
+            if (cst instanceof Integer || cst instanceof Long || cst instanceof Float
+                    || cst instanceof Double || cst instanceof String) {
+                return cst;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 生成加载常量的最短指令
+     */
+    public static AbstractInsnNode createConstantInstruction(Object value) {
+        if (value instanceof Integer) {
+            int i = (Integer) value;
+            if (i >= -1 && i <= 5) {
+                return new InsnNode(Opcodes.ICONST_0 + i);
+            }
+            if (i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE) {
+                return new IntInsnNode(Opcodes.BIPUSH, i);
+            }
+            if (i >= Short.MIN_VALUE && i <= Short.MAX_VALUE) {
+                return new IntInsnNode(Opcodes.SIPUSH, i);
+            }
+        } else if (value instanceof Long) {
+            long l = (Long) value;
+            if (l == 0L || l == 1L) {
+                return new InsnNode(Opcodes.LCONST_0 + (int) l);
+            }
+        } else if (value instanceof Float) {
+            float f = (Float) value;
+            if (Float.floatToIntBits(f) == Float.floatToIntBits(0f) || f == 1f || f == 2f) {
+                return new InsnNode(Opcodes.FCONST_0 + (int) f);
+            }
+        } else if (value instanceof Double) {
+            double d = (Double) value;
+            if (Double.doubleToLongBits(d) == Double.doubleToLongBits(0d) || d == 1d) {
+                return new InsnNode(Opcodes.DCONST_0 + (int) d);
+            }
+        }
+        return new LdcInsnNode(value);
+    }
+}
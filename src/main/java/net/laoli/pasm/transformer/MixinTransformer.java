@@ -1,7 +1,9 @@
 package net.laoli.pasm.transformer;
 
+import net.laoli.pasm.api.PasmClassProcessor;
 import net.laoli.pasm.injector.MethodInjector;
 import net.laoli.pasm.model.InjectionInfo;
+import net.laoli.pasm.model.InjectionPlan;
 import net.laoli.pasm.utils.PrintUtils;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
@@ -15,83 +17,136 @@ public class MixinTransformer {
 
     public static byte[] transformClass(byte[] originalBytes,
                                         String className,
-                                        List<InjectionInfo> injections,
+                                        InjectionPlan plan,
                                         ClassLoader loader) {
+        return transformClass(originalBytes, className, plan, Collections.emptyList(), loader);
+    }
 
+    /**
+     * 单次解析的转换流水线：先应用PASM注入计划，再依次执行类处理器，最后只写出一次
+     */
+    public static byte[] transformClass(byte[] originalBytes,
+                                        String className,
+                                        InjectionPlan plan,
+                                        List<PasmClassProcessor> processors,
+                                        ClassLoader loader) {
         try {
-            if (injections == null || injections.isEmpty()) {
-                return originalBytes;
-            }
+            return transformClass(originalBytes, className, plan, processors, loader, false);
+        } catch (Exception e) {
+            PrintUtils.error("转换失败: " + className + " - " + e.getMessage());
+            e.printStackTrace();
+            return originalBytes;
+        }
+    }
 
-            PrintUtils.debug("开始转换类: " + className + "，注入点数量: " + injections.size());
+    /**
+     * 严格模式转换 - 任一注入点失败或字节码校验失败时抛出异常，而不是退回原始字节码
+     * 用于热重载预计算，保证要么全部应用，要么全部不应用
+     */
+    public static byte[] transformClassStrict(byte[] originalBytes,
+                                              String className,
+                                              InjectionPlan plan,
+                                              List<PasmClassProcessor> processors,
+                                              ClassLoader loader) throws Exception {
+        return transformClass(originalBytes, className, plan, processors, loader, true);
+    }
 
-            // 按方法分组注入信息
-            Map<String, List<InjectionInfo>> injectionsByMethod = groupInjectionsByMethod(injections);
+    private static byte[] transformClass(byte[] originalBytes,
+                                         String className,
+                                         InjectionPlan plan,
+                                         List<PasmClassProcessor> processors,
+                                         ClassLoader loader,
+                                         boolean strict) throws Exception {
+        boolean hasPlan = plan != null && !plan.isEmpty();
+        if (!hasPlan && processors.isEmpty()) {
+            return originalBytes;
+        }
 
-            if (injectionsByMethod.isEmpty()) {
-                return originalBytes;
-            }
+        if (hasPlan) {
+            PrintUtils.debug("开始转换类: " + className + "，注入点数量: " + plan.getInjectionCount());
+        }
 
-            // 解析类 - 跳过帧，因为我们会重新计算
-            ClassReader cr = new ClassReader(originalBytes);
-            ClassNode classNode = new ClassNode(Opcodes.ASM9);
-            cr.accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        // 解析类 - 跳过帧，因为我们会重新计算；只有处理器时保留调试信息（行号、局部变量名）
+        ClassReader cr = new ClassReader(originalBytes);
+        ClassNode classNode = new ClassNode(Opcodes.ASM9);
+        cr.accept(classNode, hasPlan ? ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES : ClassReader.SKIP_FRAMES);
 
-            // 处理每个方法的注入
-            boolean injected = false;
-            for (MethodNode method : classNode.methods) {
-                String methodKey = method.name + method.desc;
-                List<InjectionInfo> methodInjections = injectionsByMethod.get(methodKey);
+        // 处理每个方法的注入
+        boolean injected = false;
 
-                if (methodInjections != null && !methodInjections.isEmpty()) {
-                    PrintUtils.debug("处理方法: " + method.name + method.desc);
+        // 访问器/调用器：实现插件接口
+        List<InjectionInfo> bindings = hasPlan ? plan.getMemberBindings() : Collections.<InjectionInfo>emptyList();
+        if (!bindings.isEmpty()) {
+            int successCount = AccessorGenerator.apply(classNode, bindings, loader);
+            if (strict && successCount < bindings.size()) {
+                throw new IllegalStateException("访问器/调用器生成失败 " + (bindings.size() - successCount) + " 个");
+            }
+            injected |= successCount > 0;
+        }
+        // 遍历副本：部分注入类型（如REDIRECT）会向类中添加方法
+        for (MethodNode method : hasPlan ? new ArrayList<>(classNode.methods) : Collections.<MethodNode>emptyList()) {
+            List<InjectionInfo> methodInjections = plan.getHooks(method.name, method.desc);
 
-                    // 按优先级排序
-                    methodInjections.sort(Comparator.comparingInt(InjectionInfo::getPriority));
+            if (!methodInjections.isEmpty()) {
+                PrintUtils.debug("处理方法: " + method.name + method.desc);
 
-                    // 批量注入
-                    int successCount = MethodInjector.injectMultiple(method, methodInjections);
+                // 批量注入（计划中已排序并处理REPLACE独占）
+                int successCount = MethodInjector.injectMultiple(classNode, method, methodInjections, loader);
 
-                    if (successCount > 0) {
-                        injected = true;
-                        PrintUtils.debug("  成功注入 " + successCount + " 个点");
-                    }
+                if (strict && successCount < methodInjections.size()) {
+                    throw new IllegalStateException("方法 " + method.name + method.desc + " 注入失败 " +
+                            (methodInjections.size() - successCount) + " 个点");
+                }
+                if (successCount > 0) {
+                    injected = true;
+                    PrintUtils.debug("  成功注入 " + successCount + " 个点");
                 }
             }
+        }
 
-            if (injected) {
-                // 关键修复：先不使用 COMPUTE_FRAMES，用简单的 COMPUTE_MAXS
-                // 这样可以避免栈映射帧计算的复杂性
-                ClassWriter cw = new SafeClassWriter(loader, ClassWriter.COMPUTE_FRAMES);
-
-                // 遍历所有方法，清理可能的问题
-                for (MethodNode method : classNode.methods) {
-                    // 确保方法指令不为空
-                    if (method.instructions.size() == 0 && !isAbstractOrNative(method)) {
-                        PrintUtils.warn("方法体为空: " + method.name);
-                        // 添加默认返回指令
-                        addDefaultReturnInstruction(method);
-                    }
+        // 依次执行类处理器，处理器异常时整个类退回原始字节码，避免写出修改了一半的类
+        for (PasmClassProcessor processor : processors) {
+            try {
+                if (processor.processClass(classNode, loader)) {
+                    injected = true;
+                    PrintUtils.debug("  类处理器修改了类: " + processor.getClass().getName());
                 }
+            } catch (Throwable t) {
+                throw new IllegalStateException("类处理器 " + processor.getClass().getName() +
+                        " 处理失败: " + t.getMessage(), t);
+            }
+        }
 
-                classNode.accept(cw);
-                byte[] transformedBytes = cw.toByteArray();
-
-                PrintUtils.debug("转换完成: " + className +
-                        " (原始: " + originalBytes.length +
-                        "字节, 转换后: " + transformedBytes.length + "字节)");
+        if (injected) {
+            // 关键修复：先不使用 COMPUTE_FRAMES，用简单的 COMPUTE_MAXS
+            // 这样可以避免栈映射帧计算的复杂性
+            ClassWriter cw = new SafeClassWriter(loader, ClassWriter.COMPUTE_FRAMES);
 
-                // 验证生成的字节码
-                if (PrintUtils.isDebugEnabled()) {
-                    verifyBytecode(transformedBytes, className);
+            // 遍历所有方法，清理可能的问题
+            for (MethodNode method : classNode.methods) {
+                // 确保方法指令不为空
+                if (method.instructions.size() == 0 && !isAbstractOrNative(method)) {
+                    PrintUtils.warn("方法体为空: " + method.name);
+                    // 添加默认返回指令
+                    addDefaultReturnInstruction(method);
                 }
+            }
 
-                return transformedBytes;
+            classNode.accept(cw);
+            byte[] transformedBytes = cw.toByteArray();
+
+            PrintUtils.debug("转换完成: " + className +
+                    " (原始: " + originalBytes.length +
+                    "字节, 转换后: " + transformedBytes.length + "字节)");
+
+            // 验证生成的字节码
+            if (strict) {
+                new ClassReader(transformedBytes).accept(new ClassVisitor(Opcodes.ASM9) {}, 0);
+            } else if (PrintUtils.isDebugEnabled()) {
+                verifyBytecode(transformedBytes, className);
             }
 
-        } catch (Exception e) {
-            PrintUtils.error("转换失败: " + className + " - " + e.getMessage());
-            e.printStackTrace();
+            return transformedBytes;
         }
 
         return originalBytes;
@@ -205,14 +260,4 @@ public class MixinTransformer {
             PrintUtils.error("字节码验证失败: " + className + " - " + e.getMessage());
         }
     }
-
-    private static Map<String, List<InjectionInfo>> groupInjectionsByMethod(List<InjectionInfo> injections) {
-        Map<String, List<InjectionInfo>> grouped = new HashMap<>();
-        for (InjectionInfo info : injections) {
-            if (!info.isValid()) continue;
-            String methodKey = info.getTargetMethod() + info.getTargetDesc();
-            grouped.computeIfAbsent(methodKey, k -> new ArrayList<>()).add(info);
-        }
-        return grouped;
-    }
 }
\ No newline at end of file
@@ -0,0 +1,226 @@
+package net.laoli.pasm.transformer;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.*;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * 操作数栈保存器 - 在非空操作数栈的位置插入带 try/catch 的代码块时使用
+ * 异常处理器入口处操作数栈会被清空，所以插入前把栈上的值存入新的局部变量，代码块结束后再按原顺序压回
+ * 栈上有未初始化对象（NEW 之后、构造方法调用之前）或无法确定类型的值时不能保存
+ *
+ * @author laoli
+ */
+final class OperandStackSaver {
+
+    private final MethodNode method;
+    private final Set<BasicValue> uninitialized = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final TrackingInterpreter interpreter = new TrackingInterpreter();
+    private final Frame<BasicValue>[] frames;
+
+    /**
+     * 分析目标方法，必须在向方法插入任何指令之前创建
+     */
+    OperandStackSaver(String owner, MethodNode method) throws AnalyzerException {
+        this.method = method;
+        this.frames = analyze(owner != null ? owner : "java/lang/Object", method);
+    }
+
+    /**
+     * 返回在指令之前（after为false）或之后（after为true）插入代码时的操作数栈，不可达时返回null
+     */
+    Frame<BasicValue> frameAt(AbstractInsnNode insn, boolean after) throws AnalyzerException {
+        Frame<BasicValue> frame = frames[method.instructions.indexOf(insn)];
+        if (frame == null || !after) {
+            return frame;
+        }
+        Frame<BasicValue> next = new TrackingFrame(frame);
+        next.execute(insn, interpreter);
+        return next;
+    }
+
+    /**
+     * 栈上的值能否保存到局部变量，返回不能保存的原因，可以时返回null
+     */
+    String checkSavable(Frame<BasicValue> frame) {
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            BasicValue value = frame.getStack(i);
+            if (uninitialized.contains(value)) {
+                return "栈位置 " + i + " 是未初始化的对象";
+            }
+            if (value.getType() == null || value == BasicValue.RETURNADDRESS_VALUE) {
+                return "栈位置 " + i + " 的类型无法确定";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在 maxLocals 之后为栈上的值分配局部变量，返回第一个局部变量的索引
+     */
+    int reserve(Frame<BasicValue> frame) {
+        int base = method.maxLocals;
+        int size = 0;
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            size += frame.getStack(i).getSize();
+        }
+        method.maxLocals = base + size;
+        return base;
+    }
+
+    /**
+     * 从栈顶开始依次存入局部变量，执行后操作数栈为空
+     */
+    InsnList save(Frame<BasicValue> frame, int base) {
+        InsnList list = new InsnList();
+        int[] slots = slots(frame, base);
+        for (int i = frame.getStackSize() - 1; i >= 0; i--) {
+            list.add(new VarInsnNode(frame.getStack(i).getType().getOpcode(Opcodes.ISTORE), slots[i]));
+        }
+        return list;
+    }
+
+    /**
+     * 按原顺序把保存的值压回操作数栈
+     */
+    InsnList restore(Frame<BasicValue> frame, int base) {
+        InsnList list = new InsnList();
+        int[] slots = slots(frame, base);
+        for (int i = 0; i < frame.getStackSize(); i++) {
+            list.add(new VarInsnNode(frame.getStack(i).getType().getOpcode(Opcodes.ILOAD), slots[i]));
+        }
+        return list;
+    }
+
+    private static int[] slots(Frame<BasicValue> frame, int base) {
+        int[] slots = new int[frame.getStackSize()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = base;
+            base += frame.getStack(i).getSize();
+        }
+        return slots;
+    }
+
+    /**
+     * 分析方法；合并注入后 maxStack 可能还没重新计算，不足时放大后重试
+     */
+    private Frame<BasicValue>[] analyze(String owner, MethodNode method) throws AnalyzerException {
+        int maxStack = method.maxStack;
+        try {
+            for (int extra = 0; ; extra = extra == 0 ? 16 : extra * 2) {
+                method.maxStack = maxStack + extra;
+                try {
+                    return new TrackingAnalyzer(interpreter).analyze(owner, method);
+                } catch (AnalyzerException e) {
+                    if (extra >= 1024 || e.getMessage() == null
+                            || !e.getMessage().contains("Insufficient maximum stack size")) {
+                        throw e;
+                    }
+                }
+            }
+        } finally {
+            method.maxStack = maxStack;
+        }
+    }
+
+    /**
+     * 为每条 NEW 指令和构造方法中的 this 创建独立的值，用于识别未初始化的对象
+     */
+    private final class TrackingInterpreter extends BasicInterpreter {
+        private final IdentityHashMap<AbstractInsnNode, BasicValue> created = new IdentityHashMap<>();
+        private boolean constructor;
+
+        TrackingInterpreter() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public BasicValue newParameterValue(boolean isInstanceMethod, int local, Type type) {
+            if (isInstanceMethod && local == 0 && constructor) {
+                BasicValue value = new BasicValue(type);
+                uninitialized.add(value);
+                return value;
+            }
+            return super.newParameterValue(isInstanceMethod, local, type);
+        }
+
+        @Override
+        public BasicValue newOperation(AbstractInsnNode insn) throws AnalyzerException {
+            if (insn.getOpcode() == Opcodes.NEW) {
+                return created.computeIfAbsent(insn, k -> {
+                    BasicValue value = new BasicValue(Type.getObjectType(((TypeInsnNode) k).desc));
+                    uninitialized.add(value);
+                    return value;
+                });
+            }
+            return super.newOperation(insn);
+        }
+    }
+
+    private static final class TrackingAnalyzer extends Analyzer<BasicValue> {
+        private final TrackingInterpreter interpreter;
+
+        TrackingAnalyzer(TrackingInterpreter interpreter) {
+            super(interpreter);
+            this.interpreter = interpreter;
+        }
+
+        @Override
+        public Frame<BasicValue>[] analyze(String owner, MethodNode method) throws AnalyzerException {
+            interpreter.constructor = "<init>".equals(method.name);
+            return super.analyze(owner, method);
+        }
+
+        @Override
+        protected Frame<BasicValue> newFrame(int numLocals, int numStack) {
+            return new TrackingFrame(numLocals, numStack);
+        }
+
+        @Override
+        protected Frame<BasicValue> newFrame(Frame<? extends BasicValue> frame) {
+            return new TrackingFrame(frame);
+        }
+    }
+
+    /**
+     * 构造方法调用之后，把栈和局部变量中对应的未初始化值替换为已初始化的引用
+     */
+    private static final class TrackingFrame extends Frame<BasicValue> {
+        TrackingFrame(int numLocals, int numStack) {
+            super(numLocals, numStack);
+        }
+
+        TrackingFrame(Frame<? extends BasicValue> frame) {
+            super(frame);
+        }
+
+        @Override
+        public void execute(AbstractInsnNode insn, Interpreter<BasicValue> interpreter) throws AnalyzerException {
+            BasicValue receiver = null;
+            if (insn.getOpcode() == Opcodes.INVOKESPECIAL && "<init>".equals(((MethodInsnNode) insn).name)) {
+                int args = Type.getArgumentTypes(((MethodInsnNode) insn).desc).length;
+                receiver = getStack(getStackSize() - args - 1);
+            }
+            super.execute(insn, interpreter);
+            if (receiver == null) {
+                return;
+            }
+            BasicValue initialized = BasicValue.REFERENCE_VALUE;
+            for (int i = 0; i < getLocals(); i++) {
+                if (getLocal(i) == receiver) {
+                    setLocal(i, initialized);
+                }
+            }
+            for (int i = 0; i < getStackSize(); i++) {
+                if (getStack(i) == receiver) {
+                    setStack(i, initialized);
+                }
+            }
+        }
+    }
+}